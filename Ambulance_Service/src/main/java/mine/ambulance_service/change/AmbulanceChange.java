@@ -0,0 +1,49 @@
+package mine.ambulance_service.change;
+
+/**
+ * One mutation of an ambulance, numbered by {@link #getSequence()}. Fields that did not change are null, so
+ * an availability change carries no position and a removal carries neither.
+ */
+public class AmbulanceChange {
+
+    private final long sequence;
+    private final Long ambulanceId;
+    private final Double latitude;
+    private final Double longitude;
+    private final Boolean available;
+    private final boolean removed;
+
+    AmbulanceChange(long sequence, Long ambulanceId, Double latitude, Double longitude, Boolean available,
+                    boolean removed) {
+        this.sequence = sequence;
+        this.ambulanceId = ambulanceId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.available = available;
+        this.removed = removed;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Long getAmbulanceId() {
+        return ambulanceId;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public Boolean getAvailable() {
+        return available;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,117 @@
+package mine.ambulance_service.change;
+
+import mine.ambulance_service.model.Ambulance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The most recent location and availability changes, kept in a fixed-size ring and numbered from 1.
+ * Readers pass the last sequence they saw; a reader that fell further behind than the ring reaches is told
+ * to resync from a snapshot. {@link #poll} lets readers wait for the next change instead of polling in a loop.
+ */
+@Component
+public class AmbulanceChangeLog {
+
+    private final AmbulanceChange[] ring;
+    private final List<Waiter> waiters = new ArrayList<>();
+    private long lastSequence;
+
+    public AmbulanceChangeLog(@Value("${ambulance.changes.capacity:10000}") int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Change log capacity must be positive.");
+        }
+        this.ring = new AmbulanceChange[capacity];
+    }
+
+    public void recordState(Ambulance ambulance) {
+        append(ambulance.getId(), ambulance.getLatitude(), ambulance.getLongitude(), ambulance.isAvailable(), false);
+    }
+
+    public void recordLocation(Long ambulanceId, Double latitude, Double longitude) {
+        append(ambulanceId, latitude, longitude, null, false);
+    }
+
+    public void recordAvailability(Long ambulanceId, boolean available) {
+        append(ambulanceId, null, null, available, false);
+    }
+
+    public void recordRemoval(Long ambulanceId) {
+        append(ambulanceId, null, null, null, true);
+    }
+
+    public synchronized long cursor() {
+        return lastSequence;
+    }
+
+    /**
+     * Up to {@code limit} changes after {@code since}, oldest first.
+     */
+    public synchronized ChangeBatch read(long since, int limit) {
+        long oldest = Math.max(1, lastSequence - ring.length + 1);
+        if (since > lastSequence || since < oldest - 1) {
+            return new ChangeBatch(lastSequence, List.of(), true);
+        }
+        long end = Math.min(lastSequence, since + limit);
+        List<AmbulanceChange> changes = new ArrayList<>((int) (end - since));
+        for (long sequence = since + 1; sequence <= end; sequence++) {
+            changes.add(ring[slot(sequence)]);
+        }
+        return new ChangeBatch(end, changes, false);
+    }
+
+    /**
+     * Like {@link #read}, but when there is nothing after {@code since} yet the future completes with the
+     * next change instead. Cancelling the future stops waiting.
+     */
+    public CompletableFuture<ChangeBatch> poll(long since, int limit) {
+        synchronized (this) {
+            if (since == lastSequence) {
+                Waiter waiter = new Waiter(since, limit);
+                waiters.add(waiter);
+                waiter.future.whenComplete((batch, e) -> removeWaiter(waiter));
+                return waiter.future;
+            }
+        }
+        return CompletableFuture.completedFuture(read(since, limit));
+    }
+
+    private void append(Long ambulanceId, Double latitude, Double longitude, Boolean available, boolean removed) {
+        List<Waiter> ready;
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            ring[slot(sequence)] = new AmbulanceChange(sequence, ambulanceId, latitude, longitude, available, removed);
+            if (waiters.isEmpty()) {
+                return;
+            }
+            ready = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        // Completed outside the lock; readers' callbacks must not run while appends are blocked
+        for (Waiter waiter : ready) {
+            waiter.future.complete(read(waiter.since, waiter.limit));
+        }
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private int slot(long sequence) {
+        return (int) ((sequence - 1) % ring.length);
+    }
+
+    private static class Waiter {
+        private final long since;
+        private final int limit;
+        private final CompletableFuture<ChangeBatch> future = new CompletableFuture<>();
+
+        Waiter(long since, int limit) {
+            this.since = since;
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package mine.ambulance_service.change;
+
+import java.util.List;
+
+/**
+ * Changes after a reader's cursor, and the cursor to ask from next. {@code resyncRequired} means the
+ * changes the reader needs have already been overwritten; it has to reload the fleet snapshot.
+ */
+public class ChangeBatch {
+
+    private final long cursor;
+    private final List<AmbulanceChange> changes;
+    private final boolean resyncRequired;
+
+    ChangeBatch(long cursor, List<AmbulanceChange> changes, boolean resyncRequired) {
+        this.cursor = cursor;
+        this.changes = changes;
+        this.resyncRequired = resyncRequired;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public List<AmbulanceChange> getChanges() {
+        return changes;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+}
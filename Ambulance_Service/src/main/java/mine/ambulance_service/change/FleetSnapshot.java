@@ -0,0 +1,28 @@
+package mine.ambulance_service.change;
+
+import mine.ambulance_service.model.Ambulance;
+
+import java.util.List;
+
+/**
+ * The whole fleet plus the change cursor taken just before it was read. Changes after the cursor may
+ * already be reflected in the list; replaying them is harmless because each one carries absolute values.
+ */
+public class FleetSnapshot {
+
+    private final long cursor;
+    private final List<Ambulance> ambulances;
+
+    public FleetSnapshot(long cursor, List<Ambulance> ambulances) {
+        this.cursor = cursor;
+        this.ambulances = ambulances;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public List<Ambulance> getAmbulances() {
+        return ambulances;
+    }
+}
@@ -0,0 +1,91 @@
+package mine.ambulance_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Location history log. A new segment file is started every {@code segmentDuration} or when one fills
+ * {@code segmentRecords}; segments older than {@code compactAfter} are downsampled to one sample per
+ * ambulance per {@code downsampleInterval}, and segments older than {@code retention} are deleted.
+ * Positions that stay within {@code ingestToleranceMeters} of a straight line are not written at all, but
+ * one is kept at least every {@code maxSampleInterval}; a tolerance of 0 writes every position.
+ */
+@Component
+@ConfigurationProperties(prefix = "ambulance.history")
+public class HistoryProperties {
+
+    private String directory = "data/history";
+    private Duration segmentDuration = Duration.ofHours(1);
+    private int segmentRecords = 1 << 20;
+    private Duration retention = Duration.ofDays(30);
+    private Duration compactAfter = Duration.ofDays(1);
+    private Duration downsampleInterval = Duration.ofSeconds(30);
+    private double ingestToleranceMeters = 5;
+    private Duration maxSampleInterval = Duration.ofSeconds(30);
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Duration getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    public void setSegmentDuration(Duration segmentDuration) {
+        this.segmentDuration = segmentDuration;
+    }
+
+    public int getSegmentRecords() {
+        return segmentRecords;
+    }
+
+    public void setSegmentRecords(int segmentRecords) {
+        this.segmentRecords = segmentRecords;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public Duration getCompactAfter() {
+        return compactAfter;
+    }
+
+    public void setCompactAfter(Duration compactAfter) {
+        this.compactAfter = compactAfter;
+    }
+
+    public Duration getDownsampleInterval() {
+        return downsampleInterval;
+    }
+
+    public void setDownsampleInterval(Duration downsampleInterval) {
+        this.downsampleInterval = downsampleInterval;
+    }
+
+    public double getIngestToleranceMeters() {
+        return ingestToleranceMeters;
+    }
+
+    public void setIngestToleranceMeters(double ingestToleranceMeters) {
+        this.ingestToleranceMeters = ingestToleranceMeters;
+    }
+
+    public Duration getMaxSampleInterval() {
+        return maxSampleInterval;
+    }
+
+    public void setMaxSampleInterval(Duration maxSampleInterval) {
+        this.maxSampleInterval = maxSampleInterval;
+    }
+}
@@ -1,30 +1,229 @@
 package mine.ambulance_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.change.ChangeBatch;
+import mine.ambulance_service.change.FleetSnapshot;
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.history.TrackPoint;
 import mine.ambulance_service.model.Ambulance;
 import mine.ambulance_service.service.AmbulanceService;
+import mine.ambulance_service.service.UpdateResult;
+import mine.ambulance_service.stream.BoundingBox;
+import mine.ambulance_service.stream.FleetStream;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/ambulances")
 public class AmbulanceController {
 
+    private static final int MAX_NEAREST = 100;
+    private static final int MAX_CHANGES = 1000;
+    private static final long MAX_WAIT_MILLIS = 30_000;
+    private static final int MAX_LOCATION_BATCH = 5000;
+    // Clients reconnect after this and get a fresh snapshot
+    private static final long STREAM_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    private static final Duration MAX_TRACK_RANGE = Duration.ofDays(1);
+    // Stands in for an If-Match entity tag that is not one of ours; no ambulance is ever at this version
+    private static final long UNMATCHABLE_VERSION = -1;
+    private static final int MAX_PAGE = 1000;
+    private static final int DEFAULT_PAGE = 100;
+    // Change log sequences restart at 0 with the process; the start time keeps old list ETags from matching
+    private static final String INSTANCE = Long.toString(System.currentTimeMillis(), 36);
+
     private final AmbulanceService ambulanceService;
+    private final AmbulanceChangeLog changeLog;
+    private final FleetStream fleetStream;
+    private final ObjectMapper objectMapper;
 
-    public AmbulanceController(AmbulanceService ambulanceService) {
+    public AmbulanceController(AmbulanceService ambulanceService, AmbulanceChangeLog changeLog,
+                               FleetStream fleetStream, ObjectMapper objectMapper) {
         this.ambulanceService = ambulanceService;
+        this.changeLog = changeLog;
+        this.fleetStream = fleetStream;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * The fleet, or the ambulances in {@code ids}. With {@code limit} (or {@code after}) it is one keyset
+     * page in id order, and a {@code Link: rel="next"} header points at the next one while pages come back
+     * full. The weak ETag changes with every fleet change, so a poll with If-None-Match gets a 304 without a
+     * database read when nothing moved.
+     */
     @GetMapping
-    public List<Ambulance> getAllAmbulances() {
-        return ambulanceService.getAllAmbulances();
+    public ResponseEntity<List<Ambulance>> getAllAmbulances(@RequestParam(required = false) List<Integer> ids,
+                                                            @RequestParam(required = false) Boolean available,
+                                                            @RequestParam(required = false) Long after,
+                                                            @RequestParam(required = false) Integer limit,
+                                                            WebRequest request) {
+        // Taken before the read, so a change racing the read makes the next poll miss rather than a stale hit
+        String eTag = listETag(request, MediaType.APPLICATION_JSON);
+        if (request.checkNotModified(eTag)) {
+            // The 304 status and ETag are already on the response
+            return null;
+        }
+        if (limit == null && after == null) {
+            List<Ambulance> ambulances = ids == null && available == null
+                    ? ambulanceService.getAllAmbulances()
+                    : ambulanceService.getAmbulances(ids, available);
+            return ResponseEntity.ok().eTag(eTag).body(ambulances);
+        }
+        int pageSize = limit != null ? limit : DEFAULT_PAGE;
+        if (ids != null || pageSize <= 0 || pageSize > MAX_PAGE) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Ambulance> page = ambulanceService.getAmbulancePage(after, pageSize, available);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+        if (page.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.get(page.size() - 1).getId())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+
+    /**
+     * The same listing as newline-delimited JSON, one ambulance per line, written while rows are still being
+     * read so neither side holds the whole fleet.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllAmbulances(@RequestParam(required = false) Boolean available,
+                                                                     @RequestParam(required = false) Long after,
+                                                                     WebRequest request) {
+        String eTag = listETag(request, MediaType.APPLICATION_NDJSON);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        StreamingResponseBody body = out -> ambulanceService.streamAmbulances(available, after, ambulance -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(ambulance));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/nearest")
+    public ResponseEntity<List<Ambulance>> getNearestAmbulances(@RequestParam double lat,
+                                                                @RequestParam double lng,
+                                                                @RequestParam(defaultValue = "5") int k,
+                                                                @RequestParam(defaultValue = "50000") double radiusMeters,
+                                                                @RequestParam(defaultValue = "true") Boolean available) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180 || k <= 0 || k > MAX_NEAREST || radiusMeters <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(ambulanceService.findNearest(lat, lng, k, radiusMeters, available));
+    }
+
+    /**
+     * Location and availability changes after {@code since}. With {@code waitMillis} the request is held
+     * until the next change or the wait runs out (then an empty batch at the same cursor). 410 means the
+     * cursor is too old and the caller has to start over from {@code /changes/snapshot}.
+     */
+    @GetMapping("/changes")
+    public DeferredResult<ResponseEntity<ChangeBatch>> getChanges(@RequestParam long since,
+                                                                  @RequestParam(defaultValue = "1000") int limit,
+                                                                  @RequestParam(defaultValue = "0") long waitMillis) {
+        DeferredResult<ResponseEntity<ChangeBatch>> result = new DeferredResult<>(Math.max(waitMillis, 1),
+                () -> toResponse(changeLog.read(since, limit)));
+        if (since < 0 || limit <= 0 || limit > MAX_CHANGES || waitMillis < 0 || waitMillis > MAX_WAIT_MILLIS) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+        if (waitMillis == 0) {
+            result.setResult(toResponse(changeLog.read(since, limit)));
+            return result;
+        }
+        CompletableFuture<ChangeBatch> changes = changeLog.poll(since, limit);
+        changes.thenAccept(batch -> result.setResult(toResponse(batch)));
+        result.onCompletion(() -> changes.cancel(false));
+        return result;
     }
 
+    @GetMapping("/changes/snapshot")
+    public FleetSnapshot getSnapshot() {
+        return ambulanceService.getSnapshot();
+    }
+
+    /**
+     * Server-sent events for dashboards: a {@code snapshot} event with the ambulances inside the optional
+     * bounding box, then {@code delta} events carrying only changed fields. Slow clients get the latest
+     * state of each ambulance when they catch up, not every position in between.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamAmbulances(@RequestParam(required = false) Double minLat,
+                                                       @RequestParam(required = false) Double maxLat,
+                                                       @RequestParam(required = false) Double minLng,
+                                                       @RequestParam(required = false) Double maxLng) {
+        BoundingBox box;
+        if (minLat == null && maxLat == null && minLng == null && maxLng == null) {
+            box = BoundingBox.WORLD;
+        } else if (minLat == null || maxLat == null || minLng == null || maxLng == null
+                || minLat < -90 || maxLat > 90 || minLat > maxLat
+                || minLng < -180 || maxLng > 180 || minLng > maxLng) {
+            return ResponseEntity.badRequest().build();
+        } else {
+            box = new BoundingBox(minLat, maxLat, minLng, maxLng);
+        }
+        return ResponseEntity.ok(fleetStream.subscribe(box, STREAM_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * The ETag is the ambulance's version and location timestamp, since position pings change the body without
+     * bumping the version. Send it back in If-Match on PUT or PATCH to update only if nobody else has since;
+     * only its version part is compared, so a ping in between does not fail the update.
+     */
     @GetMapping("/{id}")
     public ResponseEntity<Ambulance> getAmbulanceById(@PathVariable Long id) {
         return ambulanceService.getAmbulanceById(id)
+                .map(ambulance -> withETag(ResponseEntity.ok(), ambulance))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Recorded positions between {@code from} and {@code to} (ISO-8601 instants), oldest first. Positions
+     * older than a day are downsampled, and those past the history retention are gone. A {@code tolerance}
+     * in meters drops points that lie within it of the simplified path, keeping the turns; maps usually want
+     * a few meters to a few tens of meters depending on zoom.
+     */
+    @GetMapping("/{id}/track")
+    public ResponseEntity<List<TrackPoint>> getTrack(@PathVariable Long id,
+                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                     @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                     @RequestParam(defaultValue = "0") double tolerance) {
+        if (from.isAfter(to) || Duration.between(from, to).compareTo(MAX_TRACK_RANGE) > 0 || tolerance < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ambulanceService.getTrack(id, from, to, tolerance)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -38,25 +237,62 @@ public class AmbulanceController {
         return ResponseEntity.status(201).body(created);
     }
 
+    /**
+     * 412 with the current ambulance if If-Match names another version; 409 if, without If-Match, another
+     * write landed while this one was in progress.
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<Ambulance> updateAmbulance(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance) {
-        return ambulanceService.updateAmbulance(id, updatedAmbulance)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Ambulance> updateAmbulance(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return toResponse(ambulanceService.updateAmbulance(id, updatedAmbulance, expectedVersion(ifMatch)));
     }
 
+    /**
+     * 400 if either coordinate is missing or out of range.
+     */
     @PatchMapping("/{id}/location")
-    public ResponseEntity<Ambulance> updateAmbulanceLocation(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance) {
-        return ambulanceService.updateAmbulanceLocation(id, updatedAmbulance.getLatitude(), updatedAmbulance.getLongitude())
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Ambulance> updateAmbulanceLocation(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance,
+                                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Double latitude = updatedAmbulance.getLatitude();
+        Double longitude = updatedAmbulance.getLongitude();
+        if (latitude == null || latitude < -90 || latitude > 90
+                || longitude == null || longitude < -180 || longitude > 180) {
+            return ResponseEntity.badRequest().build();
+        }
+        return toResponse(ambulanceService.updateAmbulanceLocation(id, updatedAmbulance.getLatitude(),
+                updatedAmbulance.getLongitude(), expectedVersion(ifMatch)));
+    }
+
+    /**
+     * Batch GPS ingestion. Always 200 for a well-formed batch; each sample gets its own APPLIED, STALE,
+     * NOT_FOUND or INVALID result, in request order.
+     */
+    @PostMapping("/locations")
+    public ResponseEntity<List<LocationUpdateResult>> ingestLocations(@RequestBody List<LocationSample> samples) {
+        if (samples == null || samples.isEmpty() || samples.size() > MAX_LOCATION_BATCH) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(ambulanceService.ingestLocations(samples));
     }
 
     @PatchMapping("/{id}/availability")
-    public ResponseEntity<Ambulance> updateAmbulanceAvailability(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance) {
-        return ambulanceService.updateAmbulanceAvailability(id, updatedAmbulance.isAvailable())
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Ambulance> updateAmbulanceAvailability(@PathVariable Long id, @RequestBody Ambulance updatedAmbulance,
+                                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return toResponse(ambulanceService.updateAmbulanceAvailability(id, updatedAmbulance.isAvailable(),
+                expectedVersion(ifMatch)));
+    }
+
+    /**
+     * 200 if this call took the ambulance out of service, 409 if it was already unavailable.
+     */
+    @PostMapping("/{id}/reserve")
+    public ResponseEntity<Void> reserveAmbulance(@PathVariable Long id) {
+        return toResponse(ambulanceService.reserveAmbulance(id));
+    }
+
+    @PostMapping("/{id}/release")
+    public ResponseEntity<Void> releaseAmbulance(@PathVariable Long id) {
+        return toResponse(ambulanceService.releaseAmbulance(id));
     }
 
     @DeleteMapping("/{id}")
@@ -64,4 +300,84 @@ public class AmbulanceController {
         boolean deleted = ambulanceService.deleteAmbulance(id);
         return deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
+
+    private String listETag(WebRequest request, MediaType representation) {
+        // The JSON and NDJSON listings share a URL, so caches have to key on Accept as well
+        if (request instanceof NativeWebRequest nativeRequest
+                && nativeRequest.getNativeResponse() instanceof HttpServletResponse response) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return "W/\"" + INSTANCE + "-" + changeLog.cursor() + "-" + representation.getSubtype() + "-" + queryDigest() + "\"";
+    }
+
+    private static String queryDigest() {
+        String query = ServletUriComponentsBuilder.fromCurrentRequest().build().getQuery();
+        // Sorted, so reordering parameters does not cost a 304
+        String normalized = query == null ? "" : Arrays.stream(query.split("&")).sorted().collect(Collectors.joining("&"));
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ResponseEntity<ChangeBatch> toResponse(ChangeBatch batch) {
+        return batch.isResyncRequired() ? ResponseEntity.status(410).body(batch) : ResponseEntity.ok(batch);
+    }
+
+    private ResponseEntity<Ambulance> toResponse(UpdateResult result) {
+        switch (result.getStatus()) {
+            case UPDATED:
+                return withETag(ResponseEntity.ok(), result.getAmbulance());
+            case VERSION_MISMATCH:
+                return withETag(ResponseEntity.status(412), result.getAmbulance());
+            case CONFLICT:
+                return ResponseEntity.status(409).build();
+            default:
+                return ResponseEntity.notFound().build();
+        }
+    }
+
+    private static ResponseEntity<Ambulance> withETag(ResponseEntity.BodyBuilder builder, Ambulance ambulance) {
+        if (ambulance.getVersion() != null) {
+            builder.eTag(ambulance.getLocationTimestamp() == null
+                    ? Long.toString(ambulance.getVersion())
+                    : ambulance.getVersion() + "." + ambulance.getLocationTimestamp());
+        }
+        return builder.body(ambulance);
+    }
+
+    /**
+     * The version an If-Match header asks for, read from the part of the tag before the location timestamp: null
+     * when there is no header or it is {@code *}, which any existing ambulance matches. Weak or foreign tags can
+     * never match, as If-Match compares strongly.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            return UNMATCHABLE_VERSION;
+        }
+        String value = tag.substring(1, tag.length() - 1);
+        int dot = value.indexOf('.');
+        try {
+            return Long.parseLong(dot < 0 ? value : value.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return UNMATCHABLE_VERSION;
+        }
+    }
+
+    private ResponseEntity<Void> toResponse(AmbulanceService.ReservationResult result) {
+        switch (result) {
+            case RESERVED:
+                return ResponseEntity.ok().build();
+            case CONFLICT:
+                return ResponseEntity.status(409).build();
+            default:
+                return ResponseEntity.notFound().build();
+        }
+    }
 }
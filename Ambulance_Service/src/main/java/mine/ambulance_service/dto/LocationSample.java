@@ -0,0 +1,56 @@
+package mine.ambulance_service.dto;
+
+import java.time.Instant;
+
+/**
+ * One GPS fix for an ambulance, as sent to the batch ingestion endpoint.
+ */
+public class LocationSample {
+
+    private Long id;
+    private Double latitude;
+    private Double longitude;
+    private Instant timestamp;
+
+    public LocationSample() {
+    }
+
+    public LocationSample(Long id, Double latitude, Double longitude, Instant timestamp) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.timestamp = timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,31 @@
+package mine.ambulance_service.dto;
+
+/**
+ * Outcome of one sample in a batch location update, reported in request order.
+ */
+public class LocationUpdateResult {
+
+    private final Long id;
+    private final Status status;
+
+    public LocationUpdateResult(Long id, Status status) {
+        this.id = id;
+        this.status = status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public enum Status {
+        APPLIED,
+        // Older than (or as old as) the position already stored, or than a newer sample in the same batch
+        STALE,
+        NOT_FOUND,
+        INVALID
+    }
+}
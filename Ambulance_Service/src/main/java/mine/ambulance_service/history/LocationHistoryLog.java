@@ -0,0 +1,271 @@
+package mine.ambulance_service.history;
+
+import jakarta.annotation.PreDestroy;
+import mine.ambulance_service.config.HistoryProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Every accepted GPS position, kept on local disk rather than in MySQL. Positions are appended to the newest
+ * of a series of memory-mapped {@link Segment} files; a new segment is started every segment duration or
+ * when the current one is full. Old segments are downsampled in place of the originals and, past the
+ * retention, deleted, so the log stays bounded however long the service runs.
+ * <p>
+ * History is best effort: a position that cannot be written is logged and dropped, never failing the ping.
+ */
+@Component
+public class LocationHistoryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(LocationHistoryLog.class);
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final HistoryProperties properties;
+    private final Clock clock;
+    private final Path directory;
+
+    // Appends take the write lock; queries share the read lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Integer, Long> lastTimestamps = new HashMap<>();
+    private final TrackFilter filter;
+    private Segment active;
+
+    @Autowired
+    public LocationHistoryLog(HistoryProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    LocationHistoryLog(HistoryProperties properties, Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+        this.directory = Paths.get(properties.getDirectory());
+        this.filter = properties.getIngestToleranceMeters() > 0
+                ? new TrackFilter(properties.getIngestToleranceMeters(), properties.getMaxSampleInterval().toMillis())
+                : null;
+        load();
+    }
+
+    /**
+     * Records a position. Samples must arrive in timestamp order per ambulance; an older one is ignored.
+     * With an ingest tolerance, positions on a straight stretch are held back and only the turns written.
+     */
+    public void append(Long ambulanceId, long timestamp, double latitude, double longitude) {
+        int id = Math.toIntExact(ambulanceId);
+        lock.writeLock().lock();
+        try {
+            Long last = lastTimestamps.get(id);
+            if (last != null && timestamp < last) {
+                return;
+            }
+            TrackPoint point = filter != null
+                    ? filter.offer(id, timestamp, latitude, longitude)
+                    : new TrackPoint(Instant.ofEpochMilli(timestamp), latitude, longitude);
+            if (point != null) {
+                write(id, point);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to record position of ambulance {} in the history log", ambulanceId, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Positions of one ambulance with {@code from <= timestamp <= to}, oldest first.
+     */
+    public List<TrackPoint> track(Long ambulanceId, Instant from, Instant to) {
+        int id = Math.toIntExact(ambulanceId);
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<TrackPoint> points = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // Segments are in append order, and so is each ambulance's track; each one skips itself when
+            // its sample times do not overlap the range
+            for (Segment segment : segments) {
+                segment.query(id, fromMillis, toMillis, points);
+            }
+            // The newest position may still be held back by the filter; the track should end where the ambulance is
+            TrackPoint pending = filter != null ? filter.pending(id) : null;
+            if (pending != null && !pending.getTimestamp().isBefore(from) && !pending.getTimestamp().isAfter(to)) {
+                points.add(pending);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return points;
+    }
+
+    /**
+     * Deletes segments past the retention and downsamples sealed segments past the compaction age. A
+     * compacted segment is written next to the original and moved over it, so a crash leaves one or the other.
+     */
+    @Scheduled(fixedDelayString = "${ambulance.history.maintenance-interval-ms:60000}")
+    public synchronized void maintain() {
+        long now = clock.millis();
+        long retainAfter = now - properties.getRetention().toMillis();
+        long compactBefore = now - properties.getCompactAfter().toMillis();
+        for (Segment segment : sealedSegments()) {
+            try {
+                if (segment.maxTimestamp() < retainAfter) {
+                    remove(segment);
+                } else if (!segment.isCompacted() && segment.maxTimestamp() < compactBefore) {
+                    compact(segment);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to maintain history segment {}", segment.path(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (filter != null) {
+                for (Map.Entry<Integer, TrackPoint> pending : filter.drain().entrySet()) {
+                    write(pending.getKey(), pending.getValue());
+                }
+            }
+            if (active != null) {
+                active.force();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to record held-back positions in the history log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve(PREFIX + "compacting" + SUFFIX));
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) files.filter(LocationHistoryLog::isSegment).sorted()::iterator) {
+                    Segment segment = Segment.open(path);
+                    segment.forEach((id, timestamp, latitude, longitude) -> lastTimestamps.merge(id, timestamp, Math::max));
+                    segments.add(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open location history in " + directory, e);
+        }
+        // Segments left by a previous run are sealed; appends start a new one
+        segments.sort(Comparator.comparingLong(Segment::startMillis));
+    }
+
+    private void write(int id, TrackPoint point) throws IOException {
+        long timestamp = point.getTimestamp().toEpochMilli();
+        segmentForAppend().append(id, timestamp, point.getLatitude(), point.getLongitude());
+        lastTimestamps.put(id, timestamp);
+    }
+
+    private Segment segmentForAppend() throws IOException {
+        long now = clock.millis();
+        if (active != null && !active.isFull()
+                && now < active.startMillis() + properties.getSegmentDuration().toMillis()) {
+            return active;
+        }
+        if (active != null) {
+            active.force();
+        }
+        // Start times name the files, so they must be unique even if the clock stands still
+        long start = segments.isEmpty() ? now : Math.max(now, segments.get(segments.size() - 1).startMillis() + 1);
+        active = Segment.create(segmentPath(start), start, properties.getSegmentRecords(), 0);
+        segments.add(active);
+        return active;
+    }
+
+    private List<Segment> sealedSegments() {
+        lock.readLock().lock();
+        try {
+            List<Segment> sealed = new ArrayList<>(segments);
+            sealed.remove(active);
+            return sealed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void remove(Segment segment) throws IOException {
+        lock.writeLock().lock();
+        try {
+            segments.remove(segment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Files.deleteIfExists(segment.path());
+    }
+
+    /**
+     * Keeps each ambulance's first sample in the segment and then one sample per downsample interval.
+     * Sealed segments are never written to, so the copy is made without holding the lock.
+     */
+    private void compact(Segment segment) throws IOException {
+        long interval = properties.getDownsampleInterval().toMillis();
+        Map<Integer, Long> lastKept = new HashMap<>();
+        List<long[]> kept = new ArrayList<>();
+        segment.forEach((id, timestamp, latitude, longitude) -> {
+            Long previous = lastKept.get(id);
+            if (previous == null || timestamp - previous >= interval) {
+                lastKept.put(id, timestamp);
+                kept.add(new long[]{id, timestamp, Double.doubleToRawLongBits(latitude), Double.doubleToRawLongBits(longitude)});
+            }
+        });
+
+        Path temporary = directory.resolve(PREFIX + "compacting" + SUFFIX);
+        Files.deleteIfExists(temporary);
+        Segment compacted = Segment.create(temporary, segment.startMillis(), kept.size(), Segment.FLAG_COMPACTED);
+        for (long[] record : kept) {
+            compacted.append((int) record[0], record[1], Double.longBitsToDouble(record[2]), Double.longBitsToDouble(record[3]));
+        }
+        compacted.force();
+        Files.move(temporary, segment.path(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        Segment reopened = Segment.open(segment.path());
+        lock.writeLock().lock();
+        try {
+            int position = segments.indexOf(segment);
+            if (position >= 0) {
+                segments.set(position, reopened);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Compacted history segment {} from {} to {} samples", segment.path(), segment.count(), kept.size());
+    }
+
+    private Path segmentPath(long startMillis) {
+        return directory.resolve(PREFIX + String.format("%015d", startMillis) + SUFFIX);
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && !name.contains("compacting");
+    }
+}
@@ -0,0 +1,244 @@
+package mine.ambulance_service.history;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * One memory-mapped file of fixed-width location samples, appended in arrival order.
+ * <p>
+ * Layout: a 32-byte header (magic, flags, capacity, record count, start millis) followed by 32-byte records
+ * of {@code int ambulanceId, int previousRecordOfSameAmbulance, long timestamp, double latitude,
+ * double longitude}. The back-pointers chain each ambulance's samples, so a range query walks only that
+ * ambulance's records; the in-memory sparse index (every {@value #SPARSE_EVERY}th sample per ambulance)
+ * tells it where to start walking back from.
+ * <p>
+ * Not thread-safe; {@link LocationHistoryLog} serialises access.
+ */
+final class Segment {
+
+    static final int MAGIC = 0x414D4C47;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 32;
+    static final int FLAG_COMPACTED = 1;
+    static final int SPARSE_EVERY = 32;
+
+    private static final int NO_RECORD = -1;
+
+    private final Path path;
+    private final long startMillis;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+    private final Map<Integer, AmbulanceIndex> index = new HashMap<>();
+    private int count;
+    private int flags;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    private Segment(Path path, long startMillis, int capacity, MappedByteBuffer buffer, int flags) {
+        this.path = path;
+        this.startMillis = startMillis;
+        this.capacity = capacity;
+        this.buffer = buffer;
+        this.flags = flags;
+    }
+
+    static Segment create(Path path, long startMillis, int capacity, int flags) throws IOException {
+        MappedByteBuffer buffer = map(path, HEADER_BYTES + (long) capacity * RECORD_BYTES,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, flags);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, 0);
+        buffer.putLong(16, startMillis);
+        return new Segment(path, startMillis, capacity, buffer, flags);
+    }
+
+    /**
+     * Maps an existing segment and rebuilds its in-memory index from the records.
+     */
+    static Segment open(Path path) throws IOException {
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+        }
+        MappedByteBuffer buffer = map(path, size, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a location history segment: " + path);
+        }
+        int capacity = buffer.getInt(8);
+        Segment segment = new Segment(path, buffer.getLong(16), capacity, buffer, buffer.getInt(4));
+        // The count is written after each record, so a torn last record is simply not counted
+        int stored = Math.min(buffer.getInt(12), (int) ((size - HEADER_BYTES) / RECORD_BYTES));
+        for (int position = 0; position < stored; position++) {
+            segment.indexRecord(position, segment.id(position), segment.timestamp(position));
+        }
+        segment.count = stored;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path path, long size, StandardOpenOption... options) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    void append(int ambulanceId, long timestamp, double latitude, double longitude) {
+        AmbulanceIndex ambulance = index.get(ambulanceId);
+        int offset = offset(count);
+        buffer.putInt(offset, ambulanceId);
+        buffer.putInt(offset + 4, ambulance != null ? ambulance.last : NO_RECORD);
+        buffer.putLong(offset + 8, timestamp);
+        buffer.putDouble(offset + 16, latitude);
+        buffer.putDouble(offset + 24, longitude);
+        indexRecord(count, ambulanceId, timestamp);
+        count++;
+        buffer.putInt(12, count);
+    }
+
+    /**
+     * Appends this ambulance's samples with {@code from <= timestamp <= to} to {@code out}, oldest first.
+     * Relies on each ambulance's samples being appended in timestamp order.
+     */
+    void query(int ambulanceId, long from, long to, List<TrackPoint> out) {
+        AmbulanceIndex ambulance = index.get(ambulanceId);
+        if (ambulance == null || from > maxTimestamp || to < minTimestamp) {
+            return;
+        }
+        // Start from the first indexed sample past the range, or the newest one, and walk back
+        int entry = ambulance.firstAfter(to);
+        int position = entry < ambulance.sparseCount ? ambulance.sparsePositions[entry] : ambulance.last;
+        int mark = out.size();
+        while (position != NO_RECORD) {
+            long timestamp = timestamp(position);
+            if (timestamp < from) {
+                break;
+            }
+            if (timestamp <= to) {
+                out.add(new TrackPoint(Instant.ofEpochMilli(timestamp), latitude(position), longitude(position)));
+            }
+            position = previous(position);
+        }
+        Collections.reverse(out.subList(mark, out.size()));
+    }
+
+    /**
+     * Visits every record in append order.
+     */
+    void forEach(RecordVisitor visitor) {
+        for (int position = 0; position < count; position++) {
+            visitor.visit(id(position), timestamp(position), latitude(position), longitude(position));
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long startMillis() {
+        return startMillis;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isCompacted() {
+        return (flags & FLAG_COMPACTED) != 0;
+    }
+
+    /**
+     * Newest sample timestamp, or the start time for an empty segment.
+     */
+    long maxTimestamp() {
+        return count == 0 ? startMillis : maxTimestamp;
+    }
+
+    private void indexRecord(int position, int ambulanceId, long timestamp) {
+        AmbulanceIndex ambulance = index.computeIfAbsent(ambulanceId, id -> new AmbulanceIndex());
+        if (ambulance.records % SPARSE_EVERY == 0) {
+            ambulance.addSparse(timestamp, position);
+        }
+        ambulance.records++;
+        ambulance.last = position;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    private int id(int position) {
+        return buffer.getInt(offset(position));
+    }
+
+    private int previous(int position) {
+        return buffer.getInt(offset(position) + 4);
+    }
+
+    private long timestamp(int position) {
+        return buffer.getLong(offset(position) + 8);
+    }
+
+    private double latitude(int position) {
+        return buffer.getDouble(offset(position) + 16);
+    }
+
+    private double longitude(int position) {
+        return buffer.getDouble(offset(position) + 24);
+    }
+
+    private static int offset(int position) {
+        return HEADER_BYTES + position * RECORD_BYTES;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(int ambulanceId, long timestamp, double latitude, double longitude);
+    }
+
+    private static final class AmbulanceIndex {
+        private int last = NO_RECORD;
+        private int records;
+        private long[] sparseTimestamps = new long[4];
+        private int[] sparsePositions = new int[4];
+        private int sparseCount;
+
+        void addSparse(long timestamp, int position) {
+            if (sparseCount == sparseTimestamps.length) {
+                sparseTimestamps = Arrays.copyOf(sparseTimestamps, sparseCount * 2);
+                sparsePositions = Arrays.copyOf(sparsePositions, sparseCount * 2);
+            }
+            sparseTimestamps[sparseCount] = timestamp;
+            sparsePositions[sparseCount] = position;
+            sparseCount++;
+        }
+
+        /**
+         * Index of the first sparse entry with a timestamp after {@code to}, or {@code sparseCount}.
+         */
+        int firstAfter(long to) {
+            int low = 0;
+            int high = sparseCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sparseTimestamps[mid] <= to) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
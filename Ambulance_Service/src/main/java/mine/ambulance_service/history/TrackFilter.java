@@ -0,0 +1,107 @@
+package mine.ambulance_service.history;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming simplification of incoming positions before they are written to the history log. For each
+ * ambulance it holds the last written point and the positions received since; as long as every held position
+ * lies within the tolerance of the straight line from the written point to the newest one, the ambulance is
+ * going straight and nothing is written. When a position would bend the line further than that, the one
+ * before it is where the track turned, and that one is written. A stationary ambulance still gets a point
+ * every {@code maxIntervalMillis}, so gaps in the history mean the ambulance was not reporting.
+ * <p>
+ * Not thread-safe; {@link LocationHistoryLog} calls it under its write lock.
+ */
+final class TrackFilter {
+
+    // Bounds the work per position and the memory per ambulance on a very long straight
+    private static final int MAX_HELD = 256;
+
+    private final double toleranceMeters;
+    private final long maxIntervalMillis;
+    private final Map<Integer, State> states = new HashMap<>();
+
+    TrackFilter(double toleranceMeters, long maxIntervalMillis) {
+        this.toleranceMeters = toleranceMeters;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    /**
+     * Takes a position and returns the point to write now, if any. Positions older than the newest one seen
+     * for the ambulance are ignored.
+     */
+    TrackPoint offer(int ambulanceId, long timestamp, double latitude, double longitude) {
+        TrackPoint point = new TrackPoint(Instant.ofEpochMilli(timestamp), latitude, longitude);
+        State state = states.get(ambulanceId);
+        if (state == null) {
+            states.put(ambulanceId, new State(point));
+            return point;
+        }
+        if (timestamp < state.newest().getTimestamp().toEpochMilli()) {
+            return null;
+        }
+        if (state.held.isEmpty() || extendsStraight(state, point)) {
+            state.held.add(point);
+            return null;
+        }
+        TrackPoint turn = state.held.get(state.held.size() - 1);
+        state.anchor = turn;
+        state.held.clear();
+        state.held.add(point);
+        return turn;
+    }
+
+    /**
+     * The newest position held back for an ambulance, not yet written.
+     */
+    TrackPoint pending(int ambulanceId) {
+        State state = states.get(ambulanceId);
+        return state == null || state.held.isEmpty() ? null : state.held.get(state.held.size() - 1);
+    }
+
+    /**
+     * Hands back the newest held position of every ambulance and forgets them, e.g. before shutting down.
+     */
+    Map<Integer, TrackPoint> drain() {
+        Map<Integer, TrackPoint> pending = new HashMap<>();
+        states.forEach((id, state) -> {
+            if (!state.held.isEmpty()) {
+                pending.put(id, state.held.get(state.held.size() - 1));
+            }
+        });
+        states.clear();
+        return pending;
+    }
+
+    private boolean extendsStraight(State state, TrackPoint next) {
+        if (state.held.size() >= MAX_HELD || next.getTimestamp().toEpochMilli()
+                - state.anchor.getTimestamp().toEpochMilli() > maxIntervalMillis) {
+            return false;
+        }
+        for (TrackPoint held : state.held) {
+            double distance = TrackSimplifier.distanceToSegmentMeters(held.getLatitude(), held.getLongitude(),
+                    state.anchor.getLatitude(), state.anchor.getLongitude(), next.getLatitude(), next.getLongitude());
+            if (distance > toleranceMeters) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class State {
+        private TrackPoint anchor;
+        private final List<TrackPoint> held = new ArrayList<>();
+
+        State(TrackPoint anchor) {
+            this.anchor = anchor;
+        }
+
+        TrackPoint newest() {
+            return held.isEmpty() ? anchor : held.get(held.size() - 1);
+        }
+    }
+}
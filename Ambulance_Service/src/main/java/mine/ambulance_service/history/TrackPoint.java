@@ -0,0 +1,31 @@
+package mine.ambulance_service.history;
+
+import java.time.Instant;
+
+/**
+ * One recorded position of an ambulance.
+ */
+public class TrackPoint {
+
+    private final Instant timestamp;
+    private final double latitude;
+    private final double longitude;
+
+    public TrackPoint(Instant timestamp, double latitude, double longitude) {
+        this.timestamp = timestamp;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+}
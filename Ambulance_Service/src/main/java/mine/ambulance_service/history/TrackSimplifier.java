@@ -0,0 +1,76 @@
+package mine.ambulance_service.history;
+
+import mine.ambulance_service.geo.GeoUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Douglas-Peucker simplification of a track: keeps the points that the path bends through and drops the
+ * ones lying within {@code toleranceMeters} of the line between their neighbours that are kept. The first and
+ * last points are always kept, so the track still covers the requested range.
+ */
+public final class TrackSimplifier {
+
+    private TrackSimplifier() {
+    }
+
+    public static List<TrackPoint> simplify(List<TrackPoint> track, double toleranceMeters) {
+        if (toleranceMeters <= 0 || track.size() < 3) {
+            return track;
+        }
+        boolean[] keep = new boolean[track.size()];
+        keep[0] = true;
+        keep[track.size() - 1] = true;
+        // Explicit stack: a long, nearly straight track would recurse once per point
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, track.size() - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            TrackPoint start = track.get(range[0]);
+            TrackPoint end = track.get(range[1]);
+            int farthest = -1;
+            double farthestDistance = toleranceMeters;
+            for (int i = range[0] + 1; i < range[1]; i++) {
+                TrackPoint point = track.get(i);
+                double distance = distanceToSegmentMeters(point.getLatitude(), point.getLongitude(),
+                        start.getLatitude(), start.getLongitude(), end.getLatitude(), end.getLongitude());
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                ranges.push(new int[]{range[0], farthest});
+                ranges.push(new int[]{farthest, range[1]});
+            }
+        }
+        List<TrackPoint> simplified = new ArrayList<>();
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                simplified.add(track.get(i));
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Distance in meters from a point to the segment between two others, on a flat projection around the
+     * segment's start. Good to well under a meter over the few kilometres between consecutive track points.
+     */
+    static double distanceToSegmentMeters(double latitude, double longitude,
+                                          double startLatitude, double startLongitude,
+                                          double endLatitude, double endLongitude) {
+        double metersPerLongitude = GeoUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(startLatitude));
+        double x = (longitude - startLongitude) * metersPerLongitude;
+        double y = (latitude - startLatitude) * GeoUtils.METERS_PER_DEGREE;
+        double segmentX = (endLongitude - startLongitude) * metersPerLongitude;
+        double segmentY = (endLatitude - startLatitude) * GeoUtils.METERS_PER_DEGREE;
+        double lengthSquared = segmentX * segmentX + segmentY * segmentY;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (x * segmentX + y * segmentY) / lengthSquared));
+        return Math.hypot(x - t * segmentX, y - t * segmentY);
+    }
+}
@@ -23,6 +23,14 @@ public class Ambulance {
     @Column(nullable = false)
     private Double longitude;
 
+    // Epoch millis of the GPS sample the position came from; older samples are ignored
+    private Long locationTimestamp;
+
+    // Bumped by every write except position pings, which are ordered by locationTimestamp instead; served in
+    // the ETag so clients can make conditional updates with If-Match
+    @Version
+    private Long version;
+
     public Long getId() {
         return id;
     }
@@ -62,4 +70,20 @@ public class Ambulance {
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
     }
+
+    public Long getLocationTimestamp() {
+        return locationTimestamp;
+    }
+
+    public void setLocationTimestamp(Long locationTimestamp) {
+        this.locationTimestamp = locationTimestamp;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,53 @@
+package mine.ambulance_service.repository;
+
+import mine.ambulance_service.dto.LocationSample;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Position writes that bypass the entity lifecycle: one batched UPDATE per flush instead of a select and a
+ * full-row save per sample. The timestamp guard lives in the statement itself, so a late
+ * sample can never overwrite a newer position even when two batches race.
+ */
+@Repository
+public class AmbulanceLocationWriter {
+
+    private static final String UPDATE_LOCATION =
+            "UPDATE ambulances SET latitude = ?, longitude = ?, location_timestamp = ? "
+                    + "WHERE id = ? AND (location_timestamp IS NULL OR location_timestamp < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AmbulanceLocationWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns the JDBC update count per sample: 1 if written, 0 if the ambulance is missing or already has a
+     * newer position. Drivers that rewrite batches may report {@link java.sql.Statement#SUCCESS_NO_INFO}.
+     */
+    public int[] updateLocations(List<LocationSample> samples) {
+        return jdbcTemplate.batchUpdate(UPDATE_LOCATION, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                LocationSample sample = samples.get(i);
+                long timestamp = sample.getTimestamp().toEpochMilli();
+                statement.setDouble(1, sample.getLatitude());
+                statement.setDouble(2, sample.getLongitude());
+                statement.setLong(3, timestamp);
+                statement.setLong(4, sample.getId());
+                statement.setLong(5, timestamp);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return samples.size();
+            }
+        });
+    }
+}
@@ -1,10 +1,56 @@
 package mine.ambulance_service.repository;
 
 import mine.ambulance_service.model.Ambulance;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface AmbulanceRepository extends JpaRepository<Ambulance, Integer> {
-    // Additional query methods if needed
+    List<Ambulance> findByAvailable(boolean available);
+
+    List<Ambulance> findByIdInAndAvailable(Collection<Integer> ids, boolean available);
+
+    // Keyset pages: the primary key index serves both the seek and the order
+    List<Ambulance> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+
+    List<Ambulance> findByAvailableAndIdGreaterThanOrderByIdAsc(boolean available, Long after, Pageable pageable);
+
+    /**
+     * Flips {@code available} only if it currently holds {@code expected}, in a single statement.
+     * Returns 1 if this call won, 0 if the ambulance is missing or already in the requested state.
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Ambulance a SET a.available = :available, a.version = a.version + 1 "
+            + "WHERE a.id = :id AND a.available = :expected")
+    int compareAndSetAvailable(@Param("id") Long id, @Param("expected") boolean expected,
+                               @Param("available") boolean available);
+
+    /**
+     * Sets {@code available} and bumps the version in one statement, leaving the other columns alone.
+     * Returns 0 if the ambulance is missing.
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Ambulance a SET a.available = :available, a.version = a.version + 1 WHERE a.id = :id")
+    int updateAvailable(@Param("id") Long id, @Param("available") boolean available);
+
+    /**
+     * Like {@link #updateAvailable} but only while the row is still at {@code version}. Returns 0 if the
+     * ambulance is missing or was written since.
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Ambulance a SET a.available = :available, a.version = a.version + 1 "
+            + "WHERE a.id = :id AND a.version = :version")
+    int updateAvailableIfVersion(@Param("id") Long id, @Param("available") boolean available,
+                                 @Param("version") Long version);
 }
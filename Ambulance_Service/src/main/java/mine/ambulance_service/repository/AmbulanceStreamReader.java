@@ -0,0 +1,59 @@
+package mine.ambulance_service.repository;
+
+import mine.ambulance_service.model.Ambulance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Reads the fleet row by row off a JDBC cursor, for responses that are written out as they are read. Rows
+ * never enter a persistence context and are not collected, so memory stays flat however large the fleet.
+ * With MySQL this needs {@code useCursorFetch=true} on the connection URL; otherwise the driver still
+ * buffers the whole result.
+ */
+@Repository
+public class AmbulanceStreamReader {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String SELECT_AMBULANCES =
+            "SELECT id, driver_name, available, latitude, longitude, location_timestamp, version "
+                    + "FROM ambulances WHERE id > ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AmbulanceStreamReader(JdbcTemplate jdbcTemplate) {
+        // Own template so the fetch size applies to these reads only
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Hands every ambulance with an id above {@code after}, optionally filtered by availability, to
+     * {@code action} in id order.
+     */
+    public void forEach(Boolean available, long after, Consumer<Ambulance> action) {
+        RowCallbackHandler handler = resultSet -> action.accept(map(resultSet));
+        if (available == null) {
+            jdbcTemplate.query(SELECT_AMBULANCES + " ORDER BY id", handler, after);
+        } else {
+            jdbcTemplate.query(SELECT_AMBULANCES + " AND available = ? ORDER BY id", handler, after, available);
+        }
+    }
+
+    private static Ambulance map(ResultSet resultSet) throws SQLException {
+        Ambulance ambulance = new Ambulance();
+        ambulance.setId(resultSet.getLong("id"));
+        ambulance.setDriverName(resultSet.getString("driver_name"));
+        ambulance.setAvailable(resultSet.getBoolean("available"));
+        ambulance.setLatitude(resultSet.getDouble("latitude"));
+        ambulance.setLongitude(resultSet.getDouble("longitude"));
+        ambulance.setLocationTimestamp(resultSet.getObject("location_timestamp", Long.class));
+        ambulance.setVersion(resultSet.getObject("version", Long.class));
+        return ambulance;
+    }
+}
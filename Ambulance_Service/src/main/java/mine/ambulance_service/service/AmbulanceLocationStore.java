@@ -0,0 +1,268 @@
+package mine.ambulance_service.service;
+
+import jakarta.annotation.PreDestroy;
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.geo.GeoUtils;
+import mine.ambulance_service.model.Ambulance;
+import mine.ambulance_service.repository.AmbulanceLocationWriter;
+import mine.ambulance_service.repository.AmbulanceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Current position of every ambulance, held in memory. GPS pings land here and are written to the database
+ * on a fixed interval, one batched UPDATE per flush with only the last position per ambulance, so the
+ * database sees at most one write per ambulance per interval however often it pings. Reads overlay these
+ * positions on what the database returns, so they are as fresh as the last ping.
+ * <p>
+ * Positions are lost if the process dies between a ping and the next flush; the next ping restores them.
+ */
+@Component
+public class AmbulanceLocationStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AmbulanceLocationStore.class);
+
+    private final AmbulanceRepository ambulanceRepository;
+    private final AmbulanceLocationWriter locationWriter;
+
+    // Grid cell edge for radius queries, about 1.1 km of latitude
+    private static final double CELL_DEGREES = 0.01;
+
+    // ConcurrentHashMap locks per bin, so pings for different ambulances do not contend
+    private final ConcurrentHashMap<Long, Position> positions = new ConcurrentHashMap<>();
+    // Ambulance ids by grid cell; kept in step with positions inside their per-key updates
+    private final ConcurrentHashMap<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    public AmbulanceLocationStore(AmbulanceRepository ambulanceRepository, AmbulanceLocationWriter locationWriter) {
+        this.ambulanceRepository = ambulanceRepository;
+        this.locationWriter = locationWriter;
+    }
+
+    /**
+     * Takes a position if it is newer than the one held; written to the database on the next flush.
+     */
+    public LocationUpdateResult.Status offer(Long id, double latitude, double longitude, long timestamp) {
+        ensureLoaded();
+        boolean[] applied = new boolean[1];
+        Position result = positions.computeIfPresent(id, (key, current) -> {
+            if (timestamp <= current.timestamp) {
+                return current;
+            }
+            applied[0] = true;
+            Position next = new Position(latitude, longitude, timestamp);
+            moveCell(key, current, next);
+            return next;
+        });
+        if (result == null) {
+            return LocationUpdateResult.Status.NOT_FOUND;
+        }
+        if (!applied[0]) {
+            return LocationUpdateResult.Status.STALE;
+        }
+        dirty.add(id);
+        return LocationUpdateResult.Status.APPLIED;
+    }
+
+    /**
+     * Records the position of an ambulance that was just saved in full, e.g. on create or replace.
+     */
+    public void track(Ambulance ambulance) {
+        if (ambulance.getId() == null || ambulance.getLatitude() == null || ambulance.getLongitude() == null) {
+            return;
+        }
+        Position saved = new Position(ambulance.getLatitude(), ambulance.getLongitude(),
+                ambulance.getLocationTimestamp() != null ? ambulance.getLocationTimestamp() : 0L);
+        positions.compute(ambulance.getId(), (id, current) -> {
+            if (current != null && saved.timestamp < current.timestamp) {
+                return current;
+            }
+            moveCell(id, current, saved);
+            return saved;
+        });
+    }
+
+    public void forget(Long id) {
+        positions.computeIfPresent(id, (key, current) -> {
+            moveCell(key, current, null);
+            return null;
+        });
+        dirty.remove(id);
+    }
+
+    /**
+     * Replaces the ambulance's position with the one held here when that is newer. Returns the same instance.
+     */
+    public Ambulance overlay(Ambulance ambulance) {
+        if (ambulance == null || ambulance.getId() == null) {
+            return ambulance;
+        }
+        Position position = positions.get(ambulance.getId());
+        if (position != null && (ambulance.getLocationTimestamp() == null
+                || position.timestamp > ambulance.getLocationTimestamp())) {
+            ambulance.setLatitude(position.latitude);
+            ambulance.setLongitude(position.longitude);
+            ambulance.setLocationTimestamp(position.timestamp);
+        }
+        return ambulance;
+    }
+
+    /**
+     * Ids of the ambulances whose current position is within {@code radiusMeters} of the given point, closest
+     * first. Served from memory, so an ambulance is found as soon as its ping lands, not after the next flush.
+     * Only the grid cells overlapping the circle's bounding box are scanned.
+     */
+    public List<Long> withinRadius(double latitude, double longitude, double radiusMeters) {
+        ensureLoaded();
+        double latitudeDelta = radiusMeters / GeoUtils.METERS_PER_DEGREE;
+        double minLatitude = Math.max(-90, latitude - latitudeDelta);
+        double maxLatitude = Math.min(90, latitude + latitudeDelta);
+        // A degree of longitude shrinks with the cosine of the latitude; widen the box at its poleward edge
+        double cosine = Math.cos(Math.toRadians(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude))));
+        double longitudeDelta = cosine > 1e-6 ? latitudeDelta / cosine : 180;
+
+        List<Map.Entry<Long, Double>> inRange = new ArrayList<>();
+        long minRow = cell(minLatitude);
+        long maxRow = cell(maxLatitude);
+        long minColumn = cell(longitude - longitudeDelta);
+        long maxColumn = cell(longitude + longitudeDelta);
+        boolean wraps = longitude - longitudeDelta < -180 || longitude + longitudeDelta > 180;
+        if (wraps || (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > positions.size()) {
+            // More cells than ambulances, or a box across the antimeridian: checking every position is cheaper
+            positions.forEach((id, position) -> collect(id, position, latitude, longitude, radiusMeters, inRange));
+        } else {
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long column = minColumn; column <= maxColumn; column++) {
+                    Set<Long> members = cells.get(cellKey(row, column));
+                    if (members == null) {
+                        continue;
+                    }
+                    for (Long id : members) {
+                        Position position = positions.get(id);
+                        if (position != null) {
+                            collect(id, position, latitude, longitude, radiusMeters, inRange);
+                        }
+                    }
+                }
+            }
+        }
+        inRange.sort(Map.Entry.comparingByValue());
+        List<Long> ids = new ArrayList<>(inRange.size());
+        inRange.forEach(entry -> ids.add(entry.getKey()));
+        return ids;
+    }
+
+    private static void collect(Long id, Position position, double latitude, double longitude, double radiusMeters,
+                                List<Map.Entry<Long, Double>> inRange) {
+        double distance = GeoUtils.haversineMeters(latitude, longitude, position.latitude, position.longitude);
+        if (distance <= radiusMeters) {
+            inRange.add(Map.entry(id, distance));
+        }
+    }
+
+    private void moveCell(Long id, Position from, Position to) {
+        Long fromKey = from != null ? cellKey(from) : null;
+        Long toKey = to != null ? cellKey(to) : null;
+        if (Objects.equals(fromKey, toKey)) {
+            return;
+        }
+        if (fromKey != null) {
+            cells.computeIfPresent(fromKey, (key, members) -> {
+                members.remove(id);
+                return members.isEmpty() ? null : members;
+            });
+        }
+        if (toKey != null) {
+            cells.computeIfAbsent(toKey, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private static long cellKey(Position position) {
+        return cellKey(cell(position.latitude), cell(position.longitude));
+    }
+
+    private static long cellKey(long row, long column) {
+        return (row << 32) ^ (column & 0xffffffffL);
+    }
+
+    private static long cell(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    public int pendingCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Writes the last position of every ambulance that moved since the previous flush. The UPDATE keeps its
+     * timestamp guard, so a flush racing a direct write cannot move an ambulance backwards.
+     */
+    @Scheduled(fixedDelayString = "${ambulance.locations.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<LocationSample> batch = new ArrayList<>(dirty.size());
+        for (Iterator<Long> iterator = dirty.iterator(); iterator.hasNext(); ) {
+            Long id = iterator.next();
+            // Removed before the position is read: a ping landing in between marks it dirty again
+            iterator.remove();
+            Position position = positions.get(id);
+            if (position != null) {
+                batch.add(new LocationSample(id, position.latitude, position.longitude,
+                        Instant.ofEpochMilli(position.timestamp)));
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            locationWriter.updateLocations(batch);
+        } catch (RuntimeException e) {
+            batch.forEach(sample -> dirty.add(sample.getId()));
+            log.warn("Failed to flush {} ambulance positions, will retry", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                ambulanceRepository.findAll().forEach(this::track);
+                loaded = true;
+            }
+        }
+    }
+
+    private static class Position {
+        private final double latitude;
+        private final double longitude;
+        private final long timestamp;
+
+        Position(double latitude, double longitude, long timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -1,67 +1,296 @@
 package mine.ambulance_service.service;
 
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.change.FleetSnapshot;
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.history.LocationHistoryLog;
+import mine.ambulance_service.history.TrackPoint;
+import mine.ambulance_service.history.TrackSimplifier;
 import mine.ambulance_service.model.Ambulance;
 import mine.ambulance_service.repository.AmbulanceRepository;
+import mine.ambulance_service.repository.AmbulanceStreamReader;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Optional;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class AmbulanceService {
 
     private final AmbulanceRepository ambulanceRepository;
+    private final AmbulanceChangeLog changeLog;
+    private final AmbulanceLocationStore locationStore;
+    private final LocationHistoryLog historyLog;
+    private final AmbulanceStreamReader streamReader;
 
-    public AmbulanceService(AmbulanceRepository ambulanceRepository) {
+    public AmbulanceService(AmbulanceRepository ambulanceRepository, AmbulanceChangeLog changeLog,
+                            AmbulanceLocationStore locationStore, LocationHistoryLog historyLog,
+                            AmbulanceStreamReader streamReader) {
         this.ambulanceRepository = ambulanceRepository;
+        this.changeLog = changeLog;
+        this.locationStore = locationStore;
+        this.historyLog = historyLog;
+        this.streamReader = streamReader;
     }
 
     public List<Ambulance> getAllAmbulances() {
-        return ambulanceRepository.findAll();
+        return withLatestLocations(ambulanceRepository.findAll());
+    }
+
+    /**
+     * Resolves a set of ambulances in one query, optionally restricted by availability.
+     * A null {@code ids} means the whole fleet.
+     */
+    public List<Ambulance> getAmbulances(List<Integer> ids, Boolean available) {
+        if (ids == null) {
+            return withLatestLocations(available == null
+                    ? ambulanceRepository.findAll()
+                    : ambulanceRepository.findByAvailable(available));
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return withLatestLocations(available == null
+                ? ambulanceRepository.findAllById(ids)
+                : ambulanceRepository.findByIdInAndAvailable(ids, available));
+    }
+
+    /**
+     * Up to {@code limit} ambulances with an id above {@code after} (null for the first page), in id order.
+     */
+    public List<Ambulance> getAmbulancePage(Long after, int limit, Boolean available) {
+        long from = after != null ? after : 0L;
+        PageRequest page = PageRequest.of(0, limit);
+        return withLatestLocations(available == null
+                ? ambulanceRepository.findByIdGreaterThanOrderByIdAsc(from, page)
+                : ambulanceRepository.findByAvailableAndIdGreaterThanOrderByIdAsc(available, from, page));
+    }
+
+    /**
+     * Hands the ambulances to {@code action} one at a time, in id order, as they are read from the database.
+     */
+    public void streamAmbulances(Boolean available, Long after, Consumer<Ambulance> action) {
+        streamReader.forEach(available, after != null ? after : 0L, ambulance -> action.accept(locationStore.overlay(ambulance)));
+    }
+
+    /**
+     * Up to {@code k} ambulances within {@code radiusMeters} of the given point, closest first. Candidates come
+     * from the in-memory positions, which are ahead of the database between flushes. Rows are then loaded
+     * {@code k} at a time in distance order, applying the availability filter, until {@code k} have matched, so
+     * a wide radius does not read the whole fleet.
+     */
+    public List<Ambulance> findNearest(double latitude, double longitude, int k, double radiusMeters, Boolean available) {
+        List<Long> inRange = locationStore.withinRadius(latitude, longitude, radiusMeters);
+        List<Ambulance> nearest = new ArrayList<>(Math.min(k, inRange.size()));
+        for (int from = 0; from < inRange.size() && nearest.size() < k; from += k) {
+            List<Long> chunk = inRange.subList(from, Math.min(from + k, inRange.size()));
+            List<Integer> ids = chunk.stream().map(Math::toIntExact).toList();
+            Map<Long, Ambulance> byId = new HashMap<>();
+            (available == null
+                    ? ambulanceRepository.findAllById(ids)
+                    : ambulanceRepository.findByIdInAndAvailable(ids, available))
+                    .forEach(ambulance -> byId.put(ambulance.getId(), locationStore.overlay(ambulance)));
+            for (Long id : chunk) {
+                Ambulance ambulance = byId.get(id);
+                if (ambulance != null && nearest.size() < k) {
+                    nearest.add(ambulance);
+                }
+            }
+        }
+        return nearest;
     }
 
     public Optional<Ambulance> getAmbulanceById(Long id) {
-        return ambulanceRepository.findById(Math.toIntExact(id));
+        return ambulanceRepository.findById(Math.toIntExact(id)).map(locationStore::overlay);
+    }
+
+    /**
+     * The whole fleet for a reader starting to follow the change log.
+     */
+    public FleetSnapshot getSnapshot() {
+        long cursor = changeLog.cursor();
+        return new FleetSnapshot(cursor, withLatestLocations(ambulanceRepository.findAll()));
     }
 
     public Ambulance createAmbulance(Ambulance ambulance) {
-        return ambulanceRepository.save(ambulance);
+        // A client-supplied version would make the save a merge of a row that does not exist
+        ambulance.setVersion(null);
+        return saveAndRecord(ambulance);
     }
 
-    public Optional<Ambulance> updateAmbulance(Long id, Ambulance updatedAmbulance) {
-        return ambulanceRepository.findById(Math.toIntExact(id))
-                .map(existingAmbulance -> {
-                    existingAmbulance.setAvailable(updatedAmbulance.isAvailable());
-                    existingAmbulance.setLatitude(updatedAmbulance.getLatitude());
-                    existingAmbulance.setLongitude(updatedAmbulance.getLongitude());
-                    existingAmbulance.setDriverName(updatedAmbulance.getDriverName());
-                    existingAmbulance.setId(updatedAmbulance.getId());
-                    return ambulanceRepository.save(existingAmbulance);
-                });
-    }
-    public Optional<Ambulance> updateAmbulanceLocation(Long id, Double latitude, Double longitude) {
-        return ambulanceRepository.findById(Math.toIntExact(id))
-                .map(existingAmbulance -> {
-                    existingAmbulance.setLatitude(latitude);
-                    existingAmbulance.setLongitude(longitude);
-                    return ambulanceRepository.save(existingAmbulance);
-                });
+    /**
+     * Replaces the ambulance's fields, keeping its id. With an {@code expectedVersion} the update only goes
+     * ahead if the ambulance is still at that version; either way the save itself is guarded by the entity
+     * version, so a write that landed after our read is never silently overwritten.
+     */
+    public UpdateResult updateAmbulance(Long id, Ambulance updatedAmbulance, Long expectedVersion) {
+        Optional<Ambulance> found = ambulanceRepository.findById(Math.toIntExact(id));
+        if (found.isEmpty()) {
+            return UpdateResult.notFound();
+        }
+        Ambulance existingAmbulance = found.get();
+        if (expectedVersion != null && !expectedVersion.equals(existingAmbulance.getVersion())) {
+            return UpdateResult.versionMismatch(locationStore.overlay(existingAmbulance));
+        }
+        existingAmbulance.setAvailable(updatedAmbulance.isAvailable());
+        existingAmbulance.setLatitude(updatedAmbulance.getLatitude());
+        existingAmbulance.setLongitude(updatedAmbulance.getLongitude());
+        existingAmbulance.setLocationTimestamp(System.currentTimeMillis());
+        existingAmbulance.setDriverName(updatedAmbulance.getDriverName());
+        try {
+            return UpdateResult.updated(saveAndRecord(existingAmbulance));
+        } catch (OptimisticLockingFailureException e) {
+            if (expectedVersion == null) {
+                return UpdateResult.conflict();
+            }
+            return getAmbulanceById(id).map(UpdateResult::versionMismatch).orElseGet(UpdateResult::notFound);
+        }
+    }
+
+    /**
+     * Takes the new position into the in-memory store; the database catches up on the next flush. Positions
+     * do not bump the version, so an {@code expectedVersion} only asserts that nothing else about the
+     * ambulance changed.
+     */
+    public UpdateResult updateAmbulanceLocation(Long id, Double latitude, Double longitude, Long expectedVersion) {
+        if (latitude == null || longitude == null) {
+            throw new IllegalArgumentException("Latitude and longitude must not be null.");
+        }
+        if (expectedVersion != null) {
+            Optional<Ambulance> current = getAmbulanceById(id);
+            if (current.isEmpty()) {
+                return UpdateResult.notFound();
+            }
+            if (!expectedVersion.equals(current.get().getVersion())) {
+                return UpdateResult.versionMismatch(current.get());
+            }
+        }
+        long timestamp = System.currentTimeMillis();
+        LocationUpdateResult.Status status = locationStore.offer(id, latitude, longitude, timestamp);
+        if (status == LocationUpdateResult.Status.NOT_FOUND) {
+            return UpdateResult.notFound();
+        }
+        if (status == LocationUpdateResult.Status.APPLIED) {
+            changeLog.recordLocation(id, latitude, longitude);
+            historyLog.append(id, timestamp, latitude, longitude);
+        }
+        return getAmbulanceById(id).map(UpdateResult::updated).orElseGet(UpdateResult::notFound);
+    }
+
+    /**
+     * Applies a batch of GPS samples to the in-memory store; they reach the database with the next flush.
+     * A sample no newer than the position already held is reported STALE. Results are in request order.
+     */
+    public List<LocationUpdateResult> ingestLocations(List<LocationSample> samples) {
+        List<LocationUpdateResult> results = new ArrayList<>(samples.size());
+        for (LocationSample sample : samples) {
+            if (!isValid(sample)) {
+                results.add(new LocationUpdateResult(sample != null ? sample.getId() : null,
+                        LocationUpdateResult.Status.INVALID));
+                continue;
+            }
+            long timestamp = sample.getTimestamp().toEpochMilli();
+            LocationUpdateResult.Status status = locationStore.offer(sample.getId(), sample.getLatitude(),
+                    sample.getLongitude(), timestamp);
+            if (status == LocationUpdateResult.Status.APPLIED) {
+                changeLog.recordLocation(sample.getId(), sample.getLatitude(), sample.getLongitude());
+                historyLog.append(sample.getId(), timestamp, sample.getLatitude(), sample.getLongitude());
+            }
+            results.add(new LocationUpdateResult(sample.getId(), status));
+        }
+        return results;
+    }
+
+    /**
+     * Recorded positions of an ambulance between {@code from} and {@code to}, oldest first, simplified so
+     * that no dropped point was further than {@code toleranceMeters} from the returned path (0 returns every
+     * recorded point). Empty when the ambulance does not exist.
+     */
+    public Optional<List<TrackPoint>> getTrack(Long id, Instant from, Instant to, double toleranceMeters) {
+        if (!ambulanceRepository.existsById(Math.toIntExact(id))) {
+            return Optional.empty();
+        }
+        return Optional.of(TrackSimplifier.simplify(historyLog.track(id, from, to), toleranceMeters));
+    }
+
+    private static boolean isValid(LocationSample sample) {
+        return sample != null && sample.getId() != null && sample.getTimestamp() != null
+                && sample.getLatitude() != null && sample.getLatitude() >= -90 && sample.getLatitude() <= 90
+                && sample.getLongitude() != null && sample.getLongitude() >= -180 && sample.getLongitude() <= 180;
     }
 
     public boolean deleteAmbulance(Long id) {
         return ambulanceRepository.findById(Math.toIntExact(id))
                 .map(ambulance -> {
                     ambulanceRepository.delete(ambulance);
+                    locationStore.forget(ambulance.getId());
+                    changeLog.recordRemoval(ambulance.getId());
                     return true;
                 }).orElse(false);
     }
 
-    public Optional<Ambulance> updateAmbulanceAvailability(Long id, boolean available) {
-        return ambulanceRepository.findById(Math.toIntExact(id))
-                .map(existingAmbulance -> {
-                    existingAmbulance.setAvailable(available);
-                    return ambulanceRepository.save(existingAmbulance);
-                });
+    /**
+     * Atomically takes an available ambulance out of service. Unlike {@link #updateAmbulanceAvailability},
+     * two concurrent callers can never both get {@link ReservationResult#RESERVED}.
+     */
+    public ReservationResult reserveAmbulance(Long id) {
+        return compareAndSetAvailable(id, true, false);
+    }
+
+    /**
+     * Returns a reserved ambulance to service, e.g. when the dispatch that reserved it could not go ahead.
+     */
+    public ReservationResult releaseAmbulance(Long id) {
+        return compareAndSetAvailable(id, false, true);
+    }
+
+    private ReservationResult compareAndSetAvailable(Long id, boolean expected, boolean available) {
+        if (ambulanceRepository.compareAndSetAvailable(id, expected, available) == 1) {
+            changeLog.recordAvailability(id, available);
+            return ReservationResult.RESERVED;
+        }
+        return ambulanceRepository.existsById(Math.toIntExact(id)) ? ReservationResult.CONFLICT : ReservationResult.NOT_FOUND;
+    }
+
+    /**
+     * Writes only the availability column, so it cannot undo a concurrent position or driver change. With an
+     * {@code expectedVersion} the write is a compare-and-set on the version, in the same statement.
+     */
+    public UpdateResult updateAmbulanceAvailability(Long id, boolean available, Long expectedVersion) {
+        int updated = expectedVersion == null
+                ? ambulanceRepository.updateAvailable(id, available)
+                : ambulanceRepository.updateAvailableIfVersion(id, available, expectedVersion);
+        Optional<Ambulance> current = getAmbulanceById(id);
+        if (current.isEmpty()) {
+            return UpdateResult.notFound();
+        }
+        if (updated == 0) {
+            return UpdateResult.versionMismatch(current.get());
+        }
+        changeLog.recordAvailability(id, available);
+        return UpdateResult.updated(current.get());
+    }
+
+    private Ambulance saveAndRecord(Ambulance ambulance) {
+        // A full-row save must not write back a position older than the one held in memory
+        Ambulance saved = ambulanceRepository.save(locationStore.overlay(ambulance));
+        locationStore.track(saved);
+        changeLog.recordState(saved);
+        return saved;
+    }
+
+    private List<Ambulance> withLatestLocations(List<Ambulance> ambulances) {
+        ambulances.forEach(locationStore::overlay);
+        return ambulances;
     }
 
+    public enum ReservationResult {
+        RESERVED,
+        CONFLICT,
+        NOT_FOUND
+    }
 }
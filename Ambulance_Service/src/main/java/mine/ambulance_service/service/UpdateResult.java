@@ -0,0 +1,51 @@
+package mine.ambulance_service.service;
+
+import mine.ambulance_service.model.Ambulance;
+
+/**
+ * Outcome of a conditional update. Carries the ambulance as stored after the update, or as it currently is
+ * when the caller's expected version did not match.
+ */
+public class UpdateResult {
+
+    private final Status status;
+    private final Ambulance ambulance;
+
+    private UpdateResult(Status status, Ambulance ambulance) {
+        this.status = status;
+        this.ambulance = ambulance;
+    }
+
+    public static UpdateResult updated(Ambulance ambulance) {
+        return new UpdateResult(Status.UPDATED, ambulance);
+    }
+
+    public static UpdateResult notFound() {
+        return new UpdateResult(Status.NOT_FOUND, null);
+    }
+
+    public static UpdateResult versionMismatch(Ambulance current) {
+        return new UpdateResult(Status.VERSION_MISMATCH, current);
+    }
+
+    public static UpdateResult conflict() {
+        return new UpdateResult(Status.CONFLICT, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Ambulance getAmbulance() {
+        return ambulance;
+    }
+
+    public enum Status {
+        UPDATED,
+        NOT_FOUND,
+        // The caller expected a version the ambulance is no longer at
+        VERSION_MISMATCH,
+        // Someone else wrote the row between our read and our write, and the caller named no version
+        CONFLICT
+    }
+}
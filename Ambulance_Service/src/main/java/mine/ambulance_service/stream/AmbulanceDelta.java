@@ -0,0 +1,45 @@
+package mine.ambulance_service.stream;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * What changed about one ambulance since the client last heard of it. Unchanged fields are left out of the
+ * JSON; {@code removed} means the ambulance was deleted or left the client's bounding box.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AmbulanceDelta {
+
+    private final Long id;
+    private final Double latitude;
+    private final Double longitude;
+    private final Boolean available;
+    private final Boolean removed;
+
+    AmbulanceDelta(Long id, Double latitude, Double longitude, Boolean available, Boolean removed) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.available = available;
+        this.removed = removed;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public Boolean getAvailable() {
+        return available;
+    }
+
+    public Boolean getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,27 @@
+package mine.ambulance_service.stream;
+
+/**
+ * The area a stream client watches. Boxes crossing the antimeridian are not supported; such a client
+ * subscribes to the whole world instead.
+ */
+public class BoundingBox {
+
+    public static final BoundingBox WORLD = new BoundingBox(-90, 90, -180, 180);
+
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    public BoundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+}
@@ -0,0 +1,19 @@
+package mine.ambulance_service.stream;
+
+import java.io.IOException;
+
+/**
+ * Where a stream client's events go; an {@link org.springframework.web.servlet.mvc.method.annotation.SseEmitter}
+ * in production.
+ */
+@FunctionalInterface
+interface EventSink {
+
+    void send(String event, Object data) throws IOException;
+
+    /**
+     * Ends the connection after a failed or overrunning send.
+     */
+    default void close(Exception cause) {
+    }
+}
@@ -0,0 +1,362 @@
+package mine.ambulance_service.stream;
+
+import jakarta.annotation.PreDestroy;
+import mine.ambulance_service.change.AmbulanceChange;
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.change.ChangeBatch;
+import mine.ambulance_service.change.FleetSnapshot;
+import mine.ambulance_service.model.Ambulance;
+import mine.ambulance_service.service.AmbulanceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes fleet positions to dashboards. Each client first gets a snapshot of the ambulances in its bounding
+ * box, then only what changed: moved positions, availability flips, and removals for ambulances that were
+ * deleted or left the box. Changes are read from the {@link AmbulanceChangeLog} every tick and marked per
+ * client; a client that is still busy receiving its previous event just accumulates marks, so when it
+ * catches up it gets each ambulance's latest state once and the positions in between are never sent.
+ * <p>
+ * Sends block, so each one runs on its own pooled thread rather than a small fixed pool, where a few stalled
+ * connections could hold up everyone else. A send still running after {@code ambulance.stream.send-timeout-ms}
+ * gets its client cut off, which bounds how many threads stalled connections can hold.
+ */
+@Component
+public class FleetStream {
+
+    private static final int READ_LIMIT = 1000;
+
+    // Positions are sent rounded to about a metre; smaller moves are not worth a delta
+    private static final double COORDINATE_SCALE = 1e5;
+
+    private final AmbulanceChangeLog changeLog;
+    private final AmbulanceService ambulanceService;
+    private final Executor sender;
+    private final long heartbeatMillis;
+    private final long sendTimeoutMillis;
+    private final boolean ownsSender;
+
+    private final Map<Long, AmbulanceState> fleet = new ConcurrentHashMap<>();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private long cursor;
+    private boolean initialized;
+
+    @Autowired
+    public FleetStream(AmbulanceChangeLog changeLog, AmbulanceService ambulanceService,
+                       @Value("${ambulance.stream.heartbeat-ms:15000}") long heartbeatMillis,
+                       @Value("${ambulance.stream.send-timeout-ms:5000}") long sendTimeoutMillis) {
+        this(changeLog, ambulanceService, Executors.newCachedThreadPool(), heartbeatMillis, sendTimeoutMillis, true);
+    }
+
+    FleetStream(AmbulanceChangeLog changeLog, AmbulanceService ambulanceService, Executor sender,
+                long heartbeatMillis, long sendTimeoutMillis, boolean ownsSender) {
+        this.changeLog = changeLog;
+        this.ambulanceService = ambulanceService;
+        this.sender = sender;
+        this.heartbeatMillis = heartbeatMillis;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.ownsSender = ownsSender;
+    }
+
+    public SseEmitter subscribe(BoundingBox box, long timeoutMillis) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Client client = subscribe(box, new EmitterSink(emitter));
+        emitter.onCompletion(() -> clients.remove(client));
+        emitter.onTimeout(() -> clients.remove(client));
+        emitter.onError(e -> clients.remove(client));
+        return emitter;
+    }
+
+    Client subscribe(BoundingBox box, EventSink sink) {
+        synchronized (this) {
+            ensureInitialized();
+        }
+        Client client = new Client(box, sink);
+        clients.add(client);
+        schedule(client);
+        return client;
+    }
+
+    public int clientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Moves the fleet view forward to the end of the change log and wakes every client with pending changes.
+     */
+    @Scheduled(fixedDelayString = "${ambulance.stream.interval-ms:250}")
+    public void tick() {
+        if (clients.isEmpty()) {
+            return;
+        }
+        cutOffStalled();
+        Set<Long> changed = new HashSet<>();
+        boolean resynced = false;
+        synchronized (this) {
+            ensureInitialized();
+            while (true) {
+                ChangeBatch batch = changeLog.read(cursor, READ_LIMIT);
+                if (batch.isResyncRequired()) {
+                    // Fell behind the change log: rebuild the view and send everyone a fresh snapshot
+                    loadSnapshot();
+                    resynced = true;
+                    break;
+                }
+                batch.getChanges().forEach(change -> {
+                    if (apply(change)) {
+                        changed.add(change.getAmbulanceId());
+                    }
+                });
+                cursor = batch.getCursor();
+                if (batch.getChanges().size() < READ_LIMIT) {
+                    break;
+                }
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (Client client : clients) {
+            if (resynced) {
+                client.needsSnapshot = true;
+            } else {
+                client.dirty.addAll(changed);
+            }
+            if (client.needsSnapshot || !client.dirty.isEmpty() || now - client.lastSentMillis >= heartbeatMillis) {
+                schedule(client);
+            }
+        }
+    }
+
+    private void cutOffStalled() {
+        long now = System.currentTimeMillis();
+        for (Client client : clients) {
+            long started = client.sendStartedMillis;
+            if (started != 0 && now - started > sendTimeoutMillis) {
+                drop(client, new TimeoutException("No send progress for " + (now - started) + " ms"));
+            }
+        }
+    }
+
+    private void drop(Client client, Exception cause) {
+        clients.remove(client);
+        client.close(cause);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ownsSender) {
+            ((ExecutorService) sender).shutdownNow();
+        }
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            loadSnapshot();
+            initialized = true;
+        }
+    }
+
+    private void loadSnapshot() {
+        FleetSnapshot snapshot = ambulanceService.getSnapshot();
+        fleet.clear();
+        for (Ambulance ambulance : snapshot.getAmbulances()) {
+            if (ambulance.getId() != null && ambulance.getLatitude() != null && ambulance.getLongitude() != null) {
+                fleet.put(ambulance.getId(), new AmbulanceState(round(ambulance.getLatitude()),
+                        round(ambulance.getLongitude()), ambulance.isAvailable()));
+            }
+        }
+        cursor = snapshot.getCursor();
+    }
+
+    /**
+     * Returns whether the change altered what a client could see.
+     */
+    private boolean apply(AmbulanceChange change) {
+        Long id = change.getAmbulanceId();
+        if (change.isRemoved()) {
+            return fleet.remove(id) != null;
+        }
+        AmbulanceState current = fleet.get(id);
+        double latitude = change.getLatitude() != null ? round(change.getLatitude()) : current != null ? current.latitude : Double.NaN;
+        double longitude = change.getLongitude() != null ? round(change.getLongitude()) : current != null ? current.longitude : Double.NaN;
+        boolean available = change.getAvailable() != null ? change.getAvailable() : current != null && current.available;
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return false;
+        }
+        AmbulanceState next = new AmbulanceState(latitude, longitude, available);
+        if (next.equals(current)) {
+            return false;
+        }
+        fleet.put(id, next);
+        return true;
+    }
+
+    private void schedule(Client client) {
+        if (client.sending.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(client));
+            } catch (RejectedExecutionException e) {
+                client.sending.set(false);
+            }
+        }
+    }
+
+    private void drain(Client client) {
+        try {
+            if (client.needsSnapshot) {
+                client.needsSnapshot = false;
+                client.dirty.clear();
+                client.sent.clear();
+                List<AmbulanceDelta> snapshot = new ArrayList<>();
+                fleet.forEach((id, state) -> {
+                    if (client.box.contains(state.latitude, state.longitude)) {
+                        client.sent.put(id, state);
+                        snapshot.add(new AmbulanceDelta(id, state.latitude, state.longitude, state.available, null));
+                    }
+                });
+                client.send("snapshot", snapshot);
+            }
+            List<AmbulanceDelta> deltas = new ArrayList<>();
+            for (Iterator<Long> iterator = client.dirty.iterator(); iterator.hasNext(); ) {
+                Long id = iterator.next();
+                iterator.remove();
+                AmbulanceDelta delta = client.delta(id, fleet.get(id));
+                if (delta != null) {
+                    deltas.add(delta);
+                }
+            }
+            if (!deltas.isEmpty()) {
+                client.send("delta", deltas);
+            } else if (System.currentTimeMillis() - client.lastSentMillis >= heartbeatMillis) {
+                // Keeps proxies from closing an idle connection and finds clients that went away
+                client.send("heartbeat", null);
+            }
+        } catch (IOException | RuntimeException e) {
+            drop(client, e);
+        } finally {
+            client.sending.set(false);
+        }
+        if (clients.contains(client) && (client.needsSnapshot || !client.dirty.isEmpty())) {
+            schedule(client);
+        }
+    }
+
+    private static double round(double coordinate) {
+        return Math.round(coordinate * COORDINATE_SCALE) / COORDINATE_SCALE;
+    }
+
+    static class Client {
+        private final BoundingBox box;
+        private final EventSink sink;
+        private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+        // What this client was last told; only touched by the one drain running for it at a time
+        private final Map<Long, AmbulanceState> sent = new HashMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean needsSnapshot = true;
+        private volatile long lastSentMillis = System.currentTimeMillis();
+        // When the send in progress started, 0 when none is
+        private volatile long sendStartedMillis;
+
+        Client(BoundingBox box, EventSink sink) {
+            this.box = box;
+            this.sink = sink;
+        }
+
+        private AmbulanceDelta delta(Long id, AmbulanceState state) {
+            AmbulanceState previous = sent.get(id);
+            if (state == null || !box.contains(state.latitude, state.longitude)) {
+                return sent.remove(id) != null ? new AmbulanceDelta(id, null, null, null, true) : null;
+            }
+            sent.put(id, state);
+            if (previous == null) {
+                return new AmbulanceDelta(id, state.latitude, state.longitude, state.available, null);
+            }
+            boolean moved = previous.latitude != state.latitude || previous.longitude != state.longitude;
+            boolean flipped = previous.available != state.available;
+            if (!moved && !flipped) {
+                return null;
+            }
+            return new AmbulanceDelta(id,
+                    moved ? state.latitude : null,
+                    moved ? state.longitude : null,
+                    flipped ? state.available : null,
+                    null);
+        }
+
+        private void send(String event, Object data) throws IOException {
+            sendStartedMillis = System.currentTimeMillis();
+            try {
+                sink.send(event, data);
+            } finally {
+                sendStartedMillis = 0;
+            }
+            lastSentMillis = System.currentTimeMillis();
+        }
+
+        private void close(Exception cause) {
+            if (closed.compareAndSet(false, true)) {
+                sink.close(cause);
+            }
+        }
+    }
+
+    private static class EmitterSink implements EventSink {
+        private final SseEmitter emitter;
+
+        EmitterSink(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void send(String event, Object data) throws IOException {
+            if (data == null) {
+                emitter.send(SseEmitter.event().comment(event));
+            } else {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            }
+        }
+
+        @Override
+        public void close(Exception cause) {
+            emitter.completeWithError(cause);
+        }
+    }
+
+    private static class AmbulanceState {
+        private final double latitude;
+        private final double longitude;
+        private final boolean available;
+
+        AmbulanceState(double latitude, double longitude, boolean available) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.available = available;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AmbulanceState)) {
+                return false;
+            }
+            AmbulanceState other = (AmbulanceState) o;
+            return latitude == other.latitude && longitude == other.longitude && available == other.available;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(latitude, longitude, available);
+        }
+    }
+}
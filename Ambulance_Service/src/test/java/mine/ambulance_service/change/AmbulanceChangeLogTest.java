@@ -0,0 +1,70 @@
+package mine.ambulance_service.change;
+
+import mine.ambulance_service.model.Ambulance;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmbulanceChangeLogTest {
+
+    @Test
+    void read_ShouldReturnChangesInOrderUpToLimit() {
+        AmbulanceChangeLog changeLog = new AmbulanceChangeLog(10);
+        changeLog.recordAvailability(1L, false);
+        changeLog.recordAvailability(2L, false);
+        changeLog.recordRemoval(3L);
+
+        ChangeBatch first = changeLog.read(0, 2);
+        ChangeBatch rest = changeLog.read(first.getCursor(), 10);
+
+        assertEquals(2, first.getCursor());
+        assertEquals(2, first.getChanges().size());
+        assertEquals(1L, first.getChanges().get(0).getAmbulanceId());
+        assertEquals(3, rest.getCursor());
+        assertTrue(rest.getChanges().get(0).isRemoved());
+        assertTrue(changeLog.read(3, 10).getChanges().isEmpty());
+    }
+
+    @Test
+    void read_WhenCursorWasOverwritten_ShouldRequireResync() {
+        AmbulanceChangeLog changeLog = new AmbulanceChangeLog(3);
+        for (long id = 1; id <= 5; id++) {
+            changeLog.recordAvailability(id, true);
+        }
+
+        assertTrue(changeLog.read(1, 10).isResyncRequired());
+        ChangeBatch batch = changeLog.read(2, 10);
+        assertFalse(batch.isResyncRequired());
+        assertEquals(3, batch.getChanges().size());
+        assertEquals(3L, batch.getChanges().get(0).getAmbulanceId());
+    }
+
+    @Test
+    void poll_ShouldCompleteOnNextChange() {
+        AmbulanceChangeLog changeLog = new AmbulanceChangeLog(10);
+        Ambulance ambulance = new Ambulance();
+        ambulance.setId(7L);
+        ambulance.setLatitude(31.63);
+        ambulance.setLongitude(-8.0);
+        ambulance.setAvailable(true);
+
+        CompletableFuture<ChangeBatch> pending = changeLog.poll(0, 10);
+        assertFalse(pending.isDone());
+        changeLog.recordState(ambulance);
+
+        ChangeBatch batch = pending.join();
+        assertEquals(1, batch.getCursor());
+        assertEquals(31.63, batch.getChanges().get(0).getLatitude());
+        assertEquals(Boolean.TRUE, batch.getChanges().get(0).getAvailable());
+    }
+
+    @Test
+    void poll_WhenBehind_ShouldCompleteImmediately() {
+        AmbulanceChangeLog changeLog = new AmbulanceChangeLog(10);
+        changeLog.recordAvailability(1L, false);
+
+        assertTrue(changeLog.poll(0, 10).isDone());
+    }
+}
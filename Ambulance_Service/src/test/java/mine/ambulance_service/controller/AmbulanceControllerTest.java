@@ -1,26 +1,42 @@
 package mine.ambulance_service.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.history.TrackPoint;
 import mine.ambulance_service.model.Ambulance;
 import mine.ambulance_service.service.AmbulanceService;
+import mine.ambulance_service.service.UpdateResult;
+import mine.ambulance_service.stream.FleetStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(AmbulanceController.class)
+@Import(AmbulanceChangeLog.class)
 class AmbulanceControllerTest {
 
     @Autowired
@@ -29,9 +45,15 @@ class AmbulanceControllerTest {
     @MockBean
     private AmbulanceService ambulanceService;
 
+    @MockBean
+    private FleetStream fleetStream;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private AmbulanceChangeLog changeLog;
+
     private Ambulance ambulance;
 
     @BeforeEach
@@ -56,6 +78,53 @@ class AmbulanceControllerTest {
                 .andExpect(jsonPath("$[0].available").value(true));
     }
 
+    @Test
+    void getAmbulancesByIds_ShouldResolveAllIdsInOneCall() throws Exception {
+        when(ambulanceService.getAmbulances(Arrays.asList(1, 2, 3), true)).thenReturn(Arrays.asList(ambulance));
+
+        mockMvc.perform(get("/api/ambulances")
+                .param("ids", "1,2,3")
+                .param("available", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void getNearestAmbulances_ShouldReturnServiceResultInOrder() throws Exception {
+        when(ambulanceService.findNearest(40.7, -74.0, 3, 10000.0, true)).thenReturn(Arrays.asList(ambulance));
+
+        mockMvc.perform(get("/api/ambulances/nearest")
+                .param("lat", "40.7")
+                .param("lng", "-74.0")
+                .param("k", "3")
+                .param("radiusMeters", "10000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void getNearestAmbulances_WithInvalidK_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/ambulances/nearest")
+                .param("lat", "40.7")
+                .param("lng", "-74.0")
+                .param("k", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void reserveAmbulance_ShouldMapResultToStatus() throws Exception {
+        when(ambulanceService.reserveAmbulance(1L)).thenReturn(AmbulanceService.ReservationResult.RESERVED);
+        when(ambulanceService.reserveAmbulance(2L)).thenReturn(AmbulanceService.ReservationResult.CONFLICT);
+        when(ambulanceService.reserveAmbulance(3L)).thenReturn(AmbulanceService.ReservationResult.NOT_FOUND);
+
+        mockMvc.perform(post("/api/ambulances/1/reserve")).andExpect(status().isOk());
+        mockMvc.perform(post("/api/ambulances/2/reserve")).andExpect(status().isConflict());
+        mockMvc.perform(post("/api/ambulances/3/reserve")).andExpect(status().isNotFound());
+    }
+
     @Test
     void getAmbulanceById_WhenExists_ShouldReturnAmbulance() throws Exception {
         when(ambulanceService.getAmbulanceById(1L)).thenReturn(Optional.of(ambulance));
@@ -96,8 +165,8 @@ class AmbulanceControllerTest {
         updatedAmbulance.setLatitude(41.8781);
         updatedAmbulance.setLongitude(-87.6298);
 
-        when(ambulanceService.updateAmbulance(eq(1L), any(Ambulance.class)))
-                .thenReturn(Optional.of(updatedAmbulance));
+        when(ambulanceService.updateAmbulance(eq(1L), any(Ambulance.class), isNull()))
+                .thenReturn(UpdateResult.updated(updatedAmbulance));
 
         mockMvc.perform(put("/api/ambulances/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -111,8 +180,8 @@ class AmbulanceControllerTest {
 
     @Test
     void updateAmbulance_WhenNotExists_ShouldReturnNotFound() throws Exception {
-        when(ambulanceService.updateAmbulance(eq(99L), any(Ambulance.class)))
-                .thenReturn(Optional.empty());
+        when(ambulanceService.updateAmbulance(eq(99L), any(Ambulance.class), isNull()))
+                .thenReturn(UpdateResult.notFound());
 
         mockMvc.perform(put("/api/ambulances/99")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -126,8 +195,8 @@ class AmbulanceControllerTest {
         locationUpdate.setLatitude(41.8781);
         locationUpdate.setLongitude(-87.6298);
 
-        when(ambulanceService.updateAmbulanceLocation(eq(1L), any(Double.class), any(Double.class)))
-                .thenReturn(Optional.of(locationUpdate));
+        when(ambulanceService.updateAmbulanceLocation(eq(1L), any(Double.class), any(Double.class), isNull()))
+                .thenReturn(UpdateResult.updated(locationUpdate));
 
         mockMvc.perform(patch("/api/ambulances/1/location")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -143,8 +212,8 @@ class AmbulanceControllerTest {
         locationUpdate.setLatitude(41.8781);
         locationUpdate.setLongitude(-87.6298);
 
-        when(ambulanceService.updateAmbulanceLocation(eq(1L), any(Double.class), any(Double.class)))
-                .thenReturn(Optional.empty());
+        when(ambulanceService.updateAmbulanceLocation(eq(1L), any(Double.class), any(Double.class), isNull()))
+                .thenReturn(UpdateResult.notFound());
 
         mockMvc.perform(patch("/api/ambulances/1/location")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -152,13 +221,38 @@ class AmbulanceControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void updateAmbulanceLocation_WithMissingCoordinate_ShouldReturnBadRequest() throws Exception {
+        Ambulance locationUpdate = new Ambulance();
+        locationUpdate.setLatitude(41.8781);
+
+        mockMvc.perform(patch("/api/ambulances/1/location")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(locationUpdate)))
+                .andExpect(status().isBadRequest());
+
+        verify(ambulanceService, never()).updateAmbulanceLocation(any(), any(), any(), any());
+    }
+
+    @Test
+    void updateAmbulanceLocation_WithOutOfRangeLatitude_ShouldReturnBadRequest() throws Exception {
+        Ambulance locationUpdate = new Ambulance();
+        locationUpdate.setLatitude(91.0);
+        locationUpdate.setLongitude(-87.6298);
+
+        mockMvc.perform(patch("/api/ambulances/1/location")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(locationUpdate)))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void updateAmbulanceAvailability_WhenExists_ShouldReturnUpdatedAmbulance() throws Exception {
         Ambulance availabilityUpdate = new Ambulance();
         availabilityUpdate.setAvailable(false);
 
-        when(ambulanceService.updateAmbulanceAvailability(eq(1L), eq(false)))
-                .thenReturn(Optional.of(availabilityUpdate));
+        when(ambulanceService.updateAmbulanceAvailability(eq(1L), eq(false), isNull()))
+                .thenReturn(UpdateResult.updated(availabilityUpdate));
 
         mockMvc.perform(patch("/api/ambulances/1/availability")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -172,8 +266,8 @@ class AmbulanceControllerTest {
         Ambulance availabilityUpdate = new Ambulance();
         availabilityUpdate.setAvailable(false);
 
-        when(ambulanceService.updateAmbulanceAvailability(eq(1L), eq(false)))
-                .thenReturn(Optional.empty());
+        when(ambulanceService.updateAmbulanceAvailability(eq(1L), eq(false), isNull()))
+                .thenReturn(UpdateResult.notFound());
 
         mockMvc.perform(patch("/api/ambulances/1/availability")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -181,6 +275,165 @@ class AmbulanceControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void getAllAmbulances_WhenFleetUnchanged_ShouldReturnNotModified() throws Exception {
+        when(ambulanceService.getAllAmbulances()).thenReturn(Arrays.asList(ambulance));
+        String eTag = mockMvc.perform(get("/api/ambulances"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/ambulances").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(ambulanceService, times(1)).getAllAmbulances();
+
+        changeLog.recordAvailability(1L, false);
+        mockMvc.perform(get("/api/ambulances").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getAllAmbulances_WithOtherQueryOrMediaType_ShouldNotMatchETag() throws Exception {
+        when(ambulanceService.getAmbulances(any(), any())).thenReturn(Arrays.asList(ambulance));
+        String eTag = mockMvc.perform(get("/api/ambulances?available=true"))
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/ambulances?available=false").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/ambulances?available=true")
+                        .accept(MediaType.APPLICATION_NDJSON).header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/ambulances?available=true").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void getAllAmbulances_WithLimit_ShouldReturnPageAndNextLink() throws Exception {
+        Ambulance second = new Ambulance();
+        second.setId(2L);
+        when(ambulanceService.getAmbulancePage(null, 2, null)).thenReturn(Arrays.asList(ambulance, second));
+
+        mockMvc.perform(get("/api/ambulances").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(header().string("Link", "<http://localhost/api/ambulances?after=2&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    void getAllAmbulances_WithLastPartialPage_ShouldOmitNextLink() throws Exception {
+        when(ambulanceService.getAmbulancePage(5L, 2, true)).thenReturn(Arrays.asList(ambulance));
+
+        mockMvc.perform(get("/api/ambulances").param("after", "5").param("limit", "2").param("available", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    void getAllAmbulances_WithLimitTooLarge_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/ambulances").param("limit", "5000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamAllAmbulances_ShouldWriteOneJsonObjectPerLine() throws Exception {
+        Ambulance second = new Ambulance();
+        second.setId(2L);
+        doAnswer(invocation -> {
+            Consumer<Ambulance> action = invocation.getArgument(2);
+            action.accept(ambulance);
+            action.accept(second);
+            return null;
+        }).when(ambulanceService).streamAmbulances(isNull(), isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/api/ambulances").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(2L, objectMapper.readValue(lines[1], Ambulance.class).getId());
+    }
+
+    @Test
+    void getAmbulanceById_ShouldReturnVersionAsETag() throws Exception {
+        ambulance.setVersion(3L);
+        when(ambulanceService.getAmbulanceById(1L)).thenReturn(Optional.of(ambulance));
+
+        mockMvc.perform(get("/api/ambulances/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
+    @Test
+    void getAmbulanceById_AfterLocationPing_ShouldChangeETag() throws Exception {
+        ambulance.setVersion(3L);
+        ambulance.setLocationTimestamp(1700000000000L);
+        when(ambulanceService.getAmbulanceById(1L)).thenReturn(Optional.of(ambulance));
+
+        mockMvc.perform(get("/api/ambulances/1"))
+                .andExpect(header().string("ETag", "\"3.1700000000000\""));
+    }
+
+    @Test
+    void updateAmbulance_WithIfMatchFromOlderPing_ShouldCompareVersionOnly() throws Exception {
+        ambulance.setVersion(4L);
+        when(ambulanceService.updateAmbulance(eq(1L), any(Ambulance.class), eq(3L)))
+                .thenReturn(UpdateResult.updated(ambulance));
+
+        mockMvc.perform(put("/api/ambulances/1")
+                        .header("If-Match", "\"3.1690000000000\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ambulance)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+    }
+
+    @Test
+    void updateAmbulanceAvailability_WithIfMatch_ShouldPassVersionAndReturnNewETag() throws Exception {
+        Ambulance availabilityUpdate = new Ambulance();
+        availabilityUpdate.setAvailable(false);
+        availabilityUpdate.setVersion(4L);
+        when(ambulanceService.updateAmbulanceAvailability(1L, false, 3L))
+                .thenReturn(UpdateResult.updated(availabilityUpdate));
+
+        mockMvc.perform(patch("/api/ambulances/1/availability")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(availabilityUpdate)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+    }
+
+    @Test
+    void updateAmbulance_WhenVersionMismatch_ShouldReturnPreconditionFailed() throws Exception {
+        ambulance.setVersion(5L);
+        when(ambulanceService.updateAmbulance(eq(1L), any(Ambulance.class), eq(3L)))
+                .thenReturn(UpdateResult.versionMismatch(ambulance));
+
+        mockMvc.perform(put("/api/ambulances/1")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ambulance)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string("ETag", "\"5\""));
+    }
+
+    @Test
+    void updateAmbulance_WithWeakIfMatch_ShouldNeverMatch() throws Exception {
+        when(ambulanceService.updateAmbulance(eq(1L), any(Ambulance.class), eq(-1L)))
+                .thenReturn(UpdateResult.versionMismatch(ambulance));
+
+        mockMvc.perform(put("/api/ambulances/1")
+                        .header("If-Match", "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ambulance)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     void deleteAmbulance_WhenExists_ShouldReturnNoContent() throws Exception {
         when(ambulanceService.deleteAmbulance(1L)).thenReturn(true);
@@ -196,4 +449,116 @@ class AmbulanceControllerTest {
         mockMvc.perform(delete("/api/ambulances/1"))
                 .andExpect(status().isNotFound());
     }
+
+    @Test
+    void getChanges_ShouldReturnChangesAfterCursor() throws Exception {
+        long cursor = changeLog.cursor();
+        changeLog.recordState(ambulance);
+        changeLog.recordAvailability(1L, false);
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/ambulances/changes").param("since", String.valueOf(cursor)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cursor").value(cursor + 2))
+                .andExpect(jsonPath("$.changes.length()").value(2))
+                .andExpect(jsonPath("$.changes[0].latitude").value(40.7128))
+                .andExpect(jsonPath("$.changes[1].available").value(false));
+    }
+
+    @Test
+    void getChanges_WhenWaiting_ShouldReturnNextChange() throws Exception {
+        long cursor = changeLog.cursor();
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/ambulances/changes")
+                        .param("since", String.valueOf(cursor))
+                        .param("waitMillis", "5000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        changeLog.recordAvailability(1L, true);
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes.length()").value(1))
+                .andExpect(jsonPath("$.changes[0].ambulanceId").value(1));
+    }
+
+    @Test
+    void getChanges_WhenCursorAhead_ShouldAskForResync() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/api/ambulances/changes")
+                        .param("since", String.valueOf(changeLog.cursor() + 100)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGone())
+                .andExpect(jsonPath("$.resyncRequired").value(true));
+    }
+
+    @Test
+    void ingestLocations_ShouldReturnPerSampleResults() throws Exception {
+        List<LocationSample> samples = List.of(
+                new LocationSample(1L, 31.60, -8.00, Instant.parse("2024-01-01T10:00:00Z")),
+                new LocationSample(2L, 31.61, -8.01, Instant.parse("2024-01-01T10:00:00Z")));
+        when(ambulanceService.ingestLocations(anyList())).thenReturn(List.of(
+                new LocationUpdateResult(1L, LocationUpdateResult.Status.APPLIED),
+                new LocationUpdateResult(2L, LocationUpdateResult.Status.STALE)));
+
+        mockMvc.perform(post("/api/ambulances/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(samples)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("APPLIED"))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(jsonPath("$[1].status").value("STALE"));
+    }
+
+    @Test
+    void ingestLocations_WhenEmpty_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/ambulances/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Collections.emptyList())))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamAmbulances_WithPartialBoundingBox_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/ambulances/stream").param("minLat", "31.5").param("maxLat", "31.7"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getTrack_ShouldReturnPointsInRange() throws Exception {
+        Instant from = Instant.parse("2024-05-01T10:00:00Z");
+        Instant to = Instant.parse("2024-05-01T11:00:00Z");
+        when(ambulanceService.getTrack(1L, from, to, 10.0)).thenReturn(Optional.of(List.of(
+                new TrackPoint(Instant.parse("2024-05-01T10:15:00Z"), 31.6, -8.0))));
+
+        mockMvc.perform(get("/api/ambulances/1/track")
+                        .param("from", "2024-05-01T10:00:00Z")
+                        .param("to", "2024-05-01T11:00:00Z")
+                        .param("tolerance", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].latitude").value(31.6))
+                .andExpect(jsonPath("$[0].longitude").value(-8.0));
+    }
+
+    @Test
+    void getTrack_WithNegativeTolerance_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/ambulances/1/track")
+                        .param("from", "2024-05-01T10:00:00Z")
+                        .param("to", "2024-05-01T11:00:00Z")
+                        .param("tolerance", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getTrack_WhenRangeTooLong_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/ambulances/1/track")
+                        .param("from", "2024-05-01T00:00:00Z")
+                        .param("to", "2024-05-03T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
 }
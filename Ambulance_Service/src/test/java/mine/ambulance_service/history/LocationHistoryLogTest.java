@@ -0,0 +1,238 @@
+package mine.ambulance_service.history;
+
+import mine.ambulance_service.config.HistoryProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.*;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocationHistoryLogTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    @TempDir
+    Path directory;
+
+    private HistoryProperties properties;
+
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() {
+        properties = new HistoryProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentRecords(1000);
+        properties.setIngestToleranceMeters(0);
+        clock = new MutableClock(Duration.ofDays(1000).toMillis());
+    }
+
+    @Test
+    void track_ShouldReturnOnlyThatAmbulancesPointsInRange() {
+        // Arrange
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        for (int i = 0; i < 200; i++) {
+            historyLog.append(1L, start + i * 1000L, 31.0 + i * 0.001, -8.0);
+            historyLog.append(2L, start + i * 1000L, 40.0, -74.0);
+        }
+
+        // Act
+        List<TrackPoint> track = historyLog.track(1L, Instant.ofEpochMilli(start + 50_000), Instant.ofEpochMilli(start + 59_000));
+
+        // Assert
+        assertEquals(10, track.size());
+        assertEquals(start + 50_000, track.get(0).getTimestamp().toEpochMilli());
+        assertEquals(start + 59_000, track.get(9).getTimestamp().toEpochMilli());
+        assertEquals(31.05, track.get(0).getLatitude(), 1e-9);
+    }
+
+    @Test
+    void append_WhenSegmentDurationPasses_ShouldRollAndQueryAcrossSegments() {
+        // Arrange
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        historyLog.append(1L, start, 31.0, -8.0);
+        clock.advance(HOUR);
+        historyLog.append(1L, start + HOUR, 31.1, -8.1);
+
+        // Act
+        List<TrackPoint> track = historyLog.track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + HOUR));
+
+        // Assert
+        assertEquals(2, historyLog.segmentCount());
+        assertEquals(List.of(31.0, 31.1), latitudes(track));
+    }
+
+    @Test
+    void append_WhenSegmentFull_ShouldRoll() {
+        // Arrange
+        properties.setSegmentRecords(2);
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            historyLog.append(1L, clock.millis() + i, 31.0, -8.0);
+        }
+
+        // Assert
+        assertEquals(3, historyLog.segmentCount());
+        assertEquals(5, historyLog.track(1L, Instant.EPOCH, Instant.ofEpochMilli(clock.millis() + 10)).size());
+    }
+
+    @Test
+    void append_WhenOlderThanLastSample_ShouldIgnoreIt() {
+        // Arrange
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        historyLog.append(1L, 2000L, 31.0, -8.0);
+
+        // Act
+        historyLog.append(1L, 1000L, 32.0, -9.0);
+
+        // Assert
+        assertEquals(List.of(31.0), latitudes(historyLog.track(1L, Instant.EPOCH, Instant.ofEpochMilli(5000))));
+    }
+
+    @Test
+    void constructor_ShouldReopenSegmentsFromDisk() {
+        // Arrange
+        LocationHistoryLog first = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        first.append(1L, start, 31.0, -8.0);
+        first.append(1L, start + 1000, 31.1, -8.1);
+        first.close();
+
+        // Act
+        LocationHistoryLog reopened = new LocationHistoryLog(properties, clock);
+        reopened.append(1L, start + 2000, 31.2, -8.2);
+        reopened.append(1L, start + 500, 30.0, -7.0);
+
+        // Assert
+        assertEquals(List.of(31.0, 31.1, 31.2),
+                latitudes(reopened.track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 5000))));
+    }
+
+    @Test
+    void maintain_ShouldDownsampleSegmentsPastCompactionAge() {
+        // Arrange
+        properties.setDownsampleInterval(Duration.ofSeconds(30));
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        for (int i = 0; i < 120; i++) {
+            historyLog.append(1L, start + i * 1000L, 31.0 + i * 0.001, -8.0);
+        }
+        clock.advance(Duration.ofDays(2).toMillis());
+        historyLog.append(1L, clock.millis(), 32.0, -9.0);
+
+        // Act
+        historyLog.maintain();
+
+        // Assert
+        List<TrackPoint> compacted = historyLog.track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 120_000));
+        assertEquals(List.of(start, start + 30_000, start + 60_000, start + 90_000), compacted.stream()
+                .map(point -> point.getTimestamp().toEpochMilli()).collect(Collectors.toList()));
+        assertEquals(4, new LocationHistoryLog(properties, clock)
+                .track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 120_000)).size());
+    }
+
+    @Test
+    void maintain_ShouldDeleteSegmentsPastRetention() {
+        // Arrange
+        properties.setRetention(Duration.ofDays(30));
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        historyLog.append(1L, start, 31.0, -8.0);
+        clock.advance(Duration.ofDays(31).toMillis());
+        historyLog.append(1L, clock.millis(), 32.0, -9.0);
+
+        // Act
+        historyLog.maintain();
+
+        // Assert
+        assertEquals(1, historyLog.segmentCount());
+        assertEquals(List.of(32.0), latitudes(historyLog.track(1L, Instant.EPOCH, Instant.ofEpochMilli(clock.millis()))));
+    }
+
+    @Test
+    void append_WithIngestTolerance_ShouldKeepOnlyTurnsAndLatestPosition() {
+        // Arrange
+        properties.setIngestToleranceMeters(5);
+        LocationHistoryLog historyLog = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        // North for ten seconds, then east for ten
+        for (int i = 0; i <= 10; i++) {
+            historyLog.append(1L, start + i * 1000L, 31.0 + i * 0.0001, -8.0);
+        }
+        for (int i = 1; i <= 10; i++) {
+            historyLog.append(1L, start + (10 + i) * 1000L, 31.001, -8.0 + i * 0.0001);
+        }
+
+        // Act
+        List<TrackPoint> track = historyLog.track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 20_000));
+
+        // Assert
+        assertEquals(List.of(start, start + 10_000, start + 20_000), track.stream()
+                .map(point -> point.getTimestamp().toEpochMilli()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void close_ShouldWriteHeldBackPositions() {
+        // Arrange
+        properties.setIngestToleranceMeters(5);
+        LocationHistoryLog first = new LocationHistoryLog(properties, clock);
+        long start = clock.millis();
+        for (int i = 0; i <= 5; i++) {
+            first.append(1L, start + i * 1000L, 31.0 + i * 0.0001, -8.0);
+        }
+
+        // Act
+        first.close();
+
+        // Assert
+        List<TrackPoint> track = new LocationHistoryLog(properties, clock)
+                .track(1L, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 5000));
+        assertEquals(List.of(31.0, 31.0005), latitudes(track).stream()
+                .map(latitude -> Math.round(latitude * 1e4) / 1e4).collect(Collectors.toList()));
+    }
+
+    private static List<Double> latitudes(List<TrackPoint> track) {
+        return track.stream().map(TrackPoint::getLatitude).collect(Collectors.toList());
+    }
+
+    private static class MutableClock extends Clock {
+        private long millis;
+
+        MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
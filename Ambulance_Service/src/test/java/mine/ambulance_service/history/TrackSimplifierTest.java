@@ -0,0 +1,56 @@
+package mine.ambulance_service.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackSimplifierTest {
+
+    @Test
+    void simplify_ShouldDropStraightRunsAndKeepTurns() {
+        // Arrange
+        List<TrackPoint> track = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) {
+            track.add(point(i, 31.0 + i * 0.0001, -8.0));
+        }
+        for (int i = 1; i <= 10; i++) {
+            track.add(point(10 + i, 31.001, -8.0 + i * 0.0001));
+        }
+
+        // Act
+        List<TrackPoint> simplified = TrackSimplifier.simplify(track, 5);
+
+        // Assert
+        assertEquals(List.of(track.get(0), track.get(10), track.get(20)), simplified);
+    }
+
+    @Test
+    void simplify_ShouldKeepDeviationsLargerThanTolerance() {
+        // Arrange: a 20 m bump halfway along a straight road
+        List<TrackPoint> track = List.of(
+                point(0, 31.0, -8.0),
+                point(1, 31.0005, -8.0 + 20 / 95_000.0),
+                point(2, 31.001, -8.0));
+
+        // Act & Assert
+        assertEquals(3, TrackSimplifier.simplify(track, 10).size());
+        assertEquals(2, TrackSimplifier.simplify(track, 30).size());
+    }
+
+    @Test
+    void simplify_WithZeroTolerance_ShouldReturnTrackUnchanged() {
+        // Arrange
+        List<TrackPoint> track = List.of(point(0, 31.0, -8.0), point(1, 31.0001, -8.0), point(2, 31.0002, -8.0));
+
+        // Act & Assert
+        assertSame(track, TrackSimplifier.simplify(track, 0));
+    }
+
+    private static TrackPoint point(long second, double latitude, double longitude) {
+        return new TrackPoint(Instant.ofEpochSecond(second), latitude, longitude);
+    }
+}
@@ -0,0 +1,61 @@
+package mine.ambulance_service.repository;
+
+import mine.ambulance_service.dto.LocationSample;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmbulanceLocationWriterTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AmbulanceLocationWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE ambulances (id BIGINT PRIMARY KEY, driver_name VARCHAR(255), "
+                + "available BOOLEAN, latitude DOUBLE, longitude DOUBLE, location_timestamp BIGINT)");
+        jdbcTemplate.update("INSERT INTO ambulances VALUES (1, 'A', TRUE, 31.60, -8.00, 1000)");
+        jdbcTemplate.update("INSERT INTO ambulances VALUES (2, 'B', TRUE, 31.61, -8.01, NULL)");
+        writer = new AmbulanceLocationWriter(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void updateLocations_ShouldWriteOnlyNewerSamples() {
+        int[] counts = writer.updateLocations(List.of(
+                new LocationSample(1L, 31.70, -8.10, Instant.ofEpochMilli(2000)),
+                new LocationSample(2L, 31.71, -8.11, Instant.ofEpochMilli(500)),
+                new LocationSample(3L, 31.72, -8.12, Instant.ofEpochMilli(3000))));
+
+        assertArrayEquals(new int[]{1, 1, 0}, counts);
+        assertEquals(31.70, jdbcTemplate.queryForObject("SELECT latitude FROM ambulances WHERE id = 1", Double.class));
+        assertEquals(500L, jdbcTemplate.queryForObject("SELECT location_timestamp FROM ambulances WHERE id = 2", Long.class));
+    }
+
+    @Test
+    void updateLocations_ShouldIgnoreOutOfOrderSample() {
+        int[] counts = writer.updateLocations(List.of(new LocationSample(1L, 40.0, -70.0, Instant.ofEpochMilli(1000))));
+
+        assertArrayEquals(new int[]{0}, counts);
+        assertEquals(31.60, jdbcTemplate.queryForObject("SELECT latitude FROM ambulances WHERE id = 1", Double.class));
+    }
+}
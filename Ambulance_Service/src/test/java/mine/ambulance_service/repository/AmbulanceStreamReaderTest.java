@@ -0,0 +1,64 @@
+package mine.ambulance_service.repository;
+
+import mine.ambulance_service.model.Ambulance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmbulanceStreamReaderTest {
+
+    private EmbeddedDatabase database;
+    private AmbulanceStreamReader reader;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE ambulances (id BIGINT PRIMARY KEY, driver_name VARCHAR(255), "
+                + "available BOOLEAN, latitude DOUBLE, longitude DOUBLE, location_timestamp BIGINT, version BIGINT)");
+        jdbcTemplate.update("INSERT INTO ambulances VALUES (3, 'C', FALSE, 31.62, -8.02, NULL, 0)");
+        jdbcTemplate.update("INSERT INTO ambulances VALUES (1, 'A', TRUE, 31.60, -8.00, 1000, 2)");
+        jdbcTemplate.update("INSERT INTO ambulances VALUES (2, 'B', TRUE, 31.61, -8.01, NULL, 0)");
+        reader = new AmbulanceStreamReader(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void forEach_ShouldReadAllRowsInIdOrder() {
+        List<Ambulance> read = new ArrayList<>();
+
+        reader.forEach(null, 0, read::add);
+
+        assertEquals(List.of(1L, 2L, 3L), read.stream().map(Ambulance::getId).collect(Collectors.toList()));
+        assertEquals("A", read.get(0).getDriverName());
+        assertEquals(1000L, read.get(0).getLocationTimestamp());
+        assertEquals(2L, read.get(0).getVersion());
+        assertNull(read.get(1).getLocationTimestamp());
+    }
+
+    @Test
+    void forEach_ShouldApplyKeysetAndAvailability() {
+        List<Ambulance> read = new ArrayList<>();
+
+        reader.forEach(true, 1, read::add);
+
+        assertEquals(List.of(2L), read.stream().map(Ambulance::getId).collect(Collectors.toList()));
+    }
+}
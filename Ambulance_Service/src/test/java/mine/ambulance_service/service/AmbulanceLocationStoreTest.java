@@ -0,0 +1,158 @@
+package mine.ambulance_service.service;
+
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.model.Ambulance;
+import mine.ambulance_service.repository.AmbulanceLocationWriter;
+import mine.ambulance_service.repository.AmbulanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class AmbulanceLocationStoreTest {
+
+    @Mock
+    private AmbulanceRepository ambulanceRepository;
+
+    @Mock
+    private AmbulanceLocationWriter locationWriter;
+
+    private AmbulanceLocationStore locationStore;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance(1L), ambulance(2L)));
+        locationStore = new AmbulanceLocationStore(ambulanceRepository, locationWriter);
+    }
+
+    private static Ambulance ambulance(Long id) {
+        Ambulance ambulance = new Ambulance();
+        ambulance.setId(id);
+        ambulance.setLatitude(31.60);
+        ambulance.setLongitude(-8.00);
+        ambulance.setLocationTimestamp(100L);
+        return ambulance;
+    }
+
+    @Test
+    void flush_ShouldWriteOnlyLastPositionPerAmbulance() {
+        // Arrange
+        for (int ping = 1; ping <= 10; ping++) {
+            locationStore.offer(1L, 31.60 + ping * 0.001, -8.00, 100L + ping);
+        }
+        locationStore.offer(2L, 31.70, -8.10, 200L);
+
+        // Act
+        locationStore.flush();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LocationSample>> batch = ArgumentCaptor.forClass(List.class);
+        verify(locationWriter, times(1)).updateLocations(batch.capture());
+        assertEquals(2, batch.getValue().size());
+        LocationSample first = batch.getValue().stream().filter(sample -> sample.getId() == 1L).findFirst().orElseThrow();
+        assertEquals(31.61, first.getLatitude(), 1e-9);
+        assertEquals(110L, first.getTimestamp().toEpochMilli());
+        assertEquals(0, locationStore.pendingCount());
+    }
+
+    @Test
+    void flush_WhenNothingMoved_ShouldNotTouchDatabase() {
+        // Act
+        locationStore.flush();
+
+        // Assert
+        verifyNoInteractions(locationWriter);
+    }
+
+    @Test
+    void flush_WhenWriteFails_ShouldRetryOnNextFlush() {
+        // Arrange
+        locationStore.offer(1L, 31.70, -8.10, 200L);
+        when(locationWriter.updateLocations(anyList()))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(new int[]{1});
+
+        // Act
+        locationStore.flush();
+        locationStore.flush();
+
+        // Assert
+        verify(locationWriter, times(2)).updateLocations(anyList());
+        assertEquals(0, locationStore.pendingCount());
+    }
+
+    @Test
+    void offer_ShouldRejectOlderSamplesAndUnknownAmbulances() {
+        // Act & Assert
+        assertEquals(LocationUpdateResult.Status.APPLIED, locationStore.offer(1L, 31.70, -8.10, 200L));
+        assertEquals(LocationUpdateResult.Status.STALE, locationStore.offer(1L, 31.80, -8.20, 150L));
+        assertEquals(LocationUpdateResult.Status.NOT_FOUND, locationStore.offer(9L, 31.80, -8.20, 300L));
+        Ambulance overlaid = locationStore.overlay(ambulance(1L));
+        assertEquals(31.70, overlaid.getLatitude());
+    }
+
+    @Test
+    void forget_ShouldDropPendingPosition() {
+        // Arrange
+        locationStore.offer(2L, 31.70, -8.10, 200L);
+
+        // Act
+        locationStore.forget(2L);
+        locationStore.flush();
+
+        // Assert
+        verifyNoInteractions(locationWriter);
+        assertEquals(LocationUpdateResult.Status.NOT_FOUND, locationStore.offer(2L, 31.80, -8.20, 300L));
+    }
+
+    @Test
+    void withinRadius_ShouldFollowMovesAcrossCells() {
+        // Arrange: enough of a fleet elsewhere that a small radius scans grid cells, not every position
+        for (long id = 10; id < 60; id++) {
+            locationStore.track(ambulanceAt(id, 33.00 + id * 0.01, -7.00));
+        }
+        // Ambulance 1 drives about 30 km north
+        locationStore.offer(1L, 31.87, -8.00, 200L);
+
+        // Act
+        List<Long> aroundStart = locationStore.withinRadius(31.60, -8.00, 1_000);
+        List<Long> aroundEnd = locationStore.withinRadius(31.87, -8.00, 1_000);
+
+        // Assert
+        assertEquals(List.of(2L), aroundStart);
+        assertEquals(List.of(1L), aroundEnd);
+    }
+
+    @Test
+    void withinRadius_ShouldRankByDistanceAndDropForgotten() {
+        // Arrange
+        locationStore.offer(1L, 31.605, -8.00, 200L);
+        locationStore.offer(2L, 31.601, -8.00, 200L);
+        locationStore.track(ambulanceAt(3L, 31.603, -8.00));
+        locationStore.forget(2L);
+
+        // Act
+        List<Long> ids = locationStore.withinRadius(31.60, -8.00, 5_000);
+
+        // Assert
+        assertEquals(List.of(3L, 1L), ids);
+    }
+
+    private static Ambulance ambulanceAt(Long id, double latitude, double longitude) {
+        Ambulance ambulance = ambulance(id);
+        ambulance.setLatitude(latitude);
+        ambulance.setLongitude(longitude);
+        return ambulance;
+    }
+}
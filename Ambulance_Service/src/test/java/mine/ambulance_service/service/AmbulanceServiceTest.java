@@ -1,19 +1,27 @@
 package mine.ambulance_service.service;
 
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.dto.LocationSample;
+import mine.ambulance_service.dto.LocationUpdateResult;
+import mine.ambulance_service.history.LocationHistoryLog;
+import mine.ambulance_service.history.TrackPoint;
 import mine.ambulance_service.model.Ambulance;
+import mine.ambulance_service.repository.AmbulanceLocationWriter;
 import mine.ambulance_service.repository.AmbulanceRepository;
+import mine.ambulance_service.repository.AmbulanceStreamReader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class AmbulanceServiceTest {
@@ -21,7 +29,20 @@ class AmbulanceServiceTest {
     @Mock
     private AmbulanceRepository ambulanceRepository;
 
-    @InjectMocks
+    @Mock
+    private AmbulanceChangeLog changeLog;
+
+    @Mock
+    private AmbulanceLocationWriter locationWriter;
+
+    @Mock
+    private LocationHistoryLog historyLog;
+
+    @Mock
+    private AmbulanceStreamReader streamReader;
+
+    private AmbulanceLocationStore locationStore;
+
     private AmbulanceService ambulanceService;
 
     private Ambulance ambulance;
@@ -29,6 +50,8 @@ class AmbulanceServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        locationStore = new AmbulanceLocationStore(ambulanceRepository, locationWriter);
+        ambulanceService = new AmbulanceService(ambulanceRepository, changeLog, locationStore, historyLog, streamReader);
         
         ambulance = new Ambulance();
         ambulance.setId(1L);
@@ -52,6 +75,37 @@ class AmbulanceServiceTest {
         verify(ambulanceRepository).findAll();
     }
 
+    @Test
+    void getAmbulances_WithIdsAndAvailability_ShouldUseSingleFilteredQuery() {
+        List<Integer> ids = Arrays.asList(1, 2);
+        when(ambulanceRepository.findByIdInAndAvailable(ids, true)).thenReturn(Arrays.asList(ambulance));
+
+        List<Ambulance> result = ambulanceService.getAmbulances(ids, true);
+
+        assertEquals(1, result.size());
+        verify(ambulanceRepository).findByIdInAndAvailable(ids, true);
+        verify(ambulanceRepository, never()).findById(any());
+    }
+
+    @Test
+    void getAmbulances_WithIdsOnly_ShouldUseFindAllById() {
+        List<Integer> ids = Arrays.asList(1, 2);
+        when(ambulanceRepository.findAllById(ids)).thenReturn(Arrays.asList(ambulance));
+
+        List<Ambulance> result = ambulanceService.getAmbulances(ids, null);
+
+        assertEquals(1, result.size());
+        verify(ambulanceRepository).findAllById(ids);
+    }
+
+    @Test
+    void getAmbulances_WithEmptyIds_ShouldNotQuery() {
+        List<Ambulance> result = ambulanceService.getAmbulances(List.of(), true);
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(ambulanceRepository);
+    }
+
     @Test
     void getAmbulanceById_WhenExists_ShouldReturnAmbulance() {
         // Arrange
@@ -103,13 +157,64 @@ class AmbulanceServiceTest {
         when(ambulanceRepository.save(any(Ambulance.class))).thenReturn(ambulance);
 
         // Act
-        Optional<Ambulance> result = ambulanceService.updateAmbulance(1L, updatedAmbulance);
+        UpdateResult result = ambulanceService.updateAmbulance(1L, updatedAmbulance, null);
 
         // Assert
-        assertTrue(result.isPresent());
-        assertEquals(false, result.get().isAvailable());
-        assertEquals(41.8781, result.get().getLatitude());
-        assertEquals(-87.6298, result.get().getLongitude());
+        assertEquals(UpdateResult.Status.UPDATED, result.getStatus());
+        assertEquals(false, result.getAmbulance().isAvailable());
+        assertEquals(41.8781, result.getAmbulance().getLatitude());
+        assertEquals(-87.6298, result.getAmbulance().getLongitude());
+    }
+
+    @Test
+    void updateAmbulance_ShouldNotOverwriteId() {
+        // Arrange
+        Ambulance updatedAmbulance = new Ambulance();
+        updatedAmbulance.setId(7L);
+        updatedAmbulance.setLatitude(41.8781);
+        updatedAmbulance.setLongitude(-87.6298);
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
+        when(ambulanceRepository.save(any(Ambulance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        UpdateResult result = ambulanceService.updateAmbulance(1L, updatedAmbulance, null);
+
+        // Assert
+        assertEquals(1L, result.getAmbulance().getId());
+    }
+
+    @Test
+    void updateAmbulance_WithStaleVersion_ShouldReportMismatchWithoutSaving() {
+        // Arrange
+        ambulance.setVersion(4L);
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
+
+        // Act
+        UpdateResult result = ambulanceService.updateAmbulance(1L, new Ambulance(), 3L);
+
+        // Assert
+        assertEquals(UpdateResult.Status.VERSION_MISMATCH, result.getStatus());
+        assertEquals(4L, result.getAmbulance().getVersion());
+        verify(ambulanceRepository, never()).save(any());
+        verifyNoInteractions(changeLog);
+    }
+
+    @Test
+    void updateAmbulance_WhenSaveLosesRace_ShouldReportConflict() {
+        // Arrange
+        Ambulance updatedAmbulance = new Ambulance();
+        updatedAmbulance.setLatitude(41.8781);
+        updatedAmbulance.setLongitude(-87.6298);
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
+        when(ambulanceRepository.save(any(Ambulance.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Ambulance.class, 1L));
+
+        // Act
+        UpdateResult result = ambulanceService.updateAmbulance(1L, updatedAmbulance, null);
+
+        // Assert
+        assertEquals(UpdateResult.Status.CONFLICT, result.getStatus());
+        verifyNoInteractions(changeLog);
     }
 
     @Test
@@ -118,10 +223,10 @@ class AmbulanceServiceTest {
         when(ambulanceRepository.findById(99)).thenReturn(Optional.empty());
 
         // Act
-        Optional<Ambulance> result = ambulanceService.updateAmbulance(99L, new Ambulance());
+        UpdateResult result = ambulanceService.updateAmbulance(99L, new Ambulance(), null);
 
         // Assert
-        assertFalse(result.isPresent());
+        assertEquals(UpdateResult.Status.NOT_FOUND, result.getStatus());
     }
 
     @Test
@@ -130,30 +235,49 @@ class AmbulanceServiceTest {
         Double newLatitude = 41.8781;
         Double newLongitude = -87.6298;
         
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
         when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
-        when(ambulanceRepository.save(any(Ambulance.class))).thenReturn(ambulance);
 
         // Act
-        Optional<Ambulance> result = ambulanceService.updateAmbulanceLocation(1L, newLatitude, newLongitude);
+        UpdateResult result = ambulanceService.updateAmbulanceLocation(1L, newLatitude, newLongitude, null);
 
         // Assert
-        assertTrue(result.isPresent());
-        assertEquals(newLatitude, result.get().getLatitude());
-        assertEquals(newLongitude, result.get().getLongitude());
+        assertEquals(UpdateResult.Status.UPDATED, result.getStatus());
+        assertEquals(newLatitude, result.getAmbulance().getLatitude());
+        assertEquals(newLongitude, result.getAmbulance().getLongitude());
     }
 
     @Test
-    void updateAmbulanceAvailability_WhenExists_ShouldReturnUpdatedAmbulance() {
+    void updateAmbulanceAvailability_WhenExists_ShouldWriteOnlyAvailability() {
         // Arrange
+        ambulance.setAvailable(false);
+        when(ambulanceRepository.updateAvailable(1L, false)).thenReturn(1);
         when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
-        when(ambulanceRepository.save(any(Ambulance.class))).thenReturn(ambulance);
 
         // Act
-        Optional<Ambulance> result = ambulanceService.updateAmbulanceAvailability(1L, false);
+        UpdateResult result = ambulanceService.updateAmbulanceAvailability(1L, false, null);
 
         // Assert
-        assertTrue(result.isPresent());
-        assertFalse(result.get().isAvailable());
+        assertEquals(UpdateResult.Status.UPDATED, result.getStatus());
+        assertFalse(result.getAmbulance().isAvailable());
+        verify(ambulanceRepository, never()).save(any());
+        verify(changeLog).recordAvailability(1L, false);
+    }
+
+    @Test
+    void updateAmbulanceAvailability_WithStaleVersion_ShouldReportMismatch() {
+        // Arrange
+        ambulance.setVersion(5L);
+        when(ambulanceRepository.updateAvailableIfVersion(1L, false, 4L)).thenReturn(0);
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
+
+        // Act
+        UpdateResult result = ambulanceService.updateAmbulanceAvailability(1L, false, 4L);
+
+        // Assert
+        assertEquals(UpdateResult.Status.VERSION_MISMATCH, result.getStatus());
+        assertEquals(5L, result.getAmbulance().getVersion());
+        verifyNoInteractions(changeLog);
     }
 
     @Test
@@ -167,4 +291,268 @@ class AmbulanceServiceTest {
         // Assert
         verify(ambulanceRepository).delete(ambulance);
     }
+
+    @Test
+    void reserveAmbulance_WhenAvailable_ShouldWin() {
+        // Arrange
+        when(ambulanceRepository.compareAndSetAvailable(1L, true, false)).thenReturn(1);
+
+        // Act
+        AmbulanceService.ReservationResult result = ambulanceService.reserveAmbulance(1L);
+
+        // Assert
+        assertEquals(AmbulanceService.ReservationResult.RESERVED, result);
+        verify(ambulanceRepository, never()).save(any());
+        verify(changeLog).recordAvailability(1L, false);
+    }
+
+    @Test
+    void reserveAmbulance_WhenAlreadyReserved_ShouldReportConflict() {
+        // Arrange
+        when(ambulanceRepository.compareAndSetAvailable(1L, true, false)).thenReturn(0);
+        when(ambulanceRepository.existsById(1)).thenReturn(true);
+
+        // Act & Assert
+        assertEquals(AmbulanceService.ReservationResult.CONFLICT, ambulanceService.reserveAmbulance(1L));
+        verifyNoInteractions(changeLog);
+    }
+
+    @Test
+    void reserveAmbulance_WhenMissing_ShouldReportNotFound() {
+        // Arrange
+        when(ambulanceRepository.compareAndSetAvailable(9L, true, false)).thenReturn(0);
+        when(ambulanceRepository.existsById(9)).thenReturn(false);
+
+        // Act & Assert
+        assertEquals(AmbulanceService.ReservationResult.NOT_FOUND, ambulanceService.reserveAmbulance(9L));
+    }
+
+    @Test
+    void releaseAmbulance_ShouldFlipBackToAvailable() {
+        // Arrange
+        when(ambulanceRepository.compareAndSetAvailable(1L, false, true)).thenReturn(1);
+
+        // Act & Assert
+        assertEquals(AmbulanceService.ReservationResult.RESERVED, ambulanceService.releaseAmbulance(1L));
+    }
+
+    @Test
+    void findNearest_ShouldRankInMemoryPositionsAndLoadOnlyThoseInRange() {
+        // Arrange
+        Ambulance far = ambulanceAt(2L, 40.7128 + 0.05, -74.0060);    // ~5.6 km
+        Ambulance near = ambulanceAt(3L, 40.7128 + 0.001, -74.0060);  // ~110 m
+        Ambulance outside = ambulanceAt(4L, 40.7128 + 0.2, -74.0060); // ~22 km
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance, far, near, outside));
+        when(ambulanceRepository.findByIdInAndAvailable(anyCollection(), eq(true)))
+                .thenReturn(Arrays.asList(far, near, ambulance));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(40.7128, -74.0060, 3, 10_000, true);
+
+        // Assert
+        assertEquals(Arrays.asList(1L, 3L, 2L), result.stream().map(Ambulance::getId).toList());
+        verify(ambulanceRepository).findByIdInAndAvailable(List.of(1, 3, 2), true);
+    }
+
+    @Test
+    void findNearest_ShouldSeePositionsNotYetFlushed() {
+        // Arrange
+        Ambulance moving = ambulanceAt(2L, 41.50, -74.0060);  // ~88 km away in the database
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance, moving));
+        locationStore.offer(2L, 40.7128 + 0.001, -74.0060, System.currentTimeMillis());
+        when(ambulanceRepository.findAllById(List.of(2, 1)))
+                .thenReturn(Arrays.asList(ambulance, ambulanceAt(2L, 41.50, -74.0060)));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(40.7128 + 0.002, -74.0060, 5, 1_000, null);
+
+        // Assert
+        assertEquals(Arrays.asList(2L, 1L), result.stream().map(Ambulance::getId).toList());
+        assertEquals(40.7128 + 0.001, result.get(0).getLatitude(), 1e-9);
+        assertEquals(1, locationStore.pendingCount());
+    }
+
+    @Test
+    void findNearest_ShouldLimitToK() {
+        // Arrange
+        Ambulance other = ambulanceAt(2L, 40.72, -74.0060);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(other, ambulance));
+        when(ambulanceRepository.findAllById(anyIterable())).thenReturn(Arrays.asList(other, ambulance));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(40.7128, -74.0060, 1, 10_000, null);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(1L, result.get(0).getId());
+    }
+
+    @Test
+    void findNearest_ShouldLoadRowsInDistanceOrderUntilKMatch() {
+        // Arrange
+        Ambulance near = ambulanceAt(3L, 40.7128 + 0.001, -74.0060);
+        Ambulance far = ambulanceAt(2L, 40.7128 + 0.05, -74.0060);
+        Ambulance farthest = ambulanceAt(4L, 40.7128 + 0.08, -74.0060);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance, near, far, farthest));
+        // The two closest are busy
+        when(ambulanceRepository.findByIdInAndAvailable(List.of(1, 3), true)).thenReturn(List.of());
+        when(ambulanceRepository.findByIdInAndAvailable(List.of(2, 4), true)).thenReturn(Arrays.asList(farthest, far));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(40.7128, -74.0060, 2, 50_000, true);
+
+        // Assert
+        assertEquals(Arrays.asList(2L, 4L), result.stream().map(Ambulance::getId).toList());
+        verify(ambulanceRepository, times(2)).findByIdInAndAvailable(anyCollection(), eq(true));
+    }
+
+    @Test
+    void findNearest_ShouldStopLoadingOnceKMatch() {
+        // Arrange
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance,
+                ambulanceAt(2L, 40.72, -74.0060), ambulanceAt(3L, 40.73, -74.0060)));
+        when(ambulanceRepository.findByIdInAndAvailable(List.of(1), true)).thenReturn(List.of(ambulance));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(40.7128, -74.0060, 1, 50_000, true);
+
+        // Assert
+        assertEquals(List.of(ambulance), result);
+        verify(ambulanceRepository, times(1)).findByIdInAndAvailable(anyCollection(), anyBoolean());
+    }
+
+    @Test
+    void findNearest_WhenNothingInRange_ShouldNotQueryRows() {
+        // Arrange
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
+
+        // Act
+        List<Ambulance> result = ambulanceService.findNearest(0, 0, 5, 10_000, true);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(ambulanceRepository, never()).findByIdInAndAvailable(anyCollection(), anyBoolean());
+    }
+
+    private Ambulance ambulanceAt(Long id, double latitude, double longitude) {
+        Ambulance other = new Ambulance();
+        other.setId(id);
+        other.setDriverName("Driver " + id);
+        other.setAvailable(true);
+        other.setLatitude(latitude);
+        other.setLongitude(longitude);
+        return other;
+    }
+
+    @Test
+    void updateAmbulanceLocation_ShouldRecordChangeWithoutWritingRow() {
+        // Arrange
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(ambulance));
+
+        // Act
+        ambulanceService.updateAmbulanceLocation(1L, 40.7580, -73.9855, null);
+
+        // Assert
+        verify(changeLog).recordLocation(1L, 40.7580, -73.9855);
+        verify(ambulanceRepository, never()).save(any());
+        assertEquals(1, locationStore.pendingCount());
+    }
+
+    @Test
+    void updateAmbulanceLocation_WhenNotExists_ShouldReturnEmpty() {
+        // Arrange
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
+
+        // Act & Assert
+        assertEquals(UpdateResult.Status.NOT_FOUND,
+                ambulanceService.updateAmbulanceLocation(99L, 40.7580, -73.9855, null).getStatus());
+        verifyNoInteractions(changeLog);
+    }
+
+    @Test
+    void getSnapshot_ShouldTakeCursorBeforeReadingFleet() {
+        // Arrange
+        when(changeLog.cursor()).thenReturn(42L);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
+
+        // Act
+        var snapshot = ambulanceService.getSnapshot();
+
+        // Assert
+        assertEquals(42L, snapshot.getCursor());
+        assertEquals(1, snapshot.getAmbulances().size());
+        var order = inOrder(changeLog, ambulanceRepository);
+        order.verify(changeLog).cursor();
+        order.verify(ambulanceRepository).findAll();
+    }
+
+    @Test
+    void ingestLocations_ShouldBufferSamplesAndReportEach() {
+        // Arrange
+        Ambulance second = new Ambulance();
+        second.setId(2L);
+        second.setLatitude(31.50);
+        second.setLongitude(-8.10);
+        second.setLocationTimestamp(1800L);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance, second));
+        List<LocationSample> samples = Arrays.asList(
+                new LocationSample(1L, 31.60, -8.00, Instant.ofEpochMilli(1000)),
+                new LocationSample(1L, 31.61, -8.01, Instant.ofEpochMilli(2000)),
+                new LocationSample(1L, 31.59, -7.99, Instant.ofEpochMilli(1500)),
+                new LocationSample(2L, 31.62, -8.02, Instant.ofEpochMilli(1500)),
+                new LocationSample(3L, 31.63, -8.03, Instant.ofEpochMilli(1500)),
+                new LocationSample(4L, 95.0, -8.04, Instant.ofEpochMilli(1500)));
+
+        // Act
+        List<LocationUpdateResult> results = ambulanceService.ingestLocations(samples);
+
+        // Assert
+        assertEquals(LocationUpdateResult.Status.APPLIED, results.get(0).getStatus());
+        assertEquals(LocationUpdateResult.Status.APPLIED, results.get(1).getStatus());
+        assertEquals(LocationUpdateResult.Status.STALE, results.get(2).getStatus());
+        assertEquals(LocationUpdateResult.Status.STALE, results.get(3).getStatus());
+        assertEquals(LocationUpdateResult.Status.NOT_FOUND, results.get(4).getStatus());
+        assertEquals(LocationUpdateResult.Status.INVALID, results.get(5).getStatus());
+        verify(changeLog).recordLocation(1L, 31.60, -8.00);
+        verify(changeLog).recordLocation(1L, 31.61, -8.01);
+        verifyNoMoreInteractions(changeLog);
+        verify(historyLog).append(1L, 1000L, 31.60, -8.00);
+        verify(historyLog).append(1L, 2000L, 31.61, -8.01);
+        verifyNoMoreInteractions(historyLog);
+        verifyNoInteractions(locationWriter);
+        assertEquals(1, locationStore.pendingCount());
+    }
+
+    @Test
+    void getAmbulanceById_ShouldServeLatestBufferedPosition() {
+        // Arrange
+        Ambulance stored = new Ambulance();
+        stored.setId(1L);
+        stored.setLatitude(40.7128);
+        stored.setLongitude(-74.0060);
+        when(ambulanceRepository.findAll()).thenReturn(Arrays.asList(ambulance));
+        when(ambulanceRepository.findById(1)).thenReturn(Optional.of(stored));
+        ambulanceService.ingestLocations(List.of(new LocationSample(1L, 41.0, -73.0, Instant.now())));
+
+        // Act
+        Ambulance result = ambulanceService.getAmbulanceById(1L).orElseThrow();
+
+        // Assert
+        assertEquals(41.0, result.getLatitude());
+        assertEquals(-73.0, result.getLongitude());
+    }
+
+    @Test
+    void getTrack_WhenNotExists_ShouldReturnEmpty() {
+        // Arrange
+        when(ambulanceRepository.existsById(99)).thenReturn(false);
+
+        // Act
+        Optional<List<TrackPoint>> result = ambulanceService.getTrack(99L, Instant.EPOCH, Instant.now(), 0);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(historyLog);
+    }
 }
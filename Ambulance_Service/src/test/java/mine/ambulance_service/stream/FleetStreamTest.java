@@ -0,0 +1,189 @@
+package mine.ambulance_service.stream;
+
+import mine.ambulance_service.change.AmbulanceChangeLog;
+import mine.ambulance_service.change.FleetSnapshot;
+import mine.ambulance_service.model.Ambulance;
+import mine.ambulance_service.service.AmbulanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class FleetStreamTest {
+
+    @Mock
+    private AmbulanceService ambulanceService;
+
+    private AmbulanceChangeLog changeLog;
+    private final List<Runnable> queued = new ArrayList<>();
+    private FleetStream fleetStream;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        changeLog = new AmbulanceChangeLog(100);
+        when(ambulanceService.getSnapshot()).thenReturn(new FleetSnapshot(0, Arrays.asList(
+                ambulance(1L, 31.60, -8.00), ambulance(2L, 31.61, -8.01), ambulance(3L, 40.00, -74.00))));
+        // Sends run only when the test says so, so it can play a slow client
+        Executor manual = queued::add;
+        fleetStream = new FleetStream(changeLog, ambulanceService, manual, 60_000, 50, false);
+    }
+
+    private static Ambulance ambulance(Long id, double latitude, double longitude) {
+        Ambulance ambulance = new Ambulance();
+        ambulance.setId(id);
+        ambulance.setLatitude(latitude);
+        ambulance.setLongitude(longitude);
+        ambulance.setAvailable(true);
+        return ambulance;
+    }
+
+    private void runQueued() {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    @Test
+    void subscribe_ShouldSendSnapshotOfBoundingBox() {
+        List<Object[]> events = new ArrayList<>();
+        fleetStream.subscribe(new BoundingBox(31.0, 32.0, -9.0, -7.0), (event, data) -> events.add(new Object[]{event, data}));
+
+        runQueued();
+
+        assertEquals(1, events.size());
+        assertEquals("snapshot", events.get(0)[0]);
+        assertEquals(2, ((List<?>) events.get(0)[1]).size());
+    }
+
+    @Test
+    void tick_ShouldSendOnlyChangedFields() {
+        List<Object[]> events = new ArrayList<>();
+        fleetStream.subscribe(BoundingBox.WORLD, (event, data) -> events.add(new Object[]{event, data}));
+        runQueued();
+
+        changeLog.recordAvailability(1L, false);
+        fleetStream.tick();
+        runQueued();
+
+        assertEquals("delta", events.get(1)[0]);
+        AmbulanceDelta delta = (AmbulanceDelta) ((List<?>) events.get(1)[1]).get(0);
+        assertEquals(1L, delta.getId());
+        assertEquals(Boolean.FALSE, delta.getAvailable());
+        assertNull(delta.getLatitude());
+        assertNull(delta.getLongitude());
+    }
+
+    @Test
+    void tick_WhenClientIsBusy_ShouldCoalesceToLatestPosition() {
+        List<Object[]> events = new ArrayList<>();
+        fleetStream.subscribe(BoundingBox.WORLD, (event, data) -> events.add(new Object[]{event, data}));
+        runQueued();
+
+        // The first delta is queued but not yet delivered while three more pings arrive
+        changeLog.recordLocation(1L, 31.62, -8.00);
+        fleetStream.tick();
+        changeLog.recordLocation(1L, 31.63, -8.00);
+        fleetStream.tick();
+        changeLog.recordLocation(1L, 31.64, -8.00);
+        fleetStream.tick();
+        assertEquals(1, queued.size());
+        runQueued();
+
+        assertEquals(2, events.size());
+        AmbulanceDelta delta = (AmbulanceDelta) ((List<?>) events.get(1)[1]).get(0);
+        assertEquals(31.64, delta.getLatitude());
+    }
+
+    @Test
+    void tick_WhenAmbulanceLeavesBox_ShouldSendRemoval() {
+        List<Object[]> events = new ArrayList<>();
+        fleetStream.subscribe(new BoundingBox(31.0, 32.0, -9.0, -7.0), (event, data) -> events.add(new Object[]{event, data}));
+        runQueued();
+
+        changeLog.recordLocation(2L, 35.00, -8.01);
+        changeLog.recordLocation(3L, 40.01, -74.00);
+        fleetStream.tick();
+        runQueued();
+
+        List<?> deltas = (List<?>) events.get(1)[1];
+        assertEquals(1, deltas.size());
+        AmbulanceDelta delta = (AmbulanceDelta) deltas.get(0);
+        assertEquals(2L, delta.getId());
+        assertEquals(Boolean.TRUE, delta.getRemoved());
+    }
+
+    @Test
+    void send_WhenClientFails_ShouldDropIt() {
+        fleetStream.subscribe(BoundingBox.WORLD, (event, data) -> {
+            throw new IOException("broken pipe");
+        });
+
+        runQueued();
+
+        assertEquals(0, fleetStream.clientCount());
+    }
+
+    @Test
+    void send_WhenClientFails_ShouldCloseIt() {
+        List<Exception> closed = new ArrayList<>();
+        fleetStream.subscribe(BoundingBox.WORLD, new EventSink() {
+            @Override
+            public void send(String event, Object data) throws IOException {
+                throw new IOException("broken pipe");
+            }
+
+            @Override
+            public void close(Exception cause) {
+                closed.add(cause);
+            }
+        });
+
+        runQueued();
+
+        assertEquals(1, closed.size());
+        assertEquals("broken pipe", closed.get(0).getMessage());
+    }
+
+    @Test
+    void tick_WhenSendOverrunsTimeout_ShouldCutClientOff() {
+        List<Exception> closed = new ArrayList<>();
+        fleetStream.subscribe(BoundingBox.WORLD, new EventSink() {
+            @Override
+            public void send(String event, Object data) {
+                // A stalled connection: the next tick finds this send still running past its deadline
+                sleep(100);
+                fleetStream.tick();
+            }
+
+            @Override
+            public void close(Exception cause) {
+                closed.add(cause);
+            }
+        });
+
+        runQueued();
+
+        assertEquals(0, fleetStream.clientCount());
+        assertEquals(1, closed.size());
+        assertInstanceOf(TimeoutException.class, closed.get(0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
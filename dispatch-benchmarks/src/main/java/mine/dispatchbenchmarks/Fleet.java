@@ -0,0 +1,56 @@
+package mine.dispatchbenchmarks;
+
+import mine.dispatchcoordinationservice.dto.Ambulance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic fleet scattered over roughly 110 x 95 km around Marrakech, in both the boxed DTO shape dispatch
+ * receives over HTTP and as primitive coordinate arrays.
+ */
+final class Fleet {
+
+    static final double CENTER_LATITUDE = 31.6295;
+    static final double CENTER_LONGITUDE = -7.9811;
+    private static final double SPREAD_DEGREES = 1.0;
+
+    final List<Ambulance> ambulances;
+    final double[] latitudes;
+    final double[] longitudes;
+
+    private Fleet(int size, long seed) {
+        Random random = new Random(seed);
+        ambulances = new ArrayList<>(size);
+        latitudes = new double[size];
+        longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = CENTER_LATITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            longitudes[i] = CENTER_LONGITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            Ambulance ambulance = new Ambulance();
+            ambulance.setId(i);
+            ambulance.setAvailable(true);
+            ambulance.setLatitude(latitudes[i]);
+            ambulance.setLongitude(longitudes[i]);
+            ambulances.add(ambulance);
+        }
+    }
+
+    static Fleet generate(int size) {
+        return new Fleet(size, 42);
+    }
+
+    /**
+     * Emergency locations over the same area; benchmarks cycle through them so no single query gets cached.
+     */
+    static double[][] emergencies(int count) {
+        Random random = new Random(7);
+        double[][] points = new double[count][2];
+        for (double[] point : points) {
+            point[0] = CENTER_LATITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            point[1] = CENTER_LONGITUDE + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+        }
+        return points;
+    }
+}
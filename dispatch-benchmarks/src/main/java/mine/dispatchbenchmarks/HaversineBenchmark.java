@@ -0,0 +1,55 @@
+package mine.dispatchbenchmarks;
+
+import mine.dispatchcoordinationservice.dto.Ambulance;
+import mine.dispatchcoordinationservice.dto.EmergencyRequest;
+import mine.dispatchcoordinationservice.geo.GeoUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one great-circle distance, from primitive coordinates and from the boxed {@code Double} getters
+ * of the DTOs dispatch works with.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HaversineBenchmark {
+
+    private double ambulanceLatitude;
+    private double ambulanceLongitude;
+    private double emergencyLatitude;
+    private double emergencyLongitude;
+
+    private Ambulance ambulance;
+    private EmergencyRequest request;
+
+    @Setup
+    public void setUp() {
+        ambulanceLatitude = 31.6340;
+        ambulanceLongitude = -7.9990;
+        emergencyLatitude = 31.6295;
+        emergencyLongitude = -7.9811;
+
+        ambulance = new Ambulance();
+        ambulance.setLatitude(ambulanceLatitude);
+        ambulance.setLongitude(ambulanceLongitude);
+        request = new EmergencyRequest();
+        request.setLatitude(emergencyLatitude);
+        request.setLongitude(emergencyLongitude);
+    }
+
+    @Benchmark
+    public double primitive() {
+        return GeoUtils.haversineMeters(emergencyLatitude, emergencyLongitude, ambulanceLatitude, ambulanceLongitude);
+    }
+
+    @Benchmark
+    public double boxed() {
+        return GeoUtils.haversineMeters(request.getLatitude(), request.getLongitude(),
+                ambulance.getLatitude(), ambulance.getLongitude());
+    }
+}
@@ -0,0 +1,151 @@
+package mine.dispatchbenchmarks;
+
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import mine.dispatchcoordinationservice.dto.Ambulance;
+import mine.dispatchcoordinationservice.geo.AmbulanceSpatialIndex;
+import mine.dispatchcoordinationservice.geo.GeoUtils;
+import mine.dispatchcoordinationservice.geo.Neighbor;
+import mine.dispatchcoordinationservice.geo.NeighborBuffer;
+import mine.dispatchcoordinationservice.service.AmbulanceReservations;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Nearest-ambulance selection over fleets of 10 to 1M units: the original linear scan over boxed DTOs
+ * (what {@code findNearestAmbulance} did before the index), the same scan over primitive arrays, and
+ * {@link AmbulanceSpatialIndex} for the nearest one and for the top 5, both into a fresh list and into a
+ * reused {@link NeighborBuffer} (which should show 0 B/op under the gc profiler).
+ * <p>
+ * {@code productionSelection} repeats what {@code DispatchService.rankByDistance} does per dispatch: sort the
+ * candidate ids of one specialization (every tenth ambulance here) into an int array, then query the index
+ * through a filter that binary-searches it and skips claimed ambulances. {@code replicaLocationUpdate} is
+ * the upkeep the fleet replica pays per location change, so both sides of the index show up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NearestSelectionBenchmark {
+
+    private static final double RADIUS_METERS = 50_000;
+    private static final IntPredicate ANY = id -> true;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int fleetSize;
+
+    private List<Ambulance> ambulances;
+    private double[] latitudes;
+    private double[] longitudes;
+    private AmbulanceSpatialIndex index;
+    private NeighborBuffer buffer;
+    private List<Ambulance> candidates;
+    private AmbulanceReservations reservations;
+    private int moved;
+    private double[][] emergencies;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fleet fleet = Fleet.generate(fleetSize);
+        ambulances = fleet.ambulances;
+        latitudes = fleet.latitudes;
+        longitudes = fleet.longitudes;
+        index = new AmbulanceSpatialIndex(new DispatchProperties());
+        for (int i = 0; i < fleetSize; i++) {
+            index.upsert(i, latitudes[i], longitudes[i], true);
+        }
+        buffer = new NeighborBuffer(5);
+        candidates = new ArrayList<>();
+        for (int i = 0; i < fleetSize; i += 10) {
+            candidates.add(ambulances.get(i));
+        }
+        reservations = new AmbulanceReservations();
+        emergencies = Fleet.emergencies(1024);
+    }
+
+    private double[] nextEmergency() {
+        double[] emergency = emergencies[next];
+        next = (next + 1) & (emergencies.length - 1);
+        return emergency;
+    }
+
+    @Benchmark
+    public Ambulance linearScanBoxed() {
+        double[] emergency = nextEmergency();
+        return ambulances.stream()
+                .min(Comparator.comparingDouble(ambulance -> GeoUtils.haversineMeters(
+                        ambulance.getLatitude(), ambulance.getLongitude(), emergency[0], emergency[1])))
+                .orElse(null);
+    }
+
+    @Benchmark
+    public int linearScanPrimitive() {
+        double[] emergency = nextEmergency();
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < latitudes.length; i++) {
+            double distance = GeoUtils.haversineMeters(latitudes[i], longitudes[i], emergency[0], emergency[1]);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public List<Neighbor> spatialIndexNearest() {
+        double[] emergency = nextEmergency();
+        return index.nearest(emergency[0], emergency[1], 1, RADIUS_METERS, ANY);
+    }
+
+    @Benchmark
+    public List<Neighbor> spatialIndexTop5() {
+        double[] emergency = nextEmergency();
+        return index.nearest(emergency[0], emergency[1], 5, RADIUS_METERS, ANY);
+    }
+
+    @Benchmark
+    public int spatialIndexNearestIntoBuffer() {
+        double[] emergency = nextEmergency();
+        return index.nearest(emergency[0], emergency[1], 1, RADIUS_METERS, ANY, buffer);
+    }
+
+    @Benchmark
+    public int spatialIndexTop5IntoBuffer() {
+        double[] emergency = nextEmergency();
+        return index.nearest(emergency[0], emergency[1], 5, RADIUS_METERS, ANY, buffer);
+    }
+
+    @Benchmark
+    public int productionSelection() {
+        double[] emergency = nextEmergency();
+        List<Ambulance> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingInt(Ambulance::getId));
+        int[] ids = new int[sorted.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sorted.get(i).getId();
+        }
+        return index.nearest(emergency[0], emergency[1], 5, RADIUS_METERS,
+                id -> Arrays.binarySearch(ids, id) >= 0 && !reservations.isClaimed(id), buffer);
+    }
+
+    @Benchmark
+    public void replicaLocationUpdate() {
+        int pass = moved;
+        moved = (moved + 1) % (2 * fleetSize);
+        int id = pass % fleetSize;
+        // A few tens of meters, as between two pings, north on one pass over the fleet and back on the next;
+        // every so often that crosses into the next cell
+        latitudes[id] += pass < fleetSize ? 0.0003 : -0.0003;
+        index.upsert(id, latitudes[id], longitudes[id], true);
+    }
+}
@@ -0,0 +1,173 @@
+package mine.dispatchcoordinationservice.assignment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Minimum-cost assignment of rows (incidents) to columns (ambulances). Uses the Hungarian algorithm,
+ * O(n^2 m) for n rows and m columns, and switches to a greedy cheapest-pair-first assignment if it
+ * cannot finish within the time budget.
+ */
+public final class AssignmentSolver {
+
+    /** Cost marking a row/column pair that must never be assigned. */
+    public static final double INFEASIBLE = Double.POSITIVE_INFINITY;
+
+    private AssignmentSolver() {
+    }
+
+    /**
+     * @return for each row, the assigned column, or -1 if the row could not be given a feasible column
+     */
+    public static int[] solve(double[][] cost, Duration budget) {
+        int rows = cost.length;
+        int columns = rows == 0 ? 0 : cost[0].length;
+        int[] unassigned = new int[rows];
+        Arrays.fill(unassigned, -1);
+        if (rows == 0 || columns == 0) {
+            return unassigned;
+        }
+        long deadline = System.nanoTime() + budget.toNanos();
+        // The Hungarian algorithm needs finite costs: stand in for INFEASIBLE with a cost larger than any
+        // complete feasible assignment, so it only uses one when no feasible column is left for a row
+        double maxFeasible = 0;
+        for (double[] row : cost) {
+            for (double value : row) {
+                if (value < INFEASIBLE) {
+                    maxFeasible = Math.max(maxFeasible, value);
+                }
+            }
+        }
+        double forbidden = (maxFeasible + 1) * (Math.min(rows, columns) + 1);
+        int[] assignment = rows <= columns
+                ? hungarian(cost, rows, columns, forbidden, deadline)
+                : invert(hungarian(transpose(cost), columns, rows, forbidden, deadline), rows);
+        if (assignment == null) {
+            assignment = greedy(cost);
+        }
+        for (int row = 0; row < rows; row++) {
+            if (assignment[row] >= 0 && !(cost[row][assignment[row]] < INFEASIBLE)) {
+                assignment[row] = -1;
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Greedy assignment, cheapest feasible pair first.
+     */
+    public static int[] greedy(double[][] cost) {
+        int rows = cost.length;
+        int columns = rows == 0 ? 0 : cost[0].length;
+        List<int[]> pairs = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (cost[row][column] < INFEASIBLE) {
+                    pairs.add(new int[]{row, column});
+                }
+            }
+        }
+        pairs.sort(Comparator.comparingDouble(pair -> cost[pair[0]][pair[1]]));
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        boolean[] taken = new boolean[columns];
+        for (int[] pair : pairs) {
+            if (assignment[pair[0]] < 0 && !taken[pair[1]]) {
+                assignment[pair[0]] = pair[1];
+                taken[pair[1]] = true;
+            }
+        }
+        return assignment;
+    }
+
+    // Requires n <= m. Returns null when the deadline passes.
+    private static int[] hungarian(double[][] cost, int n, int m, double forbidden, long deadline) {
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] p = new int[m + 1];
+        int[] way = new int[m + 1];
+        double[] minv = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            if (System.nanoTime() > deadline) {
+                return null;
+            }
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double current = Math.min(cost[i0 - 1][j - 1], forbidden) - u[i0] - v[j];
+                    if (current < minv[j]) {
+                        minv[j] = current;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] assignment = new int[n];
+        Arrays.fill(assignment, -1);
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                assignment[p[j] - 1] = j - 1;
+            }
+        }
+        return assignment;
+    }
+
+    private static double[][] transpose(double[][] cost) {
+        double[][] transposed = new double[cost[0].length][cost.length];
+        for (int row = 0; row < cost.length; row++) {
+            for (int column = 0; column < cost[0].length; column++) {
+                transposed[column][row] = cost[row][column];
+            }
+        }
+        return transposed;
+    }
+
+    // Column-to-row assignment back to row-to-column
+    private static int[] invert(int[] assignment, int rows) {
+        if (assignment == null) {
+            return null;
+        }
+        int[] inverted = new int[rows];
+        Arrays.fill(inverted, -1);
+        for (int column = 0; column < assignment.length; column++) {
+            if (assignment[column] >= 0) {
+                inverted[assignment[column]] = column;
+            }
+        }
+        return inverted;
+    }
+}
@@ -0,0 +1,342 @@
+package mine.dispatchcoordinationservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "dispatch")
+public class DispatchProperties {
+
+    private final Timeouts timeouts = new Timeouts();
+    private final Fanout fanout = new Fanout();
+    private final Index index = new Index();
+    private final Selection selection = new Selection();
+    private final Batch batch = new Batch();
+    private final HospitalCache hospitalCache = new HospitalCache();
+    private final Replica replica = new Replica();
+    private final RouteMigration routeMigration = new RouteMigration();
+
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public Fanout getFanout() {
+        return fanout;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public HospitalCache getHospitalCache() {
+        return hospitalCache;
+    }
+
+    public Replica getReplica() {
+        return replica;
+    }
+
+    public RouteMigration getRouteMigration() {
+        return routeMigration;
+    }
+
+    /**
+     * Upper bound for each remote or blocking step of the dispatch pipeline.
+     */
+    public static class Timeouts {
+        private Duration hospitals = Duration.ofSeconds(3);
+        private Duration ambulances = Duration.ofSeconds(3);
+        private Duration route = Duration.ofSeconds(5);
+        private Duration availability = Duration.ofSeconds(3);
+        private Duration caseSave = Duration.ofSeconds(3);
+
+        public Duration getHospitals() {
+            return hospitals;
+        }
+
+        public void setHospitals(Duration hospitals) {
+            this.hospitals = hospitals;
+        }
+
+        public Duration getAmbulances() {
+            return ambulances;
+        }
+
+        public void setAmbulances(Duration ambulances) {
+            this.ambulances = ambulances;
+        }
+
+        public Duration getRoute() {
+            return route;
+        }
+
+        public void setRoute(Duration route) {
+            this.route = route;
+        }
+
+        public Duration getAvailability() {
+            return availability;
+        }
+
+        public void setAvailability(Duration availability) {
+            this.availability = availability;
+        }
+
+        public Duration getCaseSave() {
+            return caseSave;
+        }
+
+        public void setCaseSave(Duration caseSave) {
+            this.caseSave = caseSave;
+        }
+    }
+
+    /**
+     * Per-hospital ambulance lookups. Each call is bounded by {@link Timeouts#getAmbulances()}; the whole
+     * fan-out is bounded by {@code deadline}, after which dispatch continues with the hospitals that answered.
+     */
+    public static class Fanout {
+        private int concurrency = 8;
+        private Duration deadline = Duration.ofSeconds(2);
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Grid cell size of the in-memory ambulance index; 0.01 degrees is roughly 1.1 km north-south.
+     */
+    public static class Index {
+        private double cellSizeDegrees = 0.01;
+
+        public double getCellSizeDegrees() {
+            return cellSizeDegrees;
+        }
+
+        public void setCellSizeDegrees(double cellSizeDegrees) {
+            this.cellSizeDegrees = cellSizeDegrees;
+        }
+    }
+
+    /**
+     * The index searches {@code radiusMeters} around the emergency first; when no candidate is that close the
+     * nearest ones anywhere are used instead. {@code candidates} is how many of the nearest ones are ranked. In {@link Mode#ROUTE_AWARE} mode those candidates'
+     * driving ETAs are requested in parallel and the fastest one wins, unless not all of them answer
+     * within {@code etaDeadline}, in which case the straight-line nearest is used.
+     */
+    public static class Selection {
+        private Mode mode = Mode.NEAREST;
+        private double radiusMeters = 50_000;
+        private int candidates = 5;
+        private Duration etaDeadline = Duration.ofMillis(1500);
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public double getRadiusMeters() {
+            return radiusMeters;
+        }
+
+        public void setRadiusMeters(double radiusMeters) {
+            this.radiusMeters = radiusMeters;
+        }
+
+        public int getCandidates() {
+            return candidates;
+        }
+
+        public void setCandidates(int candidates) {
+            this.candidates = candidates;
+        }
+
+        public Duration getEtaDeadline() {
+            return etaDeadline;
+        }
+
+        public void setEtaDeadline(Duration etaDeadline) {
+            this.etaDeadline = etaDeadline;
+        }
+
+        public enum Mode {
+            NEAREST,
+            ROUTE_AWARE
+        }
+    }
+
+    /**
+     * Batch dispatch of simultaneous emergencies. The optimal assignment gets {@code solverBudget}; past that
+     * it is replaced by a greedy one.
+     */
+    public static class Batch {
+        private int maxEmergencies = 50;
+        private Duration solverBudget = Duration.ofMillis(200);
+
+        public int getMaxEmergencies() {
+            return maxEmergencies;
+        }
+
+        public void setMaxEmergencies(int maxEmergencies) {
+            this.maxEmergencies = maxEmergencies;
+        }
+
+        public Duration getSolverBudget() {
+            return solverBudget;
+        }
+
+        public void setSolverBudget(Duration solverBudget) {
+            this.solverBudget = solverBudget;
+        }
+    }
+
+    /**
+     * Hospitals per specialization. Entries are reloaded in the background once older than
+     * {@code refreshAfter} (the stale list is served meanwhile) and dropped after {@code ttl}; hospital
+     * changes invalidate them sooner.
+     */
+    public static class HospitalCache {
+        private long maximumSize = 1000;
+        private Duration ttl = Duration.ofMinutes(30);
+        private Duration refreshAfter = Duration.ofMinutes(5);
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getRefreshAfter() {
+            return refreshAfter;
+        }
+
+        public void setRefreshAfter(Duration refreshAfter) {
+            this.refreshAfter = refreshAfter;
+        }
+    }
+
+    /**
+     * Local copy of ambulance positions and availability, kept current from ambulance-service's change log.
+     * Each poll waits up to {@code longPoll} for new changes; if nothing has been heard for
+     * {@code staleAfter}, dispatch stops trusting the copy and asks hospital-management again. After a
+     * failure the replica reloads the snapshot, backing off from {@code retryBackoff} to {@code maxBackoff}.
+     */
+    public static class Replica {
+        private boolean enabled = true;
+        private Duration longPoll = Duration.ofSeconds(25);
+        private Duration staleAfter = Duration.ofSeconds(60);
+        private Duration snapshotTimeout = Duration.ofSeconds(10);
+        private int batchSize = 1000;
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getLongPoll() {
+            return longPoll;
+        }
+
+        public void setLongPoll(Duration longPoll) {
+            this.longPoll = longPoll;
+        }
+
+        public Duration getStaleAfter() {
+            return staleAfter;
+        }
+
+        public void setStaleAfter(Duration staleAfter) {
+            this.staleAfter = staleAfter;
+        }
+
+        public Duration getSnapshotTimeout() {
+            return snapshotTimeout;
+        }
+
+        public void setSnapshotTimeout(Duration snapshotTimeout) {
+            this.snapshotTimeout = snapshotTimeout;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    /**
+     * Retirement of the inline {@code cases.route_geometry} column. Routes are copied out on every start while
+     * the column exists; dropping it is a separate step, enabled on one instance once no instance running the
+     * old version can still write to it.
+     */
+    public static class RouteMigration {
+        private boolean dropLegacyColumn = false;
+
+        public boolean isDropLegacyColumn() {
+            return dropLegacyColumn;
+        }
+
+        public void setDropLegacyColumn(boolean dropLegacyColumn) {
+            this.dropLegacyColumn = dropLegacyColumn;
+        }
+    }
+}
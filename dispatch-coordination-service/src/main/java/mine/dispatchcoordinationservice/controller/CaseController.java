@@ -1,25 +1,193 @@
 package mine.dispatchcoordinationservice.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import mine.dispatchcoordinationservice.dto.CaseChanges;
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseRoute;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
 import mine.dispatchcoordinationservice.model.Case;
+import mine.dispatchcoordinationservice.repository.CaseCursor;
+import mine.dispatchcoordinationservice.repository.CaseFields;
 import mine.dispatchcoordinationservice.service.CaseService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/cases")
 public class CaseController {
 
+    private static final int MAX_PAGE = 1000;
+    private static final int DEFAULT_PAGE = 100;
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String CSV_HEADER = "id,created_at,status,specialization,latitude,longitude,ambulance_id,"
+            + "hospital_id,estimated_duration,estimated_distance,real_duration\n";
+
     private final CaseService caseService;
+    private final ObjectMapper objectMapper;
 
-    public CaseController(CaseService caseService) {
+    public CaseController(CaseService caseService, ObjectMapper objectMapper) {
         this.caseService = caseService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * One keyset page of case summaries, oldest first, optionally filtered by status, ambulance and creation time. Pages
+     * are {@code limit} long (100 by default) and continue from the {@code after} cursor; while they come back
+     * full a {@code Link: rel="next"} header points at the next one. With {@code fields}, e.g.
+     * {@code fields=status,latitude,longitude}, each case carries only those fields plus its id and creation
+     * time, and only those columns are read. The weak ETag is the last case change number committed by any
+     * instance together with the query, so an unchanged poll with If-None-Match gets a 304 from a single-row read.
+     */
     @GetMapping
-    public List<Case> getAllCases() {
-        return caseService.getAllCases();
+    public ResponseEntity<List<?>> getCases(CaseFilter filter,
+                                            @RequestParam(required = false) String after,
+                                            @RequestParam(required = false) Integer limit,
+                                            @RequestParam(required = false) String fields,
+                                            WebRequest request) {
+        // Taken before the read, so a change racing the read makes the next poll miss rather than a stale hit
+        String eTag = listETag(request, MediaType.APPLICATION_JSON);
+        if (request.checkNotModified(eTag)) {
+            // The 304 status and ETag are already on the response
+            return null;
+        }
+        int pageSize = limit != null ? limit : DEFAULT_PAGE;
+        CaseCursor cursor = parseCursor(after);
+        Set<String> selected = parseFields(fields);
+        if (pageSize <= 0 || pageSize > MAX_PAGE || (after != null && cursor == null)
+                || (fields != null && selected == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<?> page;
+        CaseCursor last = null;
+        if (selected != null) {
+            List<Map<String, Object>> rows = caseService.getCaseFields(selected, filter, cursor, pageSize);
+            if (!rows.isEmpty()) {
+                last = CaseCursor.of(rows.get(rows.size() - 1));
+            }
+            page = rows;
+        } else {
+            List<CaseSummary> summaries = caseService.getCasePage(filter, cursor, pageSize);
+            if (!summaries.isEmpty()) {
+                last = CaseCursor.of(summaries.get(summaries.size() - 1));
+            }
+            page = summaries;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+        if (page.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", last)
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Export of every matching case as newline-delimited JSON, one case per line, written as rows come off
+     * the cursor.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCases(CaseFilter filter,
+                                                             @RequestParam(required = false) String after,
+                                                             @RequestParam(required = false) String fields,
+                                                             WebRequest request) {
+        String eTag = listETag(request, MediaType.APPLICATION_NDJSON);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        CaseCursor cursor = parseCursor(after);
+        Set<String> selected = parseFields(fields);
+        if ((after != null && cursor == null) || (fields != null && selected == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            Consumer<Object> writeLine = item -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(item));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (selected != null) {
+                caseService.streamCaseFields(selected, filter, cursor, writeLine::accept);
+            } else {
+                caseService.streamCases(filter, cursor, writeLine::accept);
+            }
+        };
+        return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * The same export as CSV with a header row, for spreadsheets and audit tooling.
+     */
+    @GetMapping(produces = TEXT_CSV_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCasesCsv(CaseFilter filter,
+                                                                @RequestParam(required = false) String after) {
+        CaseCursor cursor = parseCursor(after);
+        if (after != null && cursor == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(CSV_HEADER);
+            caseService.streamCases(filter, cursor, item -> {
+                try {
+                    writer.write(csvRow(item));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(TEXT_CSV_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("cases.csv").build().toString())
+                .body(body);
+    }
+
+    /**
+     * Cases created or updated after the {@code since} cursor (0 for all), oldest change first, with the cursor
+     * to poll from next. A full batch means more are waiting. The weak ETag is the cursor and batch size with
+     * the last change number committed by any instance, so a repeated poll with If-None-Match gets a 304 from
+     * a single-row read until some case changes.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<CaseChanges> getChanges(@RequestParam long since,
+                                                  @RequestParam(required = false) Integer limit,
+                                                  WebRequest request) {
+        int batchSize = limit != null ? limit : MAX_PAGE;
+        if (since < 0 || batchSize <= 0 || batchSize > MAX_PAGE) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Taken before the read, so a change racing the read makes the next poll miss rather than a stale hit
+        String eTag = "W/\"" + since + "-" + batchSize + "-" + caseService.getLatestChange() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(caseService.getChangesSince(since, batchSize));
     }
 
     @GetMapping("/{id}")
@@ -29,13 +197,97 @@ public class CaseController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * The route polyline of one case, kept out of every other case response. The ETag is the route's content
+     * hash, so a client holding it gets a 304 without the route being read.
+     */
+    @GetMapping("/{id}/route")
+    public ResponseEntity<CaseRoute> getCaseRoute(@PathVariable Integer id, WebRequest request) {
+        Optional<String> routeHash = caseService.getCaseById(id).map(Case::getRouteHash);
+        if (routeHash.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = "\"" + routeHash.get() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return caseService.getRoute(routeHash.get())
+                .map(geometry -> ResponseEntity.ok().eTag(eTag).body(new CaseRoute(id, geometry)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Case> updateCase(@PathVariable Integer id, @RequestBody Case updatedCase) {
         return caseService.getCaseById(id)
                 .map(existingCase -> {
                     updatedCase.setId(existingCase.getId());
+                    if (updatedCase.getRouteGeometry() == null) {
+                        // The body carries no route unless it changes one; keep the stored one
+                        updatedCase.setRouteHash(existingCase.getRouteHash());
+                    }
                     return ResponseEntity.ok(caseService.updateCase(updatedCase));
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    private String listETag(WebRequest request, MediaType representation) {
+        // Both listings answer on /cases; Accept picks one, so caches must key on it
+        if (request instanceof NativeWebRequest nativeRequest
+                && nativeRequest.getNativeResponse() instanceof HttpServletResponse response) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return "W/\"" + caseService.getLatestChange() + "-" + representation.getSubtype() + "-" + queryDigest() + "\"";
+    }
+
+    private static String queryDigest() {
+        String query = ServletUriComponentsBuilder.fromCurrentRequest().build().getQuery();
+        // Parameter order does not change the page, so it does not change the tag
+        String normalized = query == null ? "" : Arrays.stream(query.split("&")).sorted().collect(Collectors.joining("&"));
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CaseCursor parseCursor(String after) {
+        if (after == null) {
+            return null;
+        }
+        try {
+            return CaseCursor.parse(after);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Set<String> parseFields(String fields) {
+        if (fields == null) {
+            return null;
+        }
+        try {
+            return CaseFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String csvRow(CaseSummary item) {
+        return String.join(",", String.valueOf(item.getId()), csv(item.getCreatedAt()), csv(item.getStatus()),
+                csv(item.getSpecialization()), csv(item.getLatitude()), csv(item.getLongitude()),
+                csv(item.getAssignedAmbulanceId()), csv(item.getAssignedHospitalId()), csv(item.getEstimatedDuration()),
+                csv(item.getEstimatedDistance()), csv(item.getRealDuration())) + "\n";
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
 }
@@ -1,28 +1,75 @@
 package mine.dispatchcoordinationservice.controller;
 
+import mine.dispatchcoordinationservice.config.DispatchProperties;
 import mine.dispatchcoordinationservice.dto.DispatchResult;
 import mine.dispatchcoordinationservice.dto.EmergencyRequest;
 import mine.dispatchcoordinationservice.service.DispatchService;
+import mine.dispatchcoordinationservice.service.HospitalCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/dispatch")
 public class DispatchController {
 
     private final DispatchService dispatchService;
+    private final DispatchProperties properties;
+    private final HospitalCache hospitalCache;
 
-    public DispatchController(DispatchService dispatchService) {
+    public DispatchController(DispatchService dispatchService, DispatchProperties properties,
+                              HospitalCache hospitalCache) {
         this.dispatchService = dispatchService;
+        this.properties = properties;
+        this.hospitalCache = hospitalCache;
     }
 
     @PostMapping("/emergency")
-    public ResponseEntity<DispatchResult> handleEmergency(@RequestBody EmergencyRequest request) {
-        DispatchResult result = dispatchService.handleEmergency(request);
-        if ("SUCCESS".equals(result.getStatus())) {
-            return ResponseEntity.ok(result);
+    public Mono<ResponseEntity<DispatchResult>> handleEmergency(@RequestBody EmergencyRequest request) {
+        if (!isValid(request)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return dispatchService.handleEmergency(request)
+                .map(result -> {
+                    if ("SUCCESS".equals(result.getStatus())) {
+                        return ResponseEntity.ok(result);
+                    } else {
+                        return ResponseEntity.status(404).body(result);
+                    }
+                });
+    }
+
+    /**
+     * Assigns ambulances to a burst of simultaneous emergencies in one go. Always 200; each result carries
+     * its own SUCCESS/FAILURE status, in request order.
+     */
+    @PostMapping("/emergencies")
+    public Mono<ResponseEntity<List<DispatchResult>>> handleEmergencies(@RequestBody List<EmergencyRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > properties.getBatch().getMaxEmergencies()
+                || !requests.stream().allMatch(this::isValid)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return dispatchService.handleEmergencies(requests)
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Called by hospital-management-service when hospitals change. Without a speciality every entry is dropped.
+     */
+    @PostMapping("/cache/hospitals/invalidate")
+    public ResponseEntity<Void> invalidateHospitalCache(@RequestParam(required = false) String speciality) {
+        if (speciality == null || speciality.isBlank()) {
+            hospitalCache.invalidateAll();
         } else {
-            return ResponseEntity.status(404).body(result);
+            hospitalCache.invalidate(speciality);
         }
+        return ResponseEntity.noContent().build();
+    }
+
+    private boolean isValid(EmergencyRequest request) {
+        return request != null && request.getLatitude() != null && request.getLongitude() != null
+                && request.getSpecialization() != null;
     }
 }
@@ -0,0 +1,64 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.Data;
+
+/**
+ * One entry of ambulance-service's change log. Fields that did not change are null.
+ */
+@Data
+public class AmbulanceChange {
+    private long sequence;
+    private Long ambulanceId;
+    private Double latitude;
+    private Double longitude;
+    private Boolean available;
+    private boolean removed;
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Long getAmbulanceId() {
+        return ambulanceId;
+    }
+
+    public void setAmbulanceId(Long ambulanceId) {
+        this.ambulanceId = ambulanceId;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public Boolean getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(Boolean available) {
+        this.available = available;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(boolean removed) {
+        this.removed = removed;
+    }
+}
@@ -0,0 +1,36 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AmbulanceChangeBatch {
+    private long cursor;
+    private List<AmbulanceChange> changes;
+    private boolean resyncRequired;
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    public List<AmbulanceChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<AmbulanceChange> changes) {
+        this.changes = changes;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public void setResyncRequired(boolean resyncRequired) {
+        this.resyncRequired = resyncRequired;
+    }
+}
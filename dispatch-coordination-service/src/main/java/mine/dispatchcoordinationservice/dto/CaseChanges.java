@@ -0,0 +1,18 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cases created or updated after a cursor, in change order, and the cursor to pass as {@code since} next time.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CaseChanges {
+    private long cursor;
+    private List<CaseSummary> items;
+}
@@ -0,0 +1,22 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional restrictions on a case listing, bound from the query string. Unset fields do not filter;
+ * {@code from} is inclusive and {@code to} exclusive, both on the creation time.
+ */
+@Data
+public class CaseFilter {
+    private String status;
+    private Integer ambulanceId;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+}
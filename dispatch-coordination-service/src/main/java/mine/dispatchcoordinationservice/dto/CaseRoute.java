@@ -0,0 +1,13 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CaseRoute {
+    private Integer caseId;
+    private String geometry;
+}
@@ -0,0 +1,25 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A case as listed and exported: the columns of the case row without its route, which is fetched per case
+ * from {@code GET /cases/{id}/route}.
+ */
+@Data
+public class CaseSummary {
+    private Integer id;
+    private Double latitude;
+    private Double longitude;
+    private String specialization;
+    private String status;
+    private Integer assignedAmbulanceId;
+    private Long assignedHospitalId;
+    private Double estimatedDuration;
+    private Double estimatedDistance;
+    private Double realDuration;
+    private LocalDateTime createdAt;
+    private Long changeSeq;
+}
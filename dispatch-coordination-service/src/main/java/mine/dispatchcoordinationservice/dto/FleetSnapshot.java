@@ -0,0 +1,27 @@
+package mine.dispatchcoordinationservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class FleetSnapshot {
+    private long cursor;
+    private List<Ambulance> ambulances;
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    public List<Ambulance> getAmbulances() {
+        return ambulances;
+    }
+
+    public void setAmbulances(List<Ambulance> ambulances) {
+        this.ambulances = ambulances;
+    }
+}
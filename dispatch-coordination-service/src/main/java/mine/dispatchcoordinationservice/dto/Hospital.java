@@ -1,5 +1,6 @@
 package mine.dispatchcoordinationservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import lombok.Data;
 
 import java.util.List;
@@ -8,8 +9,11 @@ import java.util.List;
 public class Hospital {
     private Long id;
     private String name;
+    // hospital-management-service calls it speciality
+    @JsonAlias("speciality")
     private String specialization;
     private List<Ambulance> ambulances;
+    private List<Integer> ambulanceIds;
 
     public Long getId() {
         return id;
@@ -42,4 +46,12 @@ public class Hospital {
     public void setAmbulances(List<Ambulance> ambulances) {
         this.ambulances = ambulances;
     }
-}
\ No newline at end of file
+
+    public List<Integer> getAmbulanceIds() {
+        return ambulanceIds;
+    }
+
+    public void setAmbulanceIds(List<Integer> ambulanceIds) {
+        this.ambulanceIds = ambulanceIds;
+    }
+}
@@ -0,0 +1,263 @@
+package mine.dispatchcoordinationservice.geo;
+
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform lat/lng grid over the available ambulances, stored in a {@link FleetTable} and kept current by the
+ * fleet replica's change stream one ambulance at a time. Nearest queries scan rings of cells
+ * outward from the emergency and stop as soon as no unscanned cell can hold anything closer than the
+ * current k-th result.
+ * <p>
+ * Each candidate first goes through an equirectangular distance estimate on the precomputed radians and
+ * cosines; only those that could still make the result get an exact haversine. Queries into a caller-owned
+ * {@link NeighborBuffer} allocate nothing. Queries share a read lock, updates take the write lock.
+ */
+@Component
+public class AmbulanceSpatialIndex {
+
+    // Headroom over the equirectangular estimate so it never prunes a candidate haversine would keep
+    private static final double PREFILTER_SLACK = 1.05;
+
+    private final double cellSizeDegrees;
+    private final StampedLock lock = new StampedLock();
+    private final FleetTable table = new FleetTable(1024);
+    private final LongIntHashMap cellsByKey = new LongIntHashMap(1024);
+    private long[] cellKeys = new long[256];
+    private int[][] cellMembers = new int[256][];
+    private int[] cellSizes = new int[256];
+    private int cellCount;
+
+    public AmbulanceSpatialIndex(DispatchProperties properties) {
+        this.cellSizeDegrees = properties.getIndex().getCellSizeDegrees();
+    }
+
+    public void upsert(int ambulanceId, double latitude, double longitude, boolean available) {
+        long cellKey = cellKey(row(latitude), column(longitude));
+        long stamp = lock.writeLock();
+        try {
+            int slot = table.slotOf(ambulanceId);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = table.allocate(ambulanceId);
+                addToCell(cellFor(cellKey), slot);
+            } else if (cellKeyOf(slot) != cellKey) {
+                removeFromCell(slot);
+                addToCell(cellFor(cellKey), slot);
+            }
+            table.available[slot] = available;
+            table.setPosition(slot, latitude, longitude);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void setAvailable(int ambulanceId, boolean available) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = table.slotOf(ambulanceId);
+            if (slot != LongIntHashMap.MISSING) {
+                table.available[slot] = available;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(int ambulanceId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = table.slotOf(ambulanceId);
+            if (slot != LongIntHashMap.MISSING) {
+                removeFromCell(slot);
+                table.release(slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Up to {@code k} available ambulances accepted by {@code filter} within {@code radiusMeters}, closest first.
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, double radiusMeters, IntPredicate filter) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        NeighborBuffer buffer = new NeighborBuffer(k);
+        nearest(latitude, longitude, k, radiusMeters, filter, buffer);
+        List<Neighbor> result = new ArrayList<>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            result.add(new Neighbor(buffer.ambulanceId(i), buffer.distanceMeters(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #nearest(double, double, int, double, IntPredicate)}, written into {@code out}.
+     *
+     * @return the number of neighbors found
+     */
+    public int nearest(double latitude, double longitude, int k, double radiusMeters, IntPredicate filter,
+                       NeighborBuffer out) {
+        out.reset(Math.max(k, 0));
+        if (k <= 0) {
+            return 0;
+        }
+        double latitudeRadians = Math.toRadians(latitude);
+        double longitudeRadians = Math.toRadians(longitude);
+        double cosLatitude = Math.cos(latitudeRadians);
+        long stamp = lock.readLock();
+        try {
+            int total = table.size();
+            int centerRow = row(latitude);
+            int centerColumn = column(longitude);
+            int seen = 0;
+            for (int ring = 0; seen < total; ring++) {
+                // Anything in this ring is at least ring - 1 whole cells away from the query point
+                double ringDistance = (ring - 1) * minCellMeters(latitude, ring);
+                if (ringDistance > radiusMeters || (out.isFull() && ringDistance > out.worstDistance())) {
+                    break;
+                }
+                if (ring == 0) {
+                    seen += scanCell(centerRow, centerColumn, latitudeRadians, longitudeRadians, cosLatitude, radiusMeters, filter, out);
+                    continue;
+                }
+                for (int column = centerColumn - ring; column <= centerColumn + ring; column++) {
+                    seen += scanCell(centerRow - ring, column,
+                            latitudeRadians, longitudeRadians, cosLatitude, radiusMeters, filter, out);
+                    seen += scanCell(centerRow + ring, column,
+                            latitudeRadians, longitudeRadians, cosLatitude, radiusMeters, filter, out);
+                }
+                for (int row = centerRow - ring + 1; row <= centerRow + ring - 1; row++) {
+                    seen += scanCell(row, centerColumn - ring,
+                            latitudeRadians, longitudeRadians, cosLatitude, radiusMeters, filter, out);
+                    seen += scanCell(row, centerColumn + ring,
+                            latitudeRadians, longitudeRadians, cosLatitude, radiusMeters, filter, out);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return out.size();
+    }
+
+    // Returns how many ambulances the cell holds, so the caller can stop once it has seen all of them
+    private int scanCell(int row, int column, double latitudeRadians, double longitudeRadians, double cosLatitude,
+                         double radiusMeters, IntPredicate filter, NeighborBuffer out) {
+        int cell = cellsByKey.get(cellKey(row, column));
+        if (cell == LongIntHashMap.MISSING) {
+            return 0;
+        }
+        int[] members = cellMembers[cell];
+        int count = cellSizes[cell];
+        FleetTable t = table;
+        for (int i = 0; i < count; i++) {
+            int slot = members[i];
+            if (!t.available[slot] || !filter.test(t.ambulanceIds[slot])) {
+                continue;
+            }
+            double bound = out.isFull() ? Math.min(radiusMeters, out.worstDistance()) : radiusMeters;
+            double boundRadians = bound / GeoUtils.EARTH_RADIUS_METERS * PREFILTER_SLACK;
+
+            // Equirectangular estimate, using the mean of the two precomputed cosines
+            double deltaLatitude = t.latitudeRadians[slot] - latitudeRadians;
+            double deltaLongitude = t.longitudeRadians[slot] - longitudeRadians;
+            if (deltaLongitude > Math.PI) {
+                deltaLongitude -= 2 * Math.PI;
+            } else if (deltaLongitude < -Math.PI) {
+                deltaLongitude += 2 * Math.PI;
+            }
+            double x = deltaLongitude * 0.5 * (t.cosLatitudes[slot] + cosLatitude);
+            if (x * x + deltaLatitude * deltaLatitude > boundRadians * boundRadians) {
+                continue;
+            }
+
+            // Exact haversine for the finalists
+            double sinLatitude = Math.sin(deltaLatitude / 2);
+            double sinLongitude = Math.sin(deltaLongitude / 2);
+            double a = sinLatitude * sinLatitude
+                    + cosLatitude * t.cosLatitudes[slot] * sinLongitude * sinLongitude;
+            double distance = 2 * GeoUtils.EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            if (distance <= bound && !(out.isFull() && distance >= out.worstDistance())) {
+                out.offer(t.ambulanceIds[slot], distance);
+            }
+        }
+        return count;
+    }
+
+    private int cellFor(long key) {
+        int cell = cellsByKey.get(key);
+        if (cell != LongIntHashMap.MISSING) {
+            return cell;
+        }
+        // Cells are never freed; their number is bounded by the area the fleet has covered
+        if (cellCount == cellMembers.length) {
+            cellKeys = Arrays.copyOf(cellKeys, cellCount << 1);
+            cellMembers = Arrays.copyOf(cellMembers, cellCount << 1);
+            cellSizes = Arrays.copyOf(cellSizes, cellCount << 1);
+        }
+        cell = cellCount++;
+        cellKeys[cell] = key;
+        cellMembers[cell] = new int[4];
+        cellsByKey.put(key, cell);
+        return cell;
+    }
+
+    private long cellKeyOf(int slot) {
+        return cellKeys[table.cells[slot]];
+    }
+
+    private void addToCell(int cell, int slot) {
+        int size = cellSizes[cell];
+        if (size == cellMembers[cell].length) {
+            cellMembers[cell] = Arrays.copyOf(cellMembers[cell], size << 1);
+        }
+        cellMembers[cell][size] = slot;
+        cellSizes[cell] = size + 1;
+        table.cells[slot] = cell;
+        table.cellPositions[slot] = size;
+    }
+
+    // Swap-remove: the cell's last member takes the removed slot's position
+    private void removeFromCell(int slot) {
+        int cell = table.cells[slot];
+        int position = table.cellPositions[slot];
+        int last = --cellSizes[cell];
+        int moved = cellMembers[cell][last];
+        cellMembers[cell][position] = moved;
+        table.cellPositions[moved] = position;
+    }
+
+    // Narrowest cell side in meters over the latitude band a ring covers (cells shrink east-west poleward)
+    private double minCellMeters(double latitude, int ring) {
+        double farthestLatitude = Math.min(89.0, Math.abs(latitude) + (ring + 1) * cellSizeDegrees);
+        return cellSizeDegrees * GeoUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(farthestLatitude));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellSizeDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / cellSizeDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
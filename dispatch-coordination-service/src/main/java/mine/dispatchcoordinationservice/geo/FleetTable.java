@@ -0,0 +1,94 @@
+package mine.dispatchcoordinationservice.geo;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays snapshot of the fleet: one slot per ambulance, every field in a primitive array indexed
+ * by slot. Radians and the cosine of the latitude are computed once per position update rather than per
+ * distance test. Slots of removed ambulances are reused. Not thread-safe; {@link AmbulanceSpatialIndex}
+ * guards it.
+ */
+final class FleetTable {
+
+    int[] ambulanceIds;
+    double[] latitudes;
+    double[] longitudes;
+    double[] latitudeRadians;
+    double[] longitudeRadians;
+    double[] cosLatitudes;
+    boolean[] available;
+    // Grid cell the slot is filed under, and its position in that cell's member array
+    int[] cells;
+    int[] cellPositions;
+
+    private final LongIntHashMap slotsById;
+    private int highWater;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    FleetTable(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ambulanceIds = new int[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        latitudeRadians = new double[capacity];
+        longitudeRadians = new double[capacity];
+        cosLatitudes = new double[capacity];
+        available = new boolean[capacity];
+        cells = new int[capacity];
+        cellPositions = new int[capacity];
+        slotsById = new LongIntHashMap(capacity);
+    }
+
+    int slotOf(int ambulanceId) {
+        return slotsById.get(ambulanceId);
+    }
+
+    int size() {
+        return slotsById.size();
+    }
+
+    int allocate(int ambulanceId) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == ambulanceIds.length) {
+                grow(ambulanceIds.length << 1);
+            }
+            slot = highWater++;
+        }
+        ambulanceIds[slot] = ambulanceId;
+        slotsById.put(ambulanceId, slot);
+        return slot;
+    }
+
+    void setPosition(int slot, double latitude, double longitude) {
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        latitudeRadians[slot] = Math.toRadians(latitude);
+        longitudeRadians[slot] = Math.toRadians(longitude);
+        cosLatitudes[slot] = Math.cos(latitudeRadians[slot]);
+    }
+
+    void release(int slot) {
+        slotsById.remove(ambulanceIds[slot]);
+        available[slot] = false;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow(int capacity) {
+        ambulanceIds = Arrays.copyOf(ambulanceIds, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        latitudeRadians = Arrays.copyOf(latitudeRadians, capacity);
+        longitudeRadians = Arrays.copyOf(longitudeRadians, capacity);
+        cosLatitudes = Arrays.copyOf(cosLatitudes, capacity);
+        available = Arrays.copyOf(available, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+        cellPositions = Arrays.copyOf(cellPositions, capacity);
+    }
+}
@@ -0,0 +1,22 @@
+package mine.dispatchcoordinationservice.geo;
+
+/**
+ * One result of a nearest-ambulance query.
+ */
+public class Neighbor {
+    private final int ambulanceId;
+    private final double distanceMeters;
+
+    public Neighbor(int ambulanceId, double distanceMeters) {
+        this.ambulanceId = ambulanceId;
+        this.distanceMeters = distanceMeters;
+    }
+
+    public int getAmbulanceId() {
+        return ambulanceId;
+    }
+
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+}
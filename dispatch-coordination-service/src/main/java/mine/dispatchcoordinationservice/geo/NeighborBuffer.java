@@ -0,0 +1,61 @@
+package mine.dispatchcoordinationservice.geo;
+
+import java.util.Arrays;
+
+/**
+ * Reusable result of a nearest-ambulance query, closest first. Owned by one caller at a time; reusing the
+ * same buffer across queries keeps the query path allocation-free.
+ */
+public final class NeighborBuffer {
+
+    private int[] ambulanceIds;
+    private double[] distances;
+    private int size;
+    private int limit;
+
+    public NeighborBuffer(int capacity) {
+        ambulanceIds = new int[capacity];
+        distances = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int ambulanceId(int i) {
+        return ambulanceIds[i];
+    }
+
+    public double distanceMeters(int i) {
+        return distances[i];
+    }
+
+    void reset(int k) {
+        if (k > ambulanceIds.length) {
+            ambulanceIds = Arrays.copyOf(ambulanceIds, k);
+            distances = Arrays.copyOf(distances, k);
+        }
+        size = 0;
+        limit = k;
+    }
+
+    boolean isFull() {
+        return size == limit;
+    }
+
+    double worstDistance() {
+        return distances[size - 1];
+    }
+
+    // Insertion into the sorted prefix; k is small, so this beats a heap and needs no node objects
+    void offer(int ambulanceId, double distance) {
+        int i = isFull() ? size - 1 : size++;
+        while (i > 0 && distances[i - 1] > distance) {
+            ambulanceIds[i] = ambulanceIds[i - 1];
+            distances[i] = distances[i - 1];
+            i--;
+        }
+        ambulanceIds[i] = ambulanceId;
+        distances[i] = distance;
+    }
+}
@@ -0,0 +1,101 @@
+package mine.dispatchcoordinationservice.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Latency of each dispatch step ({@code dispatch.step}, tagged by step) and of the whole dispatch
+ * ({@code dispatch.emergency}, tagged by outcome), with p50/p95/p99 and histogram buckets, plus
+ * {@code dispatch.failures} counted per failure reason.
+ */
+@Component
+public class DispatchMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    public enum Step {
+        HOSPITAL_FETCH("hospital_fetch"),
+        AMBULANCE_FANOUT("ambulance_fanout"),
+        SELECTION("selection"),
+        ROUTE("route"),
+        AVAILABILITY_UPDATE("availability_update"),
+        CASE_SAVE("case_save"),
+        RESULT_BUILD("result_build");
+
+        private final String tag;
+
+        Step(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Step, Timer> stepTimers = new EnumMap<>(Step.class);
+    private final Map<String, Counter> failureCounters = new ConcurrentHashMap<>();
+
+    public DispatchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Step step : Step.values()) {
+            stepTimers.put(step, Timer.builder("dispatch.step")
+                    .description("Latency of one step of the dispatch pipeline")
+                    .tag("step", step.tag)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Times {@code mono} from subscription until it completes, fails or is cancelled.
+     */
+    public <T> Mono<T> time(Step step, Mono<T> mono) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            AtomicBoolean stopped = new AtomicBoolean();
+            Runnable stop = () -> {
+                if (stopped.compareAndSet(false, true)) {
+                    sample.stop(stepTimers.get(step));
+                }
+            };
+            // doOnTerminate fires before the value moves on, so the step is recorded by the time the result is seen
+            return mono.doOnTerminate(stop).doOnCancel(stop);
+        });
+    }
+
+    public <T> T record(Step step, Supplier<T> supplier) {
+        return stepTimers.get(step).record(supplier);
+    }
+
+    public Timer.Sample startDispatch() {
+        return Timer.start(registry);
+    }
+
+    public void stopDispatch(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder("dispatch.emergency")
+                .description("End-to-end latency of one emergency dispatch")
+                .tag("outcome", outcome)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * @param reason one of a fixed set of reason codes, never a free-form message
+     */
+    public void recordFailure(String reason) {
+        failureCounters.computeIfAbsent(reason, key -> Counter.builder("dispatch.failures")
+                        .description("Dispatches that ended in a FAILURE result")
+                        .tag("reason", key)
+                        .register(registry))
+                .increment();
+    }
+}
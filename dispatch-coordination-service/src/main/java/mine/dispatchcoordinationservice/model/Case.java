@@ -1,5 +1,6 @@
 package mine.dispatchcoordinationservice.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -7,7 +8,13 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name = "cases")
+// Each listing filter leads its own index, then the (created_at, id) keyset the listings page and stream on
+@Table(name = "cases", indexes = {
+        @Index(name = "idx_cases_created_at", columnList = "created_at, id"),
+        @Index(name = "idx_cases_status_created_at", columnList = "status, created_at, id"),
+        @Index(name = "idx_cases_ambulance_created_at", columnList = "ambulance_id, created_at, id"),
+        @Index(name = "idx_cases_change_seq", columnList = "change_seq")
+})
 public class Case {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -38,7 +45,14 @@ public class Case {
     @Column(name = "estimated_distance", nullable = false)
     private Double estimatedDistance;
 
-    @Column(name = "route_geometry", nullable = false)
+    // Content hash of the route in route_geometries; the case row itself stays narrow
+    @Column(name = "route_hash", length = 64)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String routeHash;
+
+    // Accepted on writes and stored by hash; read back through GET /cases/{id}/route
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String routeGeometry;
 
     @Column(name = "real_duration")
@@ -46,4 +60,9 @@ public class Case {
 
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
+
+    // Stamped on every write from ChangeSequencer; GET /cases/changes?since= reads past it
+    @Column(name = "change_seq")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long changeSeq;
 }
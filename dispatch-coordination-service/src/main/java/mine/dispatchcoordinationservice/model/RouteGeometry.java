@@ -0,0 +1,48 @@
+package mine.dispatchcoordinationservice.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * A route polyline, deflate-compressed and keyed by the SHA-256 of its text, so every case that drove the
+ * same route shares one row. Rows are immutable: same hash, same content.
+ */
+@Entity
+@Table(name = "route_geometries")
+public class RouteGeometry implements Persistable<String> {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+
+    protected RouteGeometry() {
+    }
+
+    public RouteGeometry(String hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String getId() {
+        return hash;
+    }
+
+    // Only ever saved after checking it is absent, so persist straight away instead of merging
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package mine.dispatchcoordinationservice.repository;
+
+import mine.dispatchcoordinationservice.dto.CaseSummary;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Position in the case history, which is ordered by creation time and then id. Travels in the query string
+ * as {@code <createdAt>,<id>}, e.g. {@code 2024-03-01T08:15:30,1042}.
+ */
+public final class CaseCursor {
+
+    private final LocalDateTime createdAt;
+    private final int id;
+
+    public CaseCursor(LocalDateTime createdAt, int id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static CaseCursor of(CaseSummary last) {
+        return new CaseCursor(last.getCreatedAt(), last.getId());
+    }
+
+    /**
+     * Cursor after a row read with {@link CaseFields}, which always carry the id and creation time.
+     */
+    public static CaseCursor of(Map<String, Object> last) {
+        return new CaseCursor((LocalDateTime) last.get(CaseFields.CREATED_AT), (Integer) last.get(CaseFields.ID));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token is not one this class wrote
+     */
+    public static CaseCursor parse(String token) {
+        int comma = token.lastIndexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("Malformed case cursor: " + token);
+        }
+        return new CaseCursor(LocalDateTime.parse(token.substring(0, comma)), Integer.parseInt(token.substring(comma + 1)));
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return createdAt + "," + id;
+    }
+}
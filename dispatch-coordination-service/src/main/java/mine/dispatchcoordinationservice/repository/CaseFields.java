@@ -0,0 +1,62 @@
+package mine.dispatchcoordinationservice.repository;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The case summary properties a client can ask for with {@code fields=}, and the columns they are read from.
+ * The id and creation time are always returned, since together they are the cursor the next page starts after.
+ */
+public final class CaseFields {
+
+    public static final String ID = "id";
+    public static final String CREATED_AT = "createdAt";
+
+    private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put(ID, "id");
+        COLUMNS.put(CREATED_AT, "created_at");
+        COLUMNS.put("latitude", "latitude");
+        COLUMNS.put("longitude", "longitude");
+        COLUMNS.put("specialization", "specialization");
+        COLUMNS.put("status", "status");
+        COLUMNS.put("assignedAmbulanceId", "ambulance_id");
+        COLUMNS.put("assignedHospitalId", "hospital_id");
+        COLUMNS.put("estimatedDuration", "estimated_duration");
+        COLUMNS.put("estimatedDistance", "estimated_distance");
+        COLUMNS.put("realDuration", "real_duration");
+        COLUMNS.put("changeSeq", "change_seq");
+    }
+
+    private CaseFields() {
+    }
+
+    /**
+     * Parses a comma-separated field list into the fields to select, id and creation time first.
+     *
+     * @throws IllegalArgumentException on a field case summaries do not have
+     */
+    public static Set<String> parse(String fields) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add(ID);
+        selected.add(CREATED_AT);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!COLUMNS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown case field: " + name);
+            }
+            selected.add(name);
+        }
+        return selected;
+    }
+
+    static String column(String field) {
+        return COLUMNS.get(field);
+    }
+}
@@ -0,0 +1,152 @@
+package mine.dispatchcoordinationservice.repository;
+
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the case history in {@code (created_at, id)} order, either one keyset page at a time or row by row off
+ * a JDBC cursor for exports. Each filter has a composite index on {@code cases} ending in that order, so a page
+ * seeks straight to the cursor and reads only the rows it returns, however large the table grows.
+ * <p>
+ * Streamed rows never enter a persistence context and are not collected, so memory stays flat for any export.
+ * With MySQL this needs {@code useCursorFetch=true} on the connection URL; otherwise the driver still buffers
+ * the whole result. Only summary columns are selected; routes live in their own table.
+ */
+@Repository
+public class CaseHistoryReader {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String SUMMARY_COLUMNS = "id, latitude, longitude, specialization, status, ambulance_id, "
+            + "hospital_id, estimated_duration, estimated_distance, real_duration, created_at, change_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+
+    public CaseHistoryReader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Own template so the fetch size applies to streamed reads only
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Up to {@code limit} matching cases after {@code after} (null for the start of the history).
+     */
+    public List<CaseSummary> page(CaseFilter filter, CaseCursor after, int limit) {
+        return page(SUMMARY_COLUMNS, filter, after, limit, (resultSet, row) -> map(resultSet));
+    }
+
+    /**
+     * Like {@link #page}, selecting only the given {@link CaseFields} into a map per case.
+     */
+    public List<Map<String, Object>> page(Set<String> fields, CaseFilter filter, CaseCursor after, int limit) {
+        return page(columns(fields), filter, after, limit, (resultSet, row) -> map(resultSet, fields));
+    }
+
+    /**
+     * Hands every matching case after {@code after} to {@code action}, in order, as rows arrive.
+     */
+    public void forEach(CaseFilter filter, CaseCursor after, Consumer<CaseSummary> action) {
+        forEach(SUMMARY_COLUMNS, filter, after, resultSet -> action.accept(map(resultSet)));
+    }
+
+    /**
+     * Like {@link #forEach}, selecting only the given {@link CaseFields} into a map per case.
+     */
+    public void forEach(Set<String> fields, CaseFilter filter, CaseCursor after, Consumer<Map<String, Object>> action) {
+        forEach(columns(fields), filter, after, resultSet -> action.accept(map(resultSet, fields)));
+    }
+
+    /**
+     * Up to {@code limit} cases created or updated after change {@code since}, in change order. Served by the
+     * change_seq index.
+     */
+    public List<CaseSummary> changedSince(long since, int limit) {
+        return jdbcTemplate.query("SELECT " + SUMMARY_COLUMNS + " FROM cases WHERE change_seq > ? ORDER BY change_seq LIMIT ?",
+                (resultSet, row) -> map(resultSet), since, limit);
+    }
+
+    private <T> List<T> page(String columns, CaseFilter filter, CaseCursor after, int limit, RowMapper<T> mapper) {
+        List<Object> args = new ArrayList<>();
+        String sql = query(columns, filter, after, args) + " LIMIT ?";
+        args.add(limit);
+        return jdbcTemplate.query(sql, mapper, args.toArray());
+    }
+
+    private void forEach(String columns, CaseFilter filter, CaseCursor after, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        cursorTemplate.query(query(columns, filter, after, args), handler, args.toArray());
+    }
+
+    private static String columns(Set<String> fields) {
+        return fields.stream().map(CaseFields::column).collect(Collectors.joining(", "));
+    }
+
+    private static String query(String columns, CaseFilter filter, CaseCursor after, List<Object> args) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM cases WHERE 1 = 1");
+        if (filter.getStatus() != null) {
+            sql.append(" AND status = ?");
+            args.add(filter.getStatus());
+        }
+        if (filter.getAmbulanceId() != null) {
+            sql.append(" AND ambulance_id = ?");
+            args.add(filter.getAmbulanceId());
+        }
+        if (filter.getFrom() != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND created_at < ?");
+            args.add(filter.getTo());
+        }
+        if (after != null) {
+            // Row comparison, which MySQL turns into a range scan on the index
+            sql.append(" AND (created_at, id) > (?, ?)");
+            args.add(after.getCreatedAt());
+            args.add(after.getId());
+        }
+        return sql.append(" ORDER BY created_at, id").toString();
+    }
+
+    private static CaseSummary map(ResultSet resultSet) throws SQLException {
+        CaseSummary mapped = new CaseSummary();
+        mapped.setId(resultSet.getInt("id"));
+        mapped.setLatitude(resultSet.getDouble("latitude"));
+        mapped.setLongitude(resultSet.getDouble("longitude"));
+        mapped.setSpecialization(resultSet.getString("specialization"));
+        mapped.setStatus(resultSet.getString("status"));
+        mapped.setAssignedAmbulanceId(resultSet.getObject("ambulance_id", Integer.class));
+        mapped.setAssignedHospitalId(resultSet.getObject("hospital_id", Long.class));
+        mapped.setEstimatedDuration(resultSet.getObject("estimated_duration", Double.class));
+        mapped.setEstimatedDistance(resultSet.getObject("estimated_distance", Double.class));
+        mapped.setRealDuration(resultSet.getObject("real_duration", Double.class));
+        mapped.setCreatedAt(resultSet.getObject("created_at", LocalDateTime.class));
+        mapped.setChangeSeq(resultSet.getObject("change_seq", Long.class));
+        return mapped;
+    }
+
+    private static Map<String, Object> map(ResultSet resultSet, Set<String> fields) throws SQLException {
+        Map<String, Object> mapped = new LinkedHashMap<>();
+        for (String field : fields) {
+            String column = CaseFields.column(field);
+            // Read as LocalDateTime so it serialises like the entity's, not as a java.sql.Timestamp
+            mapped.put(field, field.equals(CaseFields.CREATED_AT)
+                    ? resultSet.getObject(column, LocalDateTime.class)
+                    : resultSet.getObject(column));
+        }
+        return mapped;
+    }
+}
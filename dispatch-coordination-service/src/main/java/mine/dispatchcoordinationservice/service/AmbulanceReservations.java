@@ -0,0 +1,30 @@
+package mine.dispatchcoordinationservice.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ambulances this instance is in the middle of reserving. A claim is taken before the remote reserve call,
+ * so concurrent dispatches in the same instance move straight on to their next candidate instead of racing
+ * for the same unit. The compare-and-set in ambulance-service is what guards across instances.
+ */
+@Component
+public class AmbulanceReservations {
+
+    // ConcurrentHashMap locks per bin, so claims on different ambulances never contend on one lock
+    private final Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+
+    public boolean tryClaim(int ambulanceId) {
+        return claimed.add(ambulanceId);
+    }
+
+    public void release(int ambulanceId) {
+        claimed.remove(ambulanceId);
+    }
+
+    public boolean isClaimed(int ambulanceId) {
+        return claimed.contains(ambulanceId);
+    }
+}
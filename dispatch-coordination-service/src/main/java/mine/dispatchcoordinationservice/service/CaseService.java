@@ -1,34 +1,132 @@
 package mine.dispatchcoordinationservice.service;
 
+import mine.dispatchcoordinationservice.dto.CaseChanges;
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
 import mine.dispatchcoordinationservice.model.Case;
+import mine.dispatchcoordinationservice.repository.CaseCursor;
+import mine.dispatchcoordinationservice.repository.CaseHistoryReader;
 import mine.dispatchcoordinationservice.repository.CaseRepository;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class CaseService {
 
     private final CaseRepository caseRepository;
+    private final CaseHistoryReader historyReader;
+    private final RouteGeometryStore routeStore;
+    private final ChangeSequencer sequencer;
+    private final TransactionTemplate transactionTemplate;
 
-    public CaseService(CaseRepository caseRepository) {
+    public CaseService(CaseRepository caseRepository, CaseHistoryReader historyReader,
+                       RouteGeometryStore routeStore, ChangeSequencer sequencer,
+                       PlatformTransactionManager transactionManager) {
         this.caseRepository = caseRepository;
+        this.historyReader = historyReader;
+        this.routeStore = routeStore;
+        this.sequencer = sequencer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public Case createCase(Case newCase) {
-        return caseRepository.save(newCase);
+        return save(newCase);
     }
 
     public Optional<Case> getCaseById(Integer id) {
         return caseRepository.findById(id);
     }
 
-    public List<Case> getAllCases() {
-        return caseRepository.findAll();
+    /**
+     * Up to {@code limit} matching cases after {@code after} (null for the first page), oldest first.
+     */
+    public List<CaseSummary> getCasePage(CaseFilter filter, CaseCursor after, int limit) {
+        return historyReader.page(filter, after, limit);
+    }
+
+    /**
+     * Hands the matching cases to {@code action} one at a time, oldest first, as they are read from the database.
+     */
+    public void streamCases(CaseFilter filter, CaseCursor after, Consumer<CaseSummary> action) {
+        historyReader.forEach(filter, after, action);
+    }
+
+    /**
+     * Like {@link #getCasePage}, with only the requested fields of each case.
+     */
+    public List<Map<String, Object>> getCaseFields(Set<String> fields, CaseFilter filter, CaseCursor after, int limit) {
+        return historyReader.page(fields, filter, after, limit);
+    }
+
+    /**
+     * Like {@link #streamCases}, with only the requested fields of each case.
+     */
+    public void streamCaseFields(Set<String> fields, CaseFilter filter, CaseCursor after,
+                                 Consumer<Map<String, Object>> action) {
+        historyReader.forEach(fields, filter, after, action);
+    }
+
+    /**
+     * The route polyline stored under {@code routeHash}.
+     */
+    public Optional<String> getRoute(String routeHash) {
+        return routeStore.load(routeHash);
     }
 
     public Case updateCase(Case updatedCase) {
-        return caseRepository.save(updatedCase);
+        return save(updatedCase);
+    }
+
+    /**
+     * Up to {@code limit} cases created or updated after change {@code since}, and the cursor to continue from:
+     * the last one's change number, or {@code since} again when nothing changed.
+     */
+    public CaseChanges getChangesSince(long since, int limit) {
+        List<CaseSummary> changed = historyReader.changedSince(since, limit);
+        long cursor = changed.isEmpty() ? since : changed.get(changed.size() - 1).getChangeSeq();
+        return new CaseChanges(cursor, changed);
+    }
+
+    /**
+     * The change number of the last case write, from any instance.
+     */
+    public long getLatestChange() {
+        return sequencer.currentCaseChange();
+    }
+
+    /**
+     * Stores the route, writes the case and stamps the change number in one transaction, so a case is never
+     * committed pointing at a route that is not. A route inserted concurrently by another save rolls the
+     * transaction back; the retry finds it stored.
+     */
+    private Case save(Case item) {
+        try {
+            return saveInTransaction(item);
+        } catch (DataIntegrityViolationException e) {
+            if (item.getRouteGeometry() == null) {
+                throw e;
+            }
+            return saveInTransaction(item);
+        }
+    }
+
+    private Case saveInTransaction(Case item) {
+        return transactionTemplate.execute(status -> {
+            if (item.getRouteGeometry() != null) {
+                item.setRouteHash(routeStore.store(item.getRouteGeometry()));
+            }
+            Case saved = caseRepository.save(item);
+            // Taken last, so the sequence row stays locked only for the stamp and the commit
+            saved.setChangeSeq(sequencer.nextCaseChange());
+            return saved;
+        });
     }
 }
@@ -0,0 +1,58 @@
+package mine.dispatchcoordinationservice.service;
+
+import mine.dispatchcoordinationservice.model.ChangeSequence;
+import mine.dispatchcoordinationservice.repository.ChangeSequenceRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Hands out the change sequence numbers stamped on cases as they are written.
+ * <p>
+ * Numbers come from one row that stays locked until the writing transaction commits, so they become visible
+ * in order and a {@code since} cursor never skips a slow write. The price is that case writes on all
+ * instances queue on that row. {@link CaseService} takes the number as its last statement, which keeps the
+ * hold to the stamp and the commit. Block-reserved ranges or an AUTO_INCREMENT log would remove the queue but
+ * commit out of order, so readers would then need a low-water mark of open writes.
+ */
+@Service
+public class ChangeSequencer implements InitializingBean {
+
+    static final String CASES = "cases";
+
+    private final ChangeSequenceRepository repository;
+
+    public ChangeSequencer(ChangeSequenceRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!repository.existsById(CASES)) {
+            try {
+                repository.save(new ChangeSequence(CASES));
+            } catch (DataIntegrityViolationException e) {
+                // Created by another instance starting at the same time
+            }
+        }
+    }
+
+    /**
+     * Takes the next case change number; must run in the transaction that writes the case.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long nextCaseChange() {
+        repository.increment(CASES);
+        return repository.currentValue(CASES);
+    }
+
+    /**
+     * The last case change number handed out. Committed changes are never above it, so a reader that takes it
+     * before reading cases has a validator that moves whenever any instance writes one.
+     */
+    public long currentCaseChange() {
+        return repository.currentValue(CASES);
+    }
+}
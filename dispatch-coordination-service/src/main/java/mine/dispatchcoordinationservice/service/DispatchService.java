@@ -1,16 +1,28 @@
 package mine.dispatchcoordinationservice.service;
 
+import mine.dispatchcoordinationservice.assignment.AssignmentSolver;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
 import mine.dispatchcoordinationservice.dto.*;
+import mine.dispatchcoordinationservice.geo.AmbulanceSpatialIndex;
+import mine.dispatchcoordinationservice.geo.GeoUtils;
+import mine.dispatchcoordinationservice.geo.NeighborBuffer;
+import mine.dispatchcoordinationservice.metrics.DispatchMetrics;
+import mine.dispatchcoordinationservice.metrics.DispatchMetrics.Step;
 import mine.dispatchcoordinationservice.model.Case;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Service
 public class DispatchService {
@@ -21,144 +33,487 @@ public class DispatchService {
     private static final String ROUTE_OPTIMIZATION_SERVICE_URL = "http://route-optimization-service";
     private static final String AMBULANCE_SERVICE_URL = "http://ambulance-service";
 
+    // Selection runs start to finish on one thread, so each thread can reuse one result buffer
+    private static final ThreadLocal<NeighborBuffer> NEAREST = ThreadLocal.withInitial(() -> new NeighborBuffer(8));
+
     private final WebClient webClient;
     private final CaseService caseService;
+    private final DispatchProperties properties;
+    private final AmbulanceSpatialIndex ambulanceIndex;
+    private final AmbulanceReservations reservations;
+    private final DispatchMetrics metrics;
+    private final HospitalCache hospitalCache;
+    private final FleetReplica fleetReplica;
 
-    public DispatchService(WebClient.Builder webClientBuilder, CaseService caseService) {
+    public DispatchService(WebClient.Builder webClientBuilder, CaseService caseService, DispatchProperties properties,
+                           AmbulanceSpatialIndex ambulanceIndex, AmbulanceReservations reservations,
+                           DispatchMetrics metrics, HospitalCache hospitalCache, FleetReplica fleetReplica) {
         this.webClient = webClientBuilder.build();
         this.caseService = caseService;
+        this.properties = properties;
+        this.ambulanceIndex = ambulanceIndex;
+        this.reservations = reservations;
+        this.metrics = metrics;
+        this.hospitalCache = hospitalCache;
+        this.fleetReplica = fleetReplica;
     }
 
-    public DispatchResult handleEmergency(EmergencyRequest request) {
-        // Step 1: Fetch hospitals by specialization
-        List<Hospital> hospitals = fetchHospitalsBySpeciality(request.getSpecialization());
-        if (hospitals.isEmpty()) {
-            return createFailureResult("No hospital with the required specialization found.");
-        }
+    /**
+     * Runs the dispatch pipeline without blocking the calling thread. Every remote step is bounded by its
+     * own timeout from {@link DispatchProperties.Timeouts}; a step that fails or times out ends the pipeline
+     * with a FAILURE result, exactly as the blocking version did.
+     */
+    public Mono<DispatchResult> handleEmergency(EmergencyRequest request) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = metrics.startDispatch();
+            // Step 1: Fetch hospitals by specialization
+            return fetchHospitalsBySpeciality(request.getSpecialization())
+                    .filter(hospitals -> !hospitals.isEmpty())
+                    .switchIfEmpty(fail(FailureReason.NO_HOSPITAL))
+                    // Step 2: Fetch available ambulances associated with hospitals
+                    .flatMap(hospitals -> getAvailableAmbulances(request.getSpecialization(), hospitals))
+                    .filter(pairs -> !pairs.isEmpty())
+                    .switchIfEmpty(fail(FailureReason.NO_AMBULANCE))
+                    // Step 3: Pick the ambulance, by straight-line distance or by driving ETA
+                    .flatMap(pairs -> metrics.time(Step.SELECTION, Mono.fromSupplier(() -> rankByDistance(pairs, request))
+                            .filter(ranked -> !ranked.isEmpty())
+                            .switchIfEmpty(fail(FailureReason.NO_CANDIDATE))
+                            .flatMap(ranked -> orderCandidates(ranked, request))))
+                    .flatMap(candidates -> dispatchTo(candidates, request))
+                    .onErrorResume(DispatchFailure.class, failure -> Mono.just(createFailureResult(failure.getReason())))
+                    .doOnNext(result -> metrics.stopDispatch(sample, result.getStatus().toLowerCase(Locale.ROOT)));
+        });
+    }
+
+    /**
+     * Dispatches simultaneous emergencies together. Candidates are gathered once per specialization, every
+     * emergency is costed against every candidate by straight-line distance (pairs with the wrong
+     * specialization are infeasible, pairs beyond the selection radius are used only when nothing closer is
+     * left), and the assignment minimising total distance is solved before the per-emergency route,
+     * availability and case steps run concurrently. An emergency whose assigned ambulance is taken meanwhile
+     * moves on to its next-best unassigned ambulances, as a single dispatch would. Each emergency is timed
+     * and counted like a single dispatch. Results are in request order.
+     */
+    public Mono<List<DispatchResult>> handleEmergencies(List<EmergencyRequest> requests) {
+        Set<String> specializations = new LinkedHashSet<>();
+        requests.forEach(request -> specializations.add(request.getSpecialization()));
+
+        return Mono.defer(() -> {
+            Timer.Sample sample = metrics.startDispatch();
+            return gatherAndAssign(requests, specializations)
+                    .doOnNext(results -> results.forEach(result ->
+                            metrics.stopDispatch(sample, result.getStatus().toLowerCase(Locale.ROOT))));
+        });
+    }
+
+    private Mono<List<DispatchResult>> gatherAndAssign(List<EmergencyRequest> requests, Set<String> specializations) {
+        return Flux.fromIterable(specializations)
+                .flatMap(speciality -> fetchCandidates(speciality)
+                        .map(pairs -> Map.entry(speciality, pairs)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMap(candidatesBySpeciality -> {
+                    List<AmbulanceHospitalPair> ambulances = new ArrayList<>();
+                    Map<String, Set<Integer>> idsBySpeciality = new HashMap<>();
+                    Map<Integer, AmbulanceHospitalPair> seen = new LinkedHashMap<>();
+                    candidatesBySpeciality.forEach((speciality, pairs) -> {
+                        Map<Integer, AmbulanceHospitalPair> indexed = byAmbulanceId(pairs);
+                        idsBySpeciality.put(speciality, indexed.keySet());
+                        indexed.forEach(seen::putIfAbsent);
+                    });
+                    ambulances.addAll(seen.values());
+
+                    double[][] cost = costMatrix(requests, ambulances, idsBySpeciality);
+                    int[] assignment = metrics.record(Step.SELECTION,
+                            () -> AssignmentSolver.solve(cost, properties.getBatch().getSolverBudget()));
+
+                    return Flux.range(0, requests.size())
+                            .flatMapSequential(i -> assignment[i] < 0
+                                    ? Mono.just(createFailureResult(FailureReason.UNASSIGNED))
+                                    : dispatchTo(fallbackOrder(i, assignment, cost, ambulances), requests.get(i))
+                                            .onErrorResume(DispatchFailure.class,
+                                                    failure -> Mono.just(createFailureResult(failure.getReason()))))
+                            .collectList();
+                });
+    }
 
-        // Step 2: Fetch available ambulances associated with hospitals
-        List<AmbulanceHospitalPair> ambulanceHospitalPairs = getAvailableAmbulances(hospitals);
-        if (ambulanceHospitalPairs.isEmpty()) {
-            return createFailureResult("No available ambulances found for the required specialization.");
+    /**
+     * The ambulance assigned to emergency {@code row}, then the feasible ambulances no other emergency was
+     * given, cheapest first, up to the selection's candidate count.
+     */
+    private List<SelectedAmbulance> fallbackOrder(int row, int[] assignment, double[][] cost,
+                                                  List<AmbulanceHospitalPair> ambulances) {
+        boolean[] taken = new boolean[ambulances.size()];
+        for (int column : assignment) {
+            if (column >= 0) {
+                taken[column] = true;
+            }
         }
+        List<Integer> spare = new ArrayList<>();
+        for (int column = 0; column < ambulances.size(); column++) {
+            if (!taken[column] && cost[row][column] < AssignmentSolver.INFEASIBLE) {
+                spare.add(column);
+            }
+        }
+        spare.sort(Comparator.comparingDouble(column -> cost[row][column]));
 
-        // Step 3: Find the nearest ambulance
-        AmbulanceHospitalPair selectedPair = findNearestAmbulance(ambulanceHospitalPairs, request);
-        if (selectedPair == null) {
-            return createFailureResult("No suitable ambulance found.");
+        List<SelectedAmbulance> order = new ArrayList<>();
+        order.add(new SelectedAmbulance(ambulances.get(assignment[row]), null));
+        for (int i = 0; i < spare.size() && order.size() < properties.getSelection().getCandidates(); i++) {
+            order.add(new SelectedAmbulance(ambulances.get(spare.get(i)), null));
         }
+        return order;
+    }
 
-        // Step 4: Calculate route
-        RouteResponse routeResponse = fetchRoute(selectedPair.getAmbulance(), request);
-        if (!"SUCCESS".equals(routeResponse.getStatus())) {
-            return createFailureResult("Route calculation failed.");
+    private double[][] costMatrix(List<EmergencyRequest> requests, List<AmbulanceHospitalPair> ambulances,
+                                  Map<String, Set<Integer>> idsBySpeciality) {
+        double radius = properties.getSelection().getRadiusMeters();
+        // More than any set of in-radius pairs can add up to, so the solver reaches outside the radius only
+        // for an emergency that would otherwise go unassigned
+        double outsideRadius = radius * (requests.size() + 1);
+        double[][] cost = new double[requests.size()][ambulances.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            EmergencyRequest request = requests.get(i);
+            Set<Integer> compatible = idsBySpeciality.getOrDefault(request.getSpecialization(), Collections.emptySet());
+            for (int j = 0; j < ambulances.size(); j++) {
+                Ambulance ambulance = ambulances.get(j).getAmbulance();
+                double distance = GeoUtils.haversineMeters(request.getLatitude(), request.getLongitude(),
+                        ambulance.getLatitude(), ambulance.getLongitude());
+                if (!compatible.contains(ambulance.getId())) {
+                    cost[i][j] = AssignmentSolver.INFEASIBLE;
+                } else {
+                    cost[i][j] = distance <= radius ? distance : distance + outsideRadius;
+                }
+            }
         }
+        return cost;
+    }
+
+    private Mono<List<AmbulanceHospitalPair>> fetchCandidates(String speciality) {
+        return fetchHospitalsBySpeciality(speciality)
+                .flatMap(hospitals -> hospitals.isEmpty()
+                        ? Mono.just(Collections.<AmbulanceHospitalPair>emptyList())
+                        : getAvailableAmbulances(speciality, hospitals));
+    }
 
-        // Step 5: Mark ambulance as unavailable
-        boolean isUpdated = updateAmbulanceAvailability(selectedPair.getAmbulance().getId(), false);
-        if (!isUpdated) {
-            return createFailureResult("Failed to update ambulance availability.");
+    /**
+     * Reserves the first candidate still free, then routes and records the case. Anything that fails or is
+     * cancelled after the reservation hands the ambulance back.
+     */
+    private Mono<DispatchResult> dispatchTo(List<SelectedAmbulance> candidates, EmergencyRequest request) {
+        // Step 4: Reserve an ambulance, moving down the candidates on conflict
+        return reserveFirstAvailable(candidates, 0)
+                .flatMap(selected -> {
+                    AmbulanceHospitalPair selectedPair = selected.getPair();
+                    Integer ambulanceId = selectedPair.getAmbulance().getId();
+                    // Step 5: Calculate route, unless selection already fetched it
+                    Mono<RouteResponse> route = selected.getRoute() != null
+                            ? Mono.just(selected.getRoute())
+                            : fetchRoute(selectedPair.getAmbulance(), request);
+                    return route
+                            .filter(routeResponse -> "SUCCESS".equals(routeResponse.getStatus()))
+                            .switchIfEmpty(fail(FailureReason.ROUTE_FAILED))
+                            // Step 6: Save case to database
+                            .flatMap(routeResponse -> saveDispatchCase(request, selectedPair, routeResponse)
+                                    // Step 7: Create DispatchResult
+                                    .map(newCase -> metrics.record(Step.RESULT_BUILD,
+                                            () -> createDispatchResult(selectedPair, routeResponse, newCase))))
+                            .onErrorResume(e -> releaseAmbulance(ambulanceId).then(Mono.error(e)))
+                            // Before the result is emitted, so the claim is gone by the time callers see it
+                            .doOnTerminate(() -> reservations.release(ambulanceId))
+                            .doOnCancel(() -> releaseInBackground(ambulanceId));
+                });
+    }
+
+    private Mono<SelectedAmbulance> reserveFirstAvailable(List<SelectedAmbulance> candidates, int from) {
+        if (from >= candidates.size()) {
+            return fail(FailureReason.ALL_RESERVED);
+        }
+        SelectedAmbulance candidate = candidates.get(from);
+        Integer ambulanceId = candidate.getPair().getAmbulance().getId();
+        if (!reservations.tryClaim(ambulanceId)) {
+            return reserveFirstAvailable(candidates, from + 1);
         }
+        return reserveAmbulance(ambulanceId)
+                // The reserve may already have been applied when the caller gave up
+                .doOnCancel(() -> releaseInBackground(ambulanceId))
+                .flatMap(outcome -> {
+                    if (outcome == ReserveOutcome.RESERVED) {
+                        ambulanceIndex.setAvailable(ambulanceId, false);
+                        return Mono.just(candidate);
+                    }
+                    if (outcome == ReserveOutcome.TAKEN) {
+                        reservations.release(ambulanceId);
+                        log.info("Ambulance ID: {} was taken by another dispatch, trying the next candidate", ambulanceId);
+                        ambulanceIndex.setAvailable(ambulanceId, false);
+                        return reserveFirstAvailable(candidates, from + 1);
+                    }
+                    // A timeout or error leaves it unknown whether the reserve went through; undo it either way
+                    return releaseAmbulance(ambulanceId)
+                            .doOnTerminate(() -> reservations.release(ambulanceId))
+                            .then(fail(FailureReason.RESERVATION_FAILED));
+                });
+    }
 
-        // Step 6: Save case to database
-        Case newCase = saveDispatchCase(request, selectedPair, routeResponse);
+    /**
+     * Hands an ambulance back after the dispatch holding it was cancelled. The local claim is only dropped once
+     * the release is done, so no other dispatch can reserve the ambulance and have this release undo it.
+     */
+    private void releaseInBackground(Integer ambulanceId) {
+        releaseAmbulance(ambulanceId)
+                .doFinally(signal -> reservations.release(ambulanceId))
+                .subscribe();
+    }
 
-        // Step 7: Create DispatchResult
-        DispatchResult dispatchResult = createDispatchResult(selectedPair, routeResponse, newCase);
-        return dispatchResult;
+    private Mono<List<Hospital>> fetchHospitalsBySpeciality(String speciality) {
+        return metrics.time(Step.HOSPITAL_FETCH, hospitalCache.get(speciality)
+                .map(hospitals -> withSpeciality(hospitals, speciality))
+                .onErrorResume(e -> {
+                    log.error("Error fetching hospitals by specialization: {}", speciality, e);
+                    return Mono.just(Collections.emptyList());
+                }));
     }
 
-    private List<Hospital> fetchHospitalsBySpeciality(String speciality) {
-        try {
-            return webClient.get()
-                    .uri(HOSPITAL_MANAGEMENT_SERVICE_URL + "/hospitals?speciality=" + speciality)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching hospitals")))
-                    .bodyToFlux(Hospital.class)
-                    .collectList()
-                    .block();
-        } catch (Exception e) {
-            log.error("Error fetching hospitals by specialization: {}", speciality, e);
-            return Collections.emptyList();
+    private Mono<List<AmbulanceHospitalPair>> getAvailableAmbulances(String speciality, List<Hospital> hospitals) {
+        if (fleetReplica.isLive() && hospitals.stream().allMatch(hospital -> hospital.getAmbulanceIds() != null)) {
+            return metrics.time(Step.AMBULANCE_FANOUT, Mono.fromSupplier(() -> replicaCandidates(hospitals)));
         }
+        return metrics.time(Step.AMBULANCE_FANOUT, fetchHospitalsWithAvailableAmbulances(speciality)
+                .map(joinedHospitals -> {
+                    List<AmbulanceHospitalPair> pairs = new ArrayList<>();
+                    for (Hospital hospital : withSpeciality(joinedHospitals, speciality)) {
+                        if (hospital.getAmbulances() == null) {
+                            continue;
+                        }
+                        hospital.getAmbulances().stream()
+                                .filter(Ambulance::isAvailable)
+                                .forEach(ambulance -> pairs.add(new AmbulanceHospitalPair(ambulance, hospital)));
+                    }
+                    return pairs;
+                })
+                .onErrorResume(e -> {
+                    log.warn("Joined ambulance lookup failed for specialization: {}, falling back to per-hospital lookups", speciality, e);
+                    return fanOutAmbulanceLookups(hospitals);
+                }));
     }
 
-    private List<AmbulanceHospitalPair> getAvailableAmbulances(List<Hospital> hospitals) {
+    /**
+     * The hospitals that have the specialization. Upstream lists are filtered already; checking again here
+     * keeps an unfiltered list from ever sending an ambulance of the wrong hospital.
+     */
+    private static List<Hospital> withSpeciality(List<Hospital> hospitals, String speciality) {
+        String wanted = speciality.trim();
+        return hospitals.stream()
+                .filter(hospital -> hospital.getSpecialization() != null
+                        && hospital.getSpecialization().trim().equalsIgnoreCase(wanted))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Available ambulances of the given hospitals, read from the fleet replica without a remote call.
+     */
+    private List<AmbulanceHospitalPair> replicaCandidates(List<Hospital> hospitals) {
         List<AmbulanceHospitalPair> pairs = new ArrayList<>();
         for (Hospital hospital : hospitals) {
-            List<Ambulance> ambulances = fetchAmbulancesByHospital(hospital.getId());
-            ambulances.stream()
-                    .filter(Ambulance::isAvailable)
-                    .forEach(ambulance -> pairs.add(new AmbulanceHospitalPair(ambulance, hospital)));
+            for (Integer ambulanceId : hospital.getAmbulanceIds()) {
+                Ambulance ambulance = fleetReplica.get(ambulanceId);
+                if (ambulance != null && ambulance.isAvailable()) {
+                    pairs.add(new AmbulanceHospitalPair(ambulance, hospital));
+                }
+            }
         }
         return pairs;
     }
 
-    private List<Ambulance> fetchAmbulancesByHospital(Long hospitalId) {
-        try {
-            return webClient.get()
-                    .uri(HOSPITAL_MANAGEMENT_SERVICE_URL + "/hospitals/by-hospital/" + hospitalId)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching ambulances")))
-                    .bodyToFlux(Ambulance.class)
-                    .collectList()
-                    .block();
-        } catch (Exception e) {
-            log.error("Error fetching ambulances for hospital ID: {}", hospitalId, e);
-            return Collections.emptyList();
-        }
-    }
-
-    private AmbulanceHospitalPair findNearestAmbulance(List<AmbulanceHospitalPair> pairs, EmergencyRequest request) {
-        return pairs.stream()
-                .min(Comparator.comparingDouble(pair -> calculateDistance(
-                        pair.getAmbulance().getLatitude(),
-                        pair.getAmbulance().getLongitude(),
-                        request.getLatitude(),
-                        request.getLongitude())))
-                .orElse(null);
-    }
-
-    private RouteResponse fetchRoute(Ambulance ambulance, EmergencyRequest request) {
-        try {
-            return webClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .scheme("http")
-                            .host("route-optimization-service")
-                            .path("/routes")
-                            .queryParam("originLat", ambulance.getLatitude())
-                            .queryParam("originLng", ambulance.getLongitude())
-                            .queryParam("destLat", request.getLatitude())
-                            .queryParam("destLng", request.getLongitude())
-                            .build())
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error calculating route")))
-                    .bodyToMono(RouteResponse.class)
-                    .block();
-        } catch (Exception e) {
-            log.error("Error fetching route for ambulance ID: {}", ambulance.getId(), e);
-            return new RouteResponse("FAILURE", null);
-        }
-    }
-
-
-    private boolean updateAmbulanceAvailability(Integer ambulanceId, boolean availability) {
-        try {
-            webClient.put()
-                    .uri(AMBULANCE_SERVICE_URL + "/ambulances/" + ambulanceId + "/availability")
-                    .bodyValue(java.util.Map.of("available", availability))
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error updating ambulance availability")))
-                    .toBodilessEntity()
-                    .block();
-            return true;
-        } catch (Exception e) {
-            log.error("Error updating availability for ambulance ID: {}", ambulanceId, e);
-            return false;
-        }
-    }
-
-    private Case saveDispatchCase(EmergencyRequest request, AmbulanceHospitalPair selectedPair, RouteResponse routeResponse) {
+    /**
+     * Hospitals for the specialization with their available ambulances embedded, in a single call.
+     */
+    private Mono<List<Hospital>> fetchHospitalsWithAvailableAmbulances(String speciality) {
+        return webClient.get()
+                .uri(HOSPITAL_MANAGEMENT_SERVICE_URL + "/hospitals/available-ambulances?speciality=" + speciality)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching hospitals with ambulances")))
+                .bodyToFlux(Hospital.class)
+                .collectList()
+                .timeout(properties.getTimeouts().getAmbulances());
+    }
+
+    private Mono<List<AmbulanceHospitalPair>> fanOutAmbulanceLookups(List<Hospital> hospitals) {
+        DispatchProperties.Fanout fanout = properties.getFanout();
+        return Flux.fromIterable(hospitals)
+                .flatMap(hospital -> fetchAmbulancesByHospital(hospital.getId())
+                        .flatMapIterable(ambulances -> ambulances)
+                        .filter(Ambulance::isAvailable)
+                        .map(ambulance -> new AmbulanceHospitalPair(ambulance, hospital)),
+                        fanout.getConcurrency())
+                // Hospitals that have not answered by the deadline are left out rather than awaited
+                .take(fanout.getDeadline())
+                .collectList();
+    }
+
+    private Mono<List<Ambulance>> fetchAmbulancesByHospital(Long hospitalId) {
+        return webClient.get()
+                .uri(HOSPITAL_MANAGEMENT_SERVICE_URL + "/hospitals/by-hospital/" + hospitalId)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching ambulances")))
+                .bodyToFlux(Ambulance.class)
+                .collectList()
+                .timeout(properties.getTimeouts().getAmbulances())
+                .onErrorResume(e -> {
+                    log.error("Error fetching ambulances for hospital ID: {}", hospitalId, e);
+                    return Mono.just(Collections.emptyList());
+                });
+    }
+
+    /**
+     * The nearest unclaimed candidates, closest first. While the fleet replica is live it keeps the spatial
+     * index current, and the index answers from the cells around the emergency within the selection radius,
+     * into this thread's reusable buffer; candidate ids are looked up in a sorted int array, so the scan boxes
+     * nothing. Otherwise, or when no candidate is inside the radius, the candidates are ranked by distance
+     * directly, so the nearest ambulance is still found wherever it is.
+     */
+    private List<AmbulanceHospitalPair> rankByDistance(List<AmbulanceHospitalPair> pairs, EmergencyRequest request) {
+        List<AmbulanceHospitalPair> usable = new ArrayList<>(pairs.size());
+        for (AmbulanceHospitalPair pair : pairs) {
+            Ambulance ambulance = pair.getAmbulance();
+            if (ambulance.getId() != null && ambulance.getLatitude() != null && ambulance.getLongitude() != null) {
+                usable.add(pair);
+            }
+        }
+        usable.sort(Comparator.comparingInt(pair -> pair.getAmbulance().getId()));
+        int[] ids = new int[usable.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = usable.get(i).getAmbulance().getId();
+        }
+
+        DispatchProperties.Selection selection = properties.getSelection();
+        if (fleetReplica.isLive()) {
+            NeighborBuffer nearest = NEAREST.get();
+            int found = ambulanceIndex.nearest(request.getLatitude(), request.getLongitude(),
+                    selection.getCandidates(), selection.getRadiusMeters(),
+                    id -> Arrays.binarySearch(ids, id) >= 0 && !reservations.isClaimed(id), nearest);
+            if (found > 0) {
+                List<AmbulanceHospitalPair> ranked = new ArrayList<>(found);
+                for (int i = 0; i < found; i++) {
+                    ranked.add(usable.get(Arrays.binarySearch(ids, nearest.ambulanceId(i))));
+                }
+                return ranked;
+            }
+        }
+        return usable.stream()
+                .filter(pair -> !reservations.isClaimed(pair.getAmbulance().getId()))
+                .map(pair -> Map.entry(GeoUtils.haversineMeters(request.getLatitude(), request.getLongitude(),
+                        pair.getAmbulance().getLatitude(), pair.getAmbulance().getLongitude()), pair))
+                .sorted(Map.Entry.comparingByKey())
+                .limit(selection.getCandidates())
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keys the candidates by ambulance id, dropping any without an id or a position.
+     */
+    private static Map<Integer, AmbulanceHospitalPair> byAmbulanceId(List<AmbulanceHospitalPair> pairs) {
+        Map<Integer, AmbulanceHospitalPair> candidates = new LinkedHashMap<>();
+        for (AmbulanceHospitalPair pair : pairs) {
+            Ambulance ambulance = pair.getAmbulance();
+            if (ambulance.getId() != null && ambulance.getLatitude() != null && ambulance.getLongitude() != null) {
+                candidates.put(ambulance.getId(), pair);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Candidates in the order dispatch should try to reserve them.
+     */
+    private Mono<List<SelectedAmbulance>> orderCandidates(List<AmbulanceHospitalPair> ranked, EmergencyRequest request) {
+        if (properties.getSelection().getMode() != DispatchProperties.Selection.Mode.ROUTE_AWARE || ranked.size() == 1) {
+            return Mono.just(ranked.stream()
+                    .map(pair -> new SelectedAmbulance(pair, null))
+                    .collect(Collectors.toList()));
+        }
+        return orderByEta(ranked, request);
+    }
+
+    /**
+     * Requests a route for every ranked candidate at once and orders them by driving duration. If the ETA
+     * deadline passes before every candidate has answered, the straight-line order is kept instead (with
+     * whichever routes did arrive).
+     */
+    private Mono<List<SelectedAmbulance>> orderByEta(List<AmbulanceHospitalPair> ranked, EmergencyRequest request) {
+        return Flux.fromIterable(ranked)
+                .flatMap(pair -> fetchRoute(pair.getAmbulance(), request)
+                        .map(route -> new SelectedAmbulance(pair, route)))
+                .take(properties.getSelection().getEtaDeadline())
+                .collectMap(SelectedAmbulance::getPair)
+                .map(answered -> {
+                    List<SelectedAmbulance> ordered = ranked.stream()
+                            .map(pair -> answered.getOrDefault(pair, new SelectedAmbulance(pair, null)))
+                            .collect(Collectors.toList());
+                    if (answered.size() < ranked.size()) {
+                        log.warn("ETA deadline expired with {}/{} routes, using the straight-line nearest ambulance",
+                                answered.size(), ranked.size());
+                        return ordered;
+                    }
+                    // Routed candidates by duration; stable sort keeps failed routes in straight-line order
+                    ordered.sort(Comparator.comparingDouble(selected -> "SUCCESS".equals(selected.getRoute().getStatus())
+                            ? selected.getRoute().getDuration()
+                            : Double.POSITIVE_INFINITY));
+                    return ordered;
+                });
+    }
+
+    private Mono<RouteResponse> fetchRoute(Ambulance ambulance, EmergencyRequest request) {
+        return metrics.time(Step.ROUTE, webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .scheme("http")
+                        .host("route-optimization-service")
+                        .path("/routes")
+                        .queryParam("originLat", ambulance.getLatitude())
+                        .queryParam("originLng", ambulance.getLongitude())
+                        .queryParam("destLat", request.getLatitude())
+                        .queryParam("destLng", request.getLongitude())
+                        .build())
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error calculating route")))
+                .bodyToMono(RouteResponse.class)
+                .timeout(properties.getTimeouts().getRoute())
+                .onErrorResume(e -> {
+                    log.error("Error fetching route for ambulance ID: {}", ambulance.getId(), e);
+                    return Mono.just(new RouteResponse("FAILURE", null));
+                }));
+    }
+
+
+    /**
+     * Conditional reserve in ambulance-service: only one caller can move an ambulance from available to busy.
+     */
+    private Mono<ReserveOutcome> reserveAmbulance(Integer ambulanceId) {
+        return metrics.time(Step.AVAILABILITY_UPDATE, webClient.post()
+                .uri(AMBULANCE_SERVICE_URL + "/api/ambulances/" + ambulanceId + "/reserve")
+                .exchangeToMono(response -> response.releaseBody().thenReturn(ReserveOutcome.of(response.statusCode())))
+                .timeout(properties.getTimeouts().getAvailability())
+                .onErrorResume(e -> {
+                    log.error("Error reserving ambulance ID: {}", ambulanceId, e);
+                    return Mono.just(ReserveOutcome.ERROR);
+                }));
+    }
+
+    private Mono<Void> releaseAmbulance(Integer ambulanceId) {
+        return webClient.post()
+                .uri(AMBULANCE_SERVICE_URL + "/api/ambulances/" + ambulanceId + "/release")
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(properties.getTimeouts().getAvailability())
+                .doOnSuccess(released -> ambulanceIndex.setAvailable(ambulanceId, true))
+                .then()
+                .onErrorResume(e -> {
+                    log.error("Error releasing ambulance ID: {}", ambulanceId, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Case> saveDispatchCase(EmergencyRequest request, AmbulanceHospitalPair selectedPair, RouteResponse routeResponse) {
         Case newCase = new Case();
         newCase.setLatitude(request.getLatitude());
         newCase.setLongitude(request.getLongitude());
@@ -170,8 +525,19 @@ public class DispatchService {
         newCase.setEstimatedDistance(routeResponse.getDistance());
         newCase.setRouteGeometry(routeResponse.getGeometry());
         newCase.setCreatedAt(LocalDateTime.now());
-        caseService.createCase(newCase);
-        return newCase;
+        // JPA is blocking, keep it off the event loop
+        return metrics.time(Step.CASE_SAVE, Mono.fromCallable(() -> {
+                    caseService.createCase(newCase);
+                    return newCase;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(properties.getTimeouts().getCaseSave())
+                .onErrorMap(e -> {
+                    log.error("Error saving case for ambulance ID: {}", newCase.getAssignedAmbulanceId(), e);
+                    return new DispatchFailure(e instanceof TimeoutException
+                            ? FailureReason.CASE_SAVE_TIMEOUT
+                            : FailureReason.CASE_SAVE_FAILED);
+                }));
     }
 
     private DispatchResult createDispatchResult(AmbulanceHospitalPair selectedPair, RouteResponse routeResponse, Case savedCase) {
@@ -183,26 +549,65 @@ public class DispatchService {
         return result;
     }
 
-    private double calculateDistance(Double lat1, Double lon1, Double lat2, Double lon2) {
-        double R = 6371e3; // Earth radius in meters
-        double phi1 = Math.toRadians(lat1);
-        double phi2 = Math.toRadians(lat2);
-        double deltaPhi = Math.toRadians(lat2 - lat1);
-        double deltaLambda = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(deltaPhi / 2) * Math.sin(deltaPhi / 2) +
-                Math.cos(phi1) * Math.cos(phi2) *
-                        Math.sin(deltaLambda / 2) * Math.sin(deltaLambda / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
-    }
-
-    private DispatchResult createFailureResult(String message) {
+    private DispatchResult createFailureResult(FailureReason reason) {
         DispatchResult result = new DispatchResult();
         result.setStatus("FAILURE");
-        log.error("Dispatch failed: {}", message);
+        log.error("Dispatch failed: {}", reason.getMessage());
+        metrics.recordFailure(reason.getTag());
         return result;
     }
 
+    private static <T> Mono<T> fail(FailureReason reason) {
+        return Mono.defer(() -> Mono.error(new DispatchFailure(reason)));
+    }
+
+    /**
+     * Why a dispatch ended in FAILURE. The tag is the low-cardinality {@code reason} on {@code dispatch.failures}.
+     */
+    private enum FailureReason {
+        NO_HOSPITAL("no_hospital", "No hospital with the required specialization found."),
+        NO_AMBULANCE("no_ambulance", "No available ambulances found for the required specialization."),
+        NO_CANDIDATE("no_candidate_in_range", "No suitable ambulance found."),
+        UNASSIGNED("unassigned", "No available ambulance left for this emergency."),
+        ALL_RESERVED("all_reserved", "All candidate ambulances were reserved by other dispatches."),
+        RESERVATION_FAILED("availability_update_failed", "Failed to update ambulance availability."),
+        ROUTE_FAILED("route_failed", "Route calculation failed."),
+        CASE_SAVE_TIMEOUT("case_save_timeout", "Saving the case timed out."),
+        CASE_SAVE_FAILED("case_save_failed", "Saving the case failed.");
+
+        private final String tag;
+        private final String message;
+
+        FailureReason(String tag, String message) {
+            this.tag = tag;
+            this.message = message;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Short-circuits the pipeline; turned into a FAILURE result at the end of {@link #handleEmergency}.
+     */
+    private static class DispatchFailure extends RuntimeException {
+        private final FailureReason reason;
+
+        DispatchFailure(FailureReason reason) {
+            super(reason.getMessage(), null, false, false);
+            this.reason = reason;
+        }
+
+        FailureReason getReason() {
+            return reason;
+        }
+    }
+
     private static class AmbulanceHospitalPair {
         private final Ambulance ambulance;
         private final Hospital hospital;
@@ -220,4 +625,42 @@ public class DispatchService {
             return hospital;
         }
     }
+
+    private enum ReserveOutcome {
+        RESERVED,
+        TAKEN,
+        ERROR;
+
+        static ReserveOutcome of(HttpStatusCode status) {
+            if (status.is2xxSuccessful()) {
+                return RESERVED;
+            }
+            // 409: someone else reserved it first; 404: it left the fleet
+            if (status.value() == 409 || status.value() == 404) {
+                return TAKEN;
+            }
+            return ERROR;
+        }
+    }
+
+    /**
+     * A candidate ambulance and, when selection had to fetch it anyway, its route.
+     */
+    private static class SelectedAmbulance {
+        private final AmbulanceHospitalPair pair;
+        private final RouteResponse route;
+
+        SelectedAmbulance(AmbulanceHospitalPair pair, RouteResponse route) {
+            this.pair = pair;
+            this.route = route;
+        }
+
+        public AmbulanceHospitalPair getPair() {
+            return pair;
+        }
+
+        public RouteResponse getRoute() {
+            return route;
+        }
+    }
 }
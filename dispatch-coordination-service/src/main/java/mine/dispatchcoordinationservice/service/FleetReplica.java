@@ -0,0 +1,218 @@
+package mine.dispatchcoordinationservice.service;
+
+import jakarta.annotation.PreDestroy;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import mine.dispatchcoordinationservice.dto.Ambulance;
+import mine.dispatchcoordinationservice.dto.AmbulanceChange;
+import mine.dispatchcoordinationservice.dto.AmbulanceChangeBatch;
+import mine.dispatchcoordinationservice.dto.FleetSnapshot;
+import mine.dispatchcoordinationservice.geo.AmbulanceSpatialIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of every ambulance's position and availability, so dispatch can gather candidates locally
+ * instead of asking hospital-management, which in turn asks ambulance-service. It loads a snapshot of the
+ * fleet, then follows ambulance-service's change log with long polls from the snapshot's cursor. When the
+ * log reports a gap, or a poll fails, it starts over from a new snapshot.
+ * <p>
+ * Every applied change is also written to the {@link AmbulanceSpatialIndex}: available ambulances with a
+ * position are upserted, and the rest are removed, so nearest queries only see ambulances that can go.
+ * The index does not know hospitals; dispatch pairs the ambulances it returns with their hospitals.
+ */
+@Component
+public class FleetReplica {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetReplica.class);
+
+    private static final String AMBULANCE_SERVICE_URL = "http://ambulance-service";
+
+    private final WebClient webClient;
+    private final DispatchProperties properties;
+    private final AmbulanceSpatialIndex ambulanceIndex;
+    // Entries are replaced, never mutated, so readers can hand them out as they are
+    private final Map<Integer, Ambulance> ambulances = new ConcurrentHashMap<>();
+
+    private volatile boolean synced;
+    private volatile long lastContactNanos;
+    private volatile Disposable subscription;
+
+    public FleetReplica(WebClient.Builder webClientBuilder, DispatchProperties properties,
+                        AmbulanceSpatialIndex ambulanceIndex) {
+        this.webClient = webClientBuilder.build();
+        this.properties = properties;
+        this.ambulanceIndex = ambulanceIndex;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (properties.getReplica().isEnabled() && subscription == null) {
+            subscription = sync().subscribe();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+        synced = false;
+    }
+
+    /**
+     * True while the replica has a snapshot and ambulance-service answered recently enough for it to be
+     * trusted instead of a remote lookup.
+     */
+    public boolean isLive() {
+        return synced && System.nanoTime() - lastContactNanos < properties.getReplica().getStaleAfter().toNanos();
+    }
+
+    public Ambulance get(Integer ambulanceId) {
+        return ambulanceId == null ? null : ambulances.get(ambulanceId);
+    }
+
+    public int size() {
+        return ambulances.size();
+    }
+
+    /**
+     * Emits the cursor after the snapshot and after every batch of changes; never completes on its own.
+     */
+    Flux<Long> sync() {
+        DispatchProperties.Replica replica = properties.getReplica();
+        return Mono.defer(this::loadSnapshot)
+                .flatMapMany(cursor -> Mono.just(cursor).expand(this::pollChanges))
+                .doOnError(e -> {
+                    synced = false;
+                    log.warn("Fleet replica lost sync with ambulance-service, reloading snapshot: {}", e.toString());
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, replica.getRetryBackoff())
+                        .maxBackoff(replica.getMaxBackoff()));
+    }
+
+    private Mono<Long> loadSnapshot() {
+        return webClient.get()
+                .uri(AMBULANCE_SERVICE_URL + "/api/ambulances/changes/snapshot")
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching fleet snapshot")))
+                .bodyToMono(FleetSnapshot.class)
+                .timeout(properties.getReplica().getSnapshotTimeout())
+                .map(snapshot -> {
+                    applySnapshot(snapshot);
+                    return snapshot.getCursor();
+                });
+    }
+
+    private Mono<Long> pollChanges(long cursor) {
+        DispatchProperties.Replica replica = properties.getReplica();
+        return webClient.get()
+                .uri(AMBULANCE_SERVICE_URL + "/api/ambulances/changes?since={since}&limit={limit}&waitMillis={wait}",
+                        cursor, replica.getBatchSize(), replica.getLongPoll().toMillis())
+                .exchangeToMono(response -> {
+                    if (response.statusCode().value() == HttpStatus.GONE.value()) {
+                        return response.releaseBody().then(Mono.error(new RuntimeException("Change log cursor " + cursor + " expired")));
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.releaseBody().then(Mono.error(new RuntimeException("Error fetching ambulance changes")));
+                    }
+                    return response.bodyToMono(AmbulanceChangeBatch.class);
+                })
+                // The server holds the request for up to the long poll; allow a normal call's worth on top
+                .timeout(replica.getLongPoll().plus(properties.getTimeouts().getAmbulances()))
+                .map(batch -> {
+                    applyChanges(batch);
+                    return batch.getCursor();
+                });
+    }
+
+    void applySnapshot(FleetSnapshot snapshot) {
+        Set<Integer> present = new HashSet<>();
+        if (snapshot.getAmbulances() != null) {
+            for (Ambulance ambulance : snapshot.getAmbulances()) {
+                if (ambulance.getId() != null) {
+                    Ambulance copy = copy(ambulance);
+                    ambulances.put(ambulance.getId(), copy);
+                    index(copy);
+                    present.add(ambulance.getId());
+                }
+            }
+        }
+        for (Integer id : ambulances.keySet()) {
+            if (!present.contains(id)) {
+                ambulances.remove(id);
+                ambulanceIndex.remove(id);
+            }
+        }
+        touch();
+        synced = true;
+    }
+
+    void applyChanges(AmbulanceChangeBatch batch) {
+        if (batch.getChanges() != null) {
+            batch.getChanges().forEach(this::apply);
+        }
+        touch();
+    }
+
+    private void apply(AmbulanceChange change) {
+        if (change.getAmbulanceId() == null) {
+            return;
+        }
+        int id = Math.toIntExact(change.getAmbulanceId());
+        if (change.isRemoved()) {
+            ambulances.remove(id);
+            ambulanceIndex.remove(id);
+            return;
+        }
+        Ambulance updated = ambulances.compute(id, (key, current) -> {
+            Ambulance next = current != null ? copy(current) : new Ambulance();
+            next.setId(id);
+            if (change.getLatitude() != null && change.getLongitude() != null) {
+                next.setLatitude(change.getLatitude());
+                next.setLongitude(change.getLongitude());
+            }
+            if (change.getAvailable() != null) {
+                next.setAvailable(change.getAvailable());
+            }
+            return next;
+        });
+        index(updated);
+    }
+
+    private void index(Ambulance ambulance) {
+        if (ambulance.isAvailable() && ambulance.getLatitude() != null && ambulance.getLongitude() != null) {
+            ambulanceIndex.upsert(ambulance.getId(), ambulance.getLatitude(), ambulance.getLongitude(), true);
+        } else {
+            ambulanceIndex.remove(ambulance.getId());
+        }
+    }
+
+    private void touch() {
+        lastContactNanos = System.nanoTime();
+    }
+
+    private static Ambulance copy(Ambulance ambulance) {
+        Ambulance copy = new Ambulance();
+        copy.setId(ambulance.getId());
+        copy.setAvailable(ambulance.isAvailable());
+        copy.setLatitude(ambulance.getLatitude());
+        copy.setLongitude(ambulance.getLongitude());
+        return copy;
+    }
+}
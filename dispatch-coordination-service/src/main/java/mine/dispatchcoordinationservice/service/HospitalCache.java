@@ -0,0 +1,69 @@
+package mine.dispatchcoordinationservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import mine.dispatchcoordinationservice.dto.Hospital;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Hospitals by specialization, so a dispatch does not wait on hospital-management-service for a list that
+ * rarely changes. Keys are trimmed and lower-cased. Concurrent misses for the same key share one request,
+ * failed loads are not cached, and a failed background refresh keeps serving the previous list.
+ */
+@Component
+public class HospitalCache {
+
+    private static final String HOSPITAL_MANAGEMENT_SERVICE_URL = "http://hospital-management-service";
+
+    private final WebClient webClient;
+    private final DispatchProperties properties;
+    private final AsyncLoadingCache<String, List<Hospital>> cache;
+
+    public HospitalCache(WebClient.Builder webClientBuilder, DispatchProperties properties) {
+        this.webClient = webClientBuilder.build();
+        this.properties = properties;
+        DispatchProperties.HospitalCache config = properties.getHospitalCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(config.getTtl())
+                .refreshAfterWrite(config.getRefreshAfter())
+                .buildAsync((speciality, executor) -> load(speciality).toFuture());
+    }
+
+    public Mono<List<Hospital>> get(String speciality) {
+        String key = normalize(speciality);
+        // The load is shared with other callers, so one caller cancelling must not cancel it
+        return Mono.fromFuture(() -> cache.get(key), true);
+    }
+
+    public void invalidate(String speciality) {
+        cache.synchronous().invalidate(normalize(speciality));
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private Mono<List<Hospital>> load(String speciality) {
+        return webClient.get()
+                // The search endpoint filters by speciality; the plain listing ignores the parameter
+                .uri(HOSPITAL_MANAGEMENT_SERVICE_URL + "/hospitals/search?speciality={speciality}", speciality)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> Mono.error(new RuntimeException("Error fetching hospitals")))
+                .bodyToFlux(Hospital.class)
+                .collectList()
+                .map(List::copyOf)
+                .timeout(properties.getTimeouts().getHospitals());
+    }
+
+    private static String normalize(String speciality) {
+        return speciality.trim().toLowerCase(Locale.ROOT);
+    }
+}
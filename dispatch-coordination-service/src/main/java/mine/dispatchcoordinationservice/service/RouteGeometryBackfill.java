@@ -0,0 +1,106 @@
+package mine.dispatchcoordinationservice.service;
+
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves routes stored inline in the old {@code cases.route_geometry} column into {@link RouteGeometryStore}. Runs
+ * at startup, before the web server takes requests, on every instance while the column exists. It only picks up
+ * rows without a route hash and stores each route together with its hash in one transaction, so an interrupted
+ * run, or rows written by an old instance during a rolling deploy, are picked up by the next start.
+ * <p>
+ * The column is only dropped with {@code dispatch.route-migration.drop-legacy-column}, and only when this run left
+ * no row behind.
+ */
+@Component
+public class RouteGeometryBackfill implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteGeometryBackfill.class);
+
+    private static final int BATCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RouteGeometryStore routeStore;
+    private final TransactionTemplate transactionTemplate;
+    private final DispatchProperties properties;
+
+    // The store's repository brings up JPA first, so Hibernate has added route_hash and route_geometries by now
+    public RouteGeometryBackfill(JdbcTemplate jdbcTemplate, RouteGeometryStore routeStore,
+                                 PlatformTransactionManager transactionManager, DispatchProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.routeStore = routeStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!hasInlineRoutes()) {
+            return;
+        }
+        int moved = 0;
+        int after = 0;
+        List<Map<String, Object>> batch;
+        do {
+            batch = jdbcTemplate.queryForList("SELECT id, route_geometry FROM cases "
+                    + "WHERE id > ? AND route_hash IS NULL AND route_geometry IS NOT NULL ORDER BY id LIMIT ?", after, BATCH);
+            for (Map<String, Object> row : batch) {
+                after = ((Number) row.get("id")).intValue();
+                move(after, (String) row.get("route_geometry"));
+            }
+            moved += batch.size();
+        } while (batch.size() == BATCH);
+        log.info("Moved {} inline case routes to route_geometries", moved);
+
+        if (properties.getRouteMigration().isDropLegacyColumn()) {
+            dropInlineRoutes();
+        }
+    }
+
+    private void move(int id, String geometry) {
+        try {
+            moveInTransaction(id, geometry);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance stored the same route first; it is there now
+            moveInTransaction(id, geometry);
+        }
+    }
+
+    private void moveInTransaction(int id, String geometry) {
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.update("UPDATE cases SET route_hash = ? WHERE id = ?", routeStore.store(geometry), id));
+    }
+
+    private void dropInlineRoutes() {
+        Integer remaining = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM cases WHERE route_hash IS NULL AND route_geometry IS NOT NULL", Integer.class);
+        if (remaining != null && remaining > 0) {
+            log.warn("Keeping cases.route_geometry: {} routes were written inline during this run", remaining);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE cases DROP COLUMN route_geometry");
+        log.info("Dropped cases.route_geometry");
+    }
+
+    private boolean hasInlineRoutes() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, "cases", "route_geometry")) {
+                return columns.next();
+            }
+        }));
+    }
+}
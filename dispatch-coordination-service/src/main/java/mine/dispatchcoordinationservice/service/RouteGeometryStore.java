@@ -0,0 +1,76 @@
+package mine.dispatchcoordinationservice.service;
+
+import mine.dispatchcoordinationservice.model.RouteGeometry;
+import mine.dispatchcoordinationservice.repository.RouteGeometryRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-addressed storage for route polylines. Cases keep only the hash; identical routes, e.g. repeated
+ * runs from a station to the same hospital, are stored once.
+ */
+@Service
+public class RouteGeometryStore {
+
+    private final RouteGeometryRepository repository;
+
+    public RouteGeometryStore(RouteGeometryRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Stores the geometry unless it is already there and returns its hash. Meant to run in the transaction that
+     * writes the hash: the insert is flushed here, so a route stored concurrently by another writer fails this
+     * call with a {@link org.springframework.dao.DataIntegrityViolationException}, and a retry of that
+     * transaction finds it.
+     */
+    public String store(String geometry) {
+        byte[] text = geometry.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(text);
+        if (!repository.existsById(hash)) {
+            repository.saveAndFlush(new RouteGeometry(hash, compress(text)));
+        }
+        return hash;
+    }
+
+    public Optional<String> load(String hash) {
+        return repository.findById(hash).map(route -> new String(decompress(route.getData()), StandardCharsets.UTF_8));
+    }
+
+    static String hash(byte[] text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static byte[] compress(byte[] text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length / 2 + 16);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] decompress(byte[] data) {
+        try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return inflater.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
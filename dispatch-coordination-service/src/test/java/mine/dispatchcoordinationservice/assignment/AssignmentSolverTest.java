@@ -0,0 +1,141 @@
+package mine.dispatchcoordinationservice.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssignmentSolverTest {
+
+    private static final double X = AssignmentSolver.INFEASIBLE;
+
+    @Test
+    void testBeatsGreedy() {
+        double[][] cost = {
+                {1, 3},
+                {2, 100}
+        };
+
+        assertArrayEquals(new int[]{0, 1}, AssignmentSolver.greedy(cost));
+        assertArrayEquals(new int[]{1, 0}, AssignmentSolver.solve(cost, Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void testInfeasiblePairsAreNeverAssigned() {
+        double[][] cost = {
+                {X, 5},
+                {X, 1},
+                {X, X}
+        };
+
+        int[] assignment = AssignmentSolver.solve(cost, Duration.ofSeconds(1));
+
+        assertArrayEquals(new int[]{-1, 1, -1}, assignment);
+    }
+
+    @Test
+    void testMatchesBruteForceOnRectangularMatrices() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int rows = 1 + random.nextInt(5);
+            int columns = 1 + random.nextInt(5);
+            double[][] cost = new double[rows][columns];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    cost[row][column] = random.nextInt(10) == 0 ? X : random.nextInt(1000);
+                }
+            }
+
+            int[] assignment = AssignmentSolver.solve(cost, Duration.ofSeconds(1));
+
+            assertValid(cost, assignment);
+            double[] best = bruteForce(cost, 0, new boolean[columns]);
+            assertEquals(best[0], assigned(assignment), "round " + round);
+            assertEquals(best[1], total(cost, assignment), 1e-9, "round " + round);
+        }
+    }
+
+    @Test
+    void testFallsBackToGreedyWhenBudgetIsExhausted() {
+        double[][] cost = {
+                {1, 3},
+                {2, 100}
+        };
+
+        assertArrayEquals(AssignmentSolver.greedy(cost), AssignmentSolver.solve(cost, Duration.ZERO));
+    }
+
+    @Test
+    void testTwentyUnitsWellUnderBudget() {
+        Random random = new Random(1);
+        double[][] cost = new double[20][200];
+        for (double[] row : cost) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = random.nextDouble() * 50_000;
+            }
+        }
+
+        long start = System.nanoTime();
+        int[] assignment = AssignmentSolver.solve(cost, Duration.ofSeconds(1));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertValid(cost, assignment);
+        assertEquals(20, assigned(assignment));
+        assertTrue(elapsedMillis < 500, "took " + elapsedMillis + " ms");
+    }
+
+    private static void assertValid(double[][] cost, int[] assignment) {
+        boolean[] taken = new boolean[cost[0].length];
+        for (int row = 0; row < assignment.length; row++) {
+            if (assignment[row] < 0) {
+                continue;
+            }
+            assertFalse(taken[assignment[row]], "column assigned twice");
+            assertTrue(cost[row][assignment[row]] < X);
+            taken[assignment[row]] = true;
+        }
+    }
+
+    private static int assigned(int[] assignment) {
+        int count = 0;
+        for (int column : assignment) {
+            if (column >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double total(double[][] cost, int[] assignment) {
+        double sum = 0;
+        for (int row = 0; row < assignment.length; row++) {
+            if (assignment[row] >= 0) {
+                sum += cost[row][assignment[row]];
+            }
+        }
+        return sum;
+    }
+
+    // {most rows assigned, least total cost for that many}
+    private static double[] bruteForce(double[][] cost, int row, boolean[] taken) {
+        if (row == cost.length) {
+            return new double[]{0, 0};
+        }
+        double[] best = bruteForce(cost, row + 1, taken);
+        for (int column = 0; column < taken.length; column++) {
+            if (taken[column] || !(cost[row][column] < X)) {
+                continue;
+            }
+            taken[column] = true;
+            double[] rest = bruteForce(cost, row + 1, taken);
+            taken[column] = false;
+            double[] candidate = {rest[0] + 1, rest[1] + cost[row][column]};
+            if (candidate[0] > best[0] || (candidate[0] == best[0] && candidate[1] < best[1])) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
@@ -1,7 +1,11 @@
 package mine.dispatchcoordinationservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.dispatchcoordinationservice.dto.CaseChanges;
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
 import mine.dispatchcoordinationservice.model.Case;
+import mine.dispatchcoordinationservice.repository.CaseCursor;
 import mine.dispatchcoordinationservice.service.CaseService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,13 +14,23 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
-import java.util.Arrays;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -34,6 +48,8 @@ class CaseControllerTest {
 
     private Case testCase;
 
+    private CaseSummary summary;
+
     @BeforeEach
     void setUp() {
         testCase = new Case();
@@ -47,18 +63,189 @@ class CaseControllerTest {
         testCase.setEstimatedDuration(600.0);
         testCase.setEstimatedDistance(1000.0);
         testCase.setRouteGeometry("test_geometry");
+        testCase.setCreatedAt(LocalDateTime.of(2024, 3, 1, 8, 15, 30));
+        testCase.setRouteHash("abc123");
+
+        summary = new CaseSummary();
+        summary.setId(1);
+        summary.setLatitude(40.7589);
+        summary.setLongitude(-73.9851);
+        summary.setSpecialization("Cardiology");
+        summary.setStatus("IN_PROGRESS");
+        summary.setAssignedAmbulanceId(1);
+        summary.setAssignedHospitalId(1L);
+        summary.setEstimatedDuration(600.0);
+        summary.setEstimatedDistance(1000.0);
+        summary.setCreatedAt(testCase.getCreatedAt());
     }
 
     @Test
-    void getAllCases_ShouldReturnListOfCases() throws Exception {
-        when(caseService.getAllCases()).thenReturn(Arrays.asList(testCase));
+    void getCases_ShouldReturnFirstPageOfCases() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(100))).thenReturn(List.of(summary));
 
         mockMvc.perform(get("/cases"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].specialization").value("Cardiology"))
-                .andExpect(jsonPath("$[0].status").value("IN_PROGRESS"));
+                .andExpect(jsonPath("$[0].status").value("IN_PROGRESS"))
+                .andExpect(jsonPath("$[0].routeGeometry").doesNotExist())
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    void getCases_WhenUnchanged_ShouldReturnNotModified() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(100))).thenReturn(List.of(summary));
+        String eTag = mockMvc.perform(get("/cases"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(caseService, times(1)).getCasePage(any(), any(), anyInt());
+    }
+
+    @Test
+    void getCases_WhenAnotherInstanceWrote_ShouldNotMatchETag() throws Exception {
+        when(caseService.getLatestChange()).thenReturn(8L, 9L);
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(100))).thenReturn(List.of(summary));
+        String eTag = mockMvc.perform(get("/cases"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getCases_WithOtherFilter_ShouldNotMatchETag() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(100))).thenReturn(List.of(summary));
+        String eTag = mockMvc.perform(get("/cases?status=IN_PROGRESS"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases?status=CLOSED").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getCases_WithReorderedParameters_ShouldMatchETag() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(100))).thenReturn(List.of(summary));
+        String eTag = mockMvc.perform(get("/cases?status=CLOSED&ambulanceId=3"))
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases?ambulanceId=3&status=CLOSED").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/cases?ambulanceId=3&status=CLOSED")
+                        .accept(MediaType.APPLICATION_NDJSON).header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getCases_WithFullPage_ShouldLinkToNextPageFromLastCase() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), isNull(), eq(1))).thenReturn(List.of(summary));
+
+        mockMvc.perform(get("/cases?status=COMPLETED&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(header().string("Link",
+                        "<http://localhost/cases?status=COMPLETED&after=2024-03-01T08:15:30,1&limit=1>; rel=\"next\""));
+    }
+
+    @Test
+    void getCases_ShouldPassFiltersAndCursor() throws Exception {
+        when(caseService.getCasePage(any(CaseFilter.class), any(CaseCursor.class), eq(50))).thenReturn(List.of());
+
+        mockMvc.perform(get("/cases")
+                        .param("status", "COMPLETED")
+                        .param("ambulanceId", "7")
+                        .param("from", "2024-03-01T00:00:00")
+                        .param("to", "2024-04-01T00:00:00")
+                        .param("after", "2024-03-01T08:15:30,1")
+                        .param("limit", "50"))
+                .andExpect(status().isOk());
+
+        verify(caseService).getCasePage(
+                argThat(filter -> "COMPLETED".equals(filter.getStatus()) && filter.getAmbulanceId() == 7
+                        && filter.getFrom().equals(LocalDateTime.of(2024, 3, 1, 0, 0))
+                        && filter.getTo().equals(LocalDateTime.of(2024, 4, 1, 0, 0))),
+                argThat(cursor -> cursor.getId() == 1 && cursor.getCreatedAt().equals(testCase.getCreatedAt())),
+                eq(50));
+    }
+
+    @Test
+    void getCases_WithFields_ShouldReturnOnlyThoseFieldsAndKey() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("createdAt", testCase.getCreatedAt());
+        row.put("status", "IN_PROGRESS");
+        when(caseService.getCaseFields(eq(Set.of("id", "createdAt", "status")), any(CaseFilter.class), isNull(), eq(1)))
+                .thenReturn(List.of(row));
+
+        mockMvc.perform(get("/cases?fields=status&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("IN_PROGRESS"))
+                .andExpect(jsonPath("$[0].createdAt").value("2024-03-01T08:15:30"))
+                .andExpect(jsonPath("$[0].latitude").doesNotExist())
+                .andExpect(header().string("Link",
+                        "<http://localhost/cases?fields=status&after=2024-03-01T08:15:30,1&limit=1>; rel=\"next\""));
+        verify(caseService, never()).getCasePage(any(), any(), anyInt());
+    }
+
+    @Test
+    void getCases_WithUnknownField_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/cases").param("fields", "status,routeGeometry"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getCases_WithMalformedCursor_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/cases").param("after", "42"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getCases_WithLimitTooLarge_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/cases").param("limit", "5000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamCases_ShouldWriteOneJsonObjectPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<CaseSummary> action = invocation.getArgument(2);
+            action.accept(summary);
+            return null;
+        }).when(caseService).streamCases(any(CaseFilter.class), isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/cases").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(objectMapper.writeValueAsString(summary) + "\n"));
+    }
+
+    @Test
+    void exportCasesCsv_ShouldWriteHeaderAndQuotedRows() throws Exception {
+        summary.setSpecialization("Cardiology, \"adult\"");
+        doAnswer(invocation -> {
+            Consumer<CaseSummary> action = invocation.getArgument(2);
+            action.accept(summary);
+            return null;
+        }).when(caseService).streamCases(any(CaseFilter.class), isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/cases").accept("text/csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"cases.csv\""))
+                .andExpect(content().string("id,created_at,status,specialization,latitude,longitude,ambulance_id,"
+                        + "hospital_id,estimated_duration,estimated_distance,real_duration\n"
+                        + "1,2024-03-01T08:15:30,IN_PROGRESS,\"Cardiology, \"\"adult\"\"\",40.7589,-73.9851,1,1,600.0,1000.0,\n"));
     }
 
     @Test
@@ -81,6 +268,113 @@ class CaseControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void getChanges_ShouldReturnChangedCasesAndCursor() throws Exception {
+        summary.setChangeSeq(8L);
+        when(caseService.getChangesSince(7, 1000)).thenReturn(new CaseChanges(8, List.of(summary)));
+
+        mockMvc.perform(get("/cases/changes").param("since", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cursor").value(8))
+                .andExpect(jsonPath("$.items[0].id").value(1))
+                .andExpect(jsonPath("$.items[0].changeSeq").value(8));
+    }
+
+    @Test
+    void getChanges_WhenNothingChanged_ShouldReturnNotModified() throws Exception {
+        when(caseService.getLatestChange()).thenReturn(8L);
+        when(caseService.getChangesSince(8, 1000)).thenReturn(new CaseChanges(8, List.of()));
+        String eTag = mockMvc.perform(get("/cases/changes?since=8"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases/changes?since=8").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(caseService, times(1)).getChangesSince(8, 1000);
+    }
+
+    @Test
+    void getChanges_WithOtherCursor_ShouldNotMatchETag() throws Exception {
+        when(caseService.getLatestChange()).thenReturn(8L);
+        when(caseService.getChangesSince(anyLong(), anyInt())).thenReturn(new CaseChanges(8, List.of()));
+        String eTag = mockMvc.perform(get("/cases/changes?since=8"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases/changes?since=5").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getChanges_WhenAnotherInstanceWrote_ShouldNotMatchETag() throws Exception {
+        when(caseService.getLatestChange()).thenReturn(8L, 9L);
+        when(caseService.getChangesSince(8, 1000)).thenReturn(new CaseChanges(8, List.of()));
+        String eTag = mockMvc.perform(get("/cases/changes?since=8"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/cases/changes?since=8").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getChanges_WithNegativeCursor_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/cases/changes").param("since", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getCaseById_ShouldLeaveRouteOut() throws Exception {
+        when(caseService.getCaseById(1)).thenReturn(Optional.of(testCase));
+
+        mockMvc.perform(get("/cases/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.routeHash").value("abc123"))
+                .andExpect(jsonPath("$.routeGeometry").doesNotExist());
+    }
+
+    @Test
+    void getCaseRoute_ShouldReturnGeometryWithHashAsETag() throws Exception {
+        when(caseService.getCaseById(1)).thenReturn(Optional.of(testCase));
+        when(caseService.getRoute("abc123")).thenReturn(Optional.of("test_geometry"));
+
+        mockMvc.perform(get("/cases/1/route"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abc123\""))
+                .andExpect(jsonPath("$.caseId").value(1))
+                .andExpect(jsonPath("$.geometry").value("test_geometry"));
+    }
+
+    @Test
+    void getCaseRoute_WhenETagMatches_ShouldNotReadRoute() throws Exception {
+        when(caseService.getCaseById(1)).thenReturn(Optional.of(testCase));
+
+        mockMvc.perform(get("/cases/1/route").header("If-None-Match", "\"abc123\""))
+                .andExpect(status().isNotModified());
+        verify(caseService, never()).getRoute(any());
+    }
+
+    @Test
+    void getCaseRoute_WhenCaseNotExists_ShouldReturnNotFound() throws Exception {
+        when(caseService.getCaseById(99)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/cases/99/route"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void updateCase_WithoutRoute_ShouldKeepStoredRoute() throws Exception {
+        Case updatedCase = new Case();
+        updatedCase.setStatus("COMPLETED");
+        when(caseService.getCaseById(1)).thenReturn(Optional.of(testCase));
+        when(caseService.updateCase(any(Case.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        mockMvc.perform(put("/cases/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updatedCase)))
+                .andExpect(status().isOk());
+
+        verify(caseService).updateCase(argThat(saved -> "abc123".equals(saved.getRouteHash())));
+    }
+
     @Test
     void updateCase_WhenExists_ShouldReturnUpdatedCase() throws Exception {
         Case updatedCase = new Case();
@@ -1,22 +1,34 @@
 package mine.dispatchcoordinationservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
 import mine.dispatchcoordinationservice.dto.*;
 import mine.dispatchcoordinationservice.service.DispatchService;
+import mine.dispatchcoordinationservice.service.HospitalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(DispatchController.class)
+@Import(DispatchProperties.class)
 class DispatchControllerTest {
 
     @Autowired
@@ -25,6 +37,9 @@ class DispatchControllerTest {
     @MockBean
     private DispatchService dispatchService;
 
+    @MockBean
+    private HospitalCache hospitalCache;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -68,11 +83,15 @@ class DispatchControllerTest {
     @Test
     void handleEmergency_Success() throws Exception {
         when(dispatchService.handleEmergency(any(EmergencyRequest.class)))
-                .thenReturn(successResult);
+                .thenReturn(Mono.just(successResult));
 
-        mockMvc.perform(post("/dispatch/emergency")
+        MvcResult mvcResult = mockMvc.perform(post("/dispatch/emergency")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(emergencyRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value("SUCCESS"))
@@ -84,11 +103,15 @@ class DispatchControllerTest {
     @Test
     void handleEmergency_Failure() throws Exception {
         when(dispatchService.handleEmergency(any(EmergencyRequest.class)))
-                .thenReturn(failureResult);
+                .thenReturn(Mono.just(failureResult));
 
-        mockMvc.perform(post("/dispatch/emergency")
+        MvcResult mvcResult = mockMvc.perform(post("/dispatch/emergency")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(emergencyRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isNotFound())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value("FAILURE"))
@@ -101,9 +124,63 @@ class DispatchControllerTest {
         EmergencyRequest invalidRequest = new EmergencyRequest();
         // Missing required fields
 
-        mockMvc.perform(post("/dispatch/emergency")
+        MvcResult mvcResult = mockMvc.perform(post("/dispatch/emergency")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(invalidRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void handleEmergencies_ReturnsResultsInRequestOrder() throws Exception {
+        when(dispatchService.handleEmergencies(anyList()))
+                .thenReturn(Mono.just(List.of(successResult, failureResult)));
+
+        MvcResult mvcResult = mockMvc.perform(post("/dispatch/emergencies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(emergencyRequest, emergencyRequest))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value("SUCCESS"))
+                .andExpect(jsonPath("$[1].status").value("FAILURE"));
+    }
+
+    @Test
+    void handleEmergencies_InvalidBatch() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(post("/dispatch/emergencies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Collections.emptyList())))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isBadRequest());
+
+        mvcResult = mockMvc.perform(post("/dispatch/emergencies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(emergencyRequest, new EmergencyRequest()))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void invalidateHospitalCache_BySpecialityOrAll() throws Exception {
+        mockMvc.perform(post("/dispatch/cache/hospitals/invalidate").param("speciality", "Cardiology"))
+                .andExpect(status().isNoContent());
+        verify(hospitalCache).invalidate("Cardiology");
+
+        mockMvc.perform(post("/dispatch/cache/hospitals/invalidate"))
+                .andExpect(status().isNoContent());
+        verify(hospitalCache).invalidateAll();
     }
 }
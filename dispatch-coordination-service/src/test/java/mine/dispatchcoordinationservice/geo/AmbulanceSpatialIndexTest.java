@@ -0,0 +1,161 @@
+package mine.dispatchcoordinationservice.geo;
+
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmbulanceSpatialIndexTest {
+
+    // Marrakech
+    private static final double LAT = 31.6295;
+    private static final double LNG = -7.9811;
+
+    private AmbulanceSpatialIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new AmbulanceSpatialIndex(new DispatchProperties());
+    }
+
+    @Test
+    void testNearestReturnsClosestFirst() {
+        index.upsert(1, LAT + 0.05, LNG, true);
+        index.upsert(2, LAT + 0.001, LNG, true);
+        index.upsert(3, LAT, LNG + 0.02, true);
+
+        List<Neighbor> result = index.nearest(LAT, LNG, 2, 50_000, id -> true);
+
+        assertEquals(List.of(2, 3), ids(result));
+        assertTrue(result.get(0).getDistanceMeters() < result.get(1).getDistanceMeters());
+    }
+
+    @Test
+    void testRadiusCutoff() {
+        index.upsert(1, LAT + 0.5, LNG, true); // ~55 km away
+
+        assertTrue(index.nearest(LAT, LNG, 1, 50_000, id -> true).isEmpty());
+        assertEquals(List.of(1), ids(index.nearest(LAT, LNG, 1, 60_000, id -> true)));
+    }
+
+    @Test
+    void testUnavailableAndFilteredAmbulancesAreSkipped() {
+        index.upsert(1, LAT, LNG, true);
+        index.upsert(2, LAT + 0.01, LNG, true);
+        index.upsert(3, LAT + 0.02, LNG, true);
+
+        index.setAvailable(1, false);
+
+        assertEquals(List.of(3), ids(index.nearest(LAT, LNG, 5, 50_000, id -> id != 2)));
+    }
+
+    @Test
+    void testMovedAndRemovedAmbulances() {
+        index.upsert(1, LAT + 0.2, LNG, true);
+        index.upsert(2, LAT + 0.1, LNG, true);
+
+        index.upsert(1, LAT, LNG, true);
+        assertEquals(List.of(1, 2), ids(index.nearest(LAT, LNG, 5, 50_000, id -> true)));
+
+        index.remove(1);
+        assertEquals(List.of(2), ids(index.nearest(LAT, LNG, 5, 50_000, id -> true)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testMatchesBruteForce() {
+        Random random = new Random(42);
+        Map<Integer, double[]> positions = new HashMap<>();
+        for (int id = 0; id < 2_000; id++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 1.0;
+            double lng = LNG + (random.nextDouble() - 0.5) * 1.0;
+            boolean available = random.nextInt(4) != 0;
+            index.upsert(id, lat, lng, available);
+            if (available) {
+                positions.put(id, new double[]{lat, lng});
+            }
+        }
+
+        for (int query = 0; query < 50; query++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 1.0;
+            double lng = LNG + (random.nextDouble() - 0.5) * 1.0;
+            double radius = 5_000 + random.nextDouble() * 30_000;
+
+            List<Integer> expected = positions.entrySet().stream()
+                    .map(e -> Map.entry(e.getKey(), GeoUtils.haversineMeters(lat, lng, e.getValue()[0], e.getValue()[1])))
+                    .filter(e -> e.getValue() <= radius)
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(10)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, ids(index.nearest(lat, lng, 10, radius, id -> true)));
+        }
+    }
+
+    @Test
+    void testMatchesBruteForceUnderChurn() {
+        Random random = new Random(3);
+        Map<Integer, double[]> positions = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            int id = random.nextInt(3_000);
+            if (random.nextInt(5) == 0) {
+                index.remove(id);
+                positions.remove(id);
+            } else {
+                double lat = LAT + (random.nextDouble() - 0.5) * 0.5;
+                double lng = LNG + (random.nextDouble() - 0.5) * 0.5;
+                index.upsert(id, lat, lng, true);
+                positions.put(id, new double[]{lat, lng});
+            }
+        }
+        assertEquals(positions.size(), index.size());
+
+        for (int query = 0; query < 50; query++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.5;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.5;
+
+            List<Integer> expected = positions.entrySet().stream()
+                    .map(e -> Map.entry(e.getKey(), GeoUtils.haversineMeters(lat, lng, e.getValue()[0], e.getValue()[1])))
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(5)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, ids(index.nearest(lat, lng, 5, 50_000, id -> true)));
+        }
+    }
+
+    @Test
+    void testBufferQueryDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        Random random = new Random(5);
+        for (int id = 0; id < 10_000; id++) {
+            index.upsert(id, LAT + (random.nextDouble() - 0.5), LNG + (random.nextDouble() - 0.5), true);
+        }
+        NeighborBuffer buffer = new NeighborBuffer(5);
+        java.util.function.IntPredicate any = id -> true;
+        for (int i = 0; i < 1_000; i++) {
+            index.nearest(LAT, LNG, 5, 50_000, any, buffer);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000; i++) {
+            index.nearest(LAT + i * 1e-4, LNG, 5, 50_000, any, buffer);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(5, buffer.size());
+        // Allow for the odd allocation by the measurement itself, not one per query
+        assertTrue(allocated < 1_000, "allocated " + allocated + " bytes");
+    }
+
+    private static List<Integer> ids(List<Neighbor> neighbors) {
+        return neighbors.stream().map(Neighbor::getAmbulanceId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,137 @@
+package mine.dispatchcoordinationservice.repository;
+
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaseHistoryReaderTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    private EmbeddedDatabase database;
+    private CaseHistoryReader reader;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE cases (id INT PRIMARY KEY, latitude DOUBLE, longitude DOUBLE, "
+                + "specialization VARCHAR(255), status VARCHAR(255), ambulance_id INT, hospital_id BIGINT, "
+                + "estimated_duration DOUBLE, estimated_distance DOUBLE, route_hash VARCHAR(64), "
+                + "real_duration DOUBLE, created_at TIMESTAMP, change_seq BIGINT)");
+        // Ids out of creation order, two cases created in the same instant, and one never written since change
+        // numbers were introduced
+        insert(jdbcTemplate, 5, "COMPLETED", 1, DAY.plusHours(1), null);
+        insert(jdbcTemplate, 2, "OPEN", 2, DAY.plusHours(2), 12L);
+        insert(jdbcTemplate, 3, "COMPLETED", 1, DAY.plusHours(2), 11L);
+        insert(jdbcTemplate, 1, "COMPLETED", 2, DAY.plusDays(1), 13L);
+        reader = new CaseHistoryReader(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void page_ShouldOrderByCreationTimeThenId() {
+        List<CaseSummary> page = reader.page(new CaseFilter(), null, 10);
+
+        assertEquals(List.of(5, 2, 3, 1), ids(page));
+        assertEquals(DAY.plusHours(1), page.get(0).getCreatedAt());
+        assertEquals(1L, page.get(0).getAssignedHospitalId());
+        assertNull(page.get(0).getRealDuration());
+    }
+
+    @Test
+    void page_ShouldContinueAfterCursorWithinSameTimestamp() {
+        List<CaseSummary> first = reader.page(new CaseFilter(), null, 2);
+
+        List<CaseSummary> second = reader.page(new CaseFilter(), CaseCursor.of(first.get(1)), 2);
+
+        assertEquals(List.of(5, 2), ids(first));
+        assertEquals(List.of(3, 1), ids(second));
+    }
+
+    @Test
+    void page_ShouldApplyFilters() {
+        CaseFilter filter = new CaseFilter();
+        filter.setStatus("COMPLETED");
+        filter.setAmbulanceId(1);
+        filter.setFrom(DAY.plusHours(2));
+        filter.setTo(DAY.plusDays(1));
+
+        assertEquals(List.of(3), ids(reader.page(filter, null, 10)));
+    }
+
+    @Test
+    void forEach_ShouldStreamMatchingCasesAfterCursor() {
+        CaseFilter filter = new CaseFilter();
+        filter.setStatus("COMPLETED");
+        List<CaseSummary> read = new ArrayList<>();
+
+        reader.forEach(filter, new CaseCursor(DAY.plusHours(1), 5), read::add);
+
+        assertEquals(List.of(3, 1), ids(read));
+    }
+
+    @Test
+    void page_WithFields_ShouldSelectOnlyThoseColumnsAndKey() {
+        CaseFilter filter = new CaseFilter();
+        filter.setStatus("OPEN");
+
+        List<Map<String, Object>> rows = reader.page(CaseFields.parse("status,assignedAmbulanceId"), filter, null, 10);
+
+        assertEquals(List.of(Map.of("id", 2, "createdAt", DAY.plusHours(2), "status", "OPEN", "assignedAmbulanceId", 2)), rows);
+        assertEquals(List.of("id", "createdAt", "status", "assignedAmbulanceId"), new ArrayList<>(rows.get(0).keySet()));
+    }
+
+    @Test
+    void forEach_WithFields_ShouldContinueFromRowCursor() {
+        Set<String> fields = CaseFields.parse("status");
+        List<Map<String, Object>> first = reader.page(fields, new CaseFilter(), null, 2);
+        List<Map<String, Object>> rest = new ArrayList<>();
+
+        reader.forEach(fields, new CaseFilter(), CaseCursor.of(first.get(1)), rest::add);
+
+        assertEquals(List.of(3, 1), rest.stream().map(row -> row.get("id")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void changedSince_ShouldReturnCasesPastCursorInChangeOrder() {
+        List<CaseSummary> all = reader.changedSince(0, 10);
+        List<CaseSummary> later = reader.changedSince(11, 1);
+
+        assertEquals(List.of(3, 2, 1), ids(all));
+        assertEquals(11L, all.get(0).getChangeSeq());
+        assertEquals(List.of(2), ids(later));
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, int id, String status, int ambulanceId, LocalDateTime createdAt,
+                               Long changeSeq) {
+        jdbcTemplate.update("INSERT INTO cases VALUES (?, 31.6, -8.0, 'Cardiology', ?, ?, 1, 600, 1000, ?, NULL, ?, ?)",
+                id, status, ambulanceId, "hash-" + id, createdAt, changeSeq);
+    }
+
+    private static List<Integer> ids(List<CaseSummary> cases) {
+        return cases.stream().map(CaseSummary::getId).collect(Collectors.toList());
+    }
+}
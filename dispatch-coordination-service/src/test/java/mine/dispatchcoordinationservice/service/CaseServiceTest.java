@@ -1,16 +1,25 @@
 package mine.dispatchcoordinationservice.service;
 
+import mine.dispatchcoordinationservice.dto.CaseChanges;
+import mine.dispatchcoordinationservice.dto.CaseFilter;
+import mine.dispatchcoordinationservice.dto.CaseSummary;
 import mine.dispatchcoordinationservice.model.Case;
+import mine.dispatchcoordinationservice.repository.CaseCursor;
+import mine.dispatchcoordinationservice.repository.CaseHistoryReader;
 import mine.dispatchcoordinationservice.repository.CaseRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
 
-import java.util.Arrays;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -21,6 +30,18 @@ class CaseServiceTest {
     @Mock
     private CaseRepository caseRepository;
 
+    @Mock
+    private CaseHistoryReader historyReader;
+
+    @Mock
+    private RouteGeometryStore routeStore;
+
+    @Mock
+    private ChangeSequencer sequencer;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private CaseService caseService;
 
@@ -84,21 +105,6 @@ class CaseServiceTest {
         assertFalse(result.isPresent());
     }
 
-    @Test
-    void getAllCases_ShouldReturnListOfCases() {
-        // Arrange
-        List<Case> expectedCases = Arrays.asList(testCase);
-        when(caseRepository.findAll()).thenReturn(expectedCases);
-
-        // Act
-        List<Case> actualCases = caseService.getAllCases();
-
-        // Assert
-        assertEquals(expectedCases.size(), actualCases.size());
-        assertEquals(expectedCases.get(0), actualCases.get(0));
-        verify(caseRepository).findAll();
-    }
-
     @Test
     void updateCase_ShouldReturnUpdatedCase() {
         // Arrange
@@ -118,4 +124,141 @@ class CaseServiceTest {
         assertEquals(550.0, result.getRealDuration());
         verify(caseRepository).save(updatedCase);
     }
+
+    @Test
+    void createCase_ShouldStoreRouteByHash() {
+        // Arrange
+        when(routeStore.store("test_geometry")).thenReturn("abc123");
+        when(caseRepository.save(any(Case.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Case savedCase = caseService.createCase(testCase);
+
+        // Assert
+        assertEquals("abc123", savedCase.getRouteHash());
+        verify(routeStore).store("test_geometry");
+    }
+
+    @Test
+    void createCase_ShouldStoreRouteInsideCaseTransaction() {
+        // Arrange
+        when(routeStore.store("test_geometry")).thenReturn("abc123");
+        when(caseRepository.save(any(Case.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        caseService.createCase(testCase);
+
+        // Assert
+        InOrder order = inOrder(transactionManager, routeStore, caseRepository);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(routeStore).store("test_geometry");
+        order.verify(caseRepository).save(testCase);
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void createCase_WhenRouteStoredConcurrently_ShouldRetryOnce() {
+        // Arrange
+        when(routeStore.store("test_geometry"))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry"))
+                .thenReturn("abc123");
+        when(caseRepository.save(any(Case.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Case savedCase = caseService.createCase(testCase);
+
+        // Assert
+        assertEquals("abc123", savedCase.getRouteHash());
+        verify(transactionManager).rollback(any());
+        verify(caseRepository, times(1)).save(testCase);
+    }
+
+    @Test
+    void updateCase_WithoutRoute_ShouldNotStoreRoute() {
+        // Arrange
+        Case updatedCase = new Case();
+        updatedCase.setRouteHash("abc123");
+        when(caseRepository.save(any(Case.class))).thenReturn(updatedCase);
+
+        // Act
+        caseService.updateCase(updatedCase);
+
+        // Assert
+        verifyNoInteractions(routeStore);
+    }
+
+    @Test
+    void createCase_ShouldStampChangeSequenceInTransaction() {
+        // Arrange
+        when(sequencer.nextCaseChange()).thenReturn(42L);
+        when(caseRepository.save(any(Case.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Case savedCase = caseService.createCase(testCase);
+
+        // Assert
+        assertEquals(42L, savedCase.getChangeSeq());
+        InOrder inOrder = inOrder(caseRepository, sequencer, transactionManager);
+        inOrder.verify(caseRepository).save(testCase);
+        inOrder.verify(sequencer).nextCaseChange();
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void getChangesSince_ShouldAdvanceCursorToLastChange() {
+        // Arrange
+        CaseSummary first = new CaseSummary();
+        first.setChangeSeq(8L);
+        CaseSummary second = new CaseSummary();
+        second.setChangeSeq(9L);
+        when(historyReader.changedSince(7, 2)).thenReturn(List.of(first, second));
+
+        // Act
+        CaseChanges changes = caseService.getChangesSince(7, 2);
+
+        // Assert
+        assertEquals(9L, changes.getCursor());
+        assertEquals(List.of(first, second), changes.getItems());
+    }
+
+    @Test
+    void getChangesSince_WhenNothingChanged_ShouldKeepCursor() {
+        // Arrange
+        when(historyReader.changedSince(7, 2)).thenReturn(List.of());
+
+        // Act
+        CaseChanges changes = caseService.getChangesSince(7, 2);
+
+        // Assert
+        assertEquals(7L, changes.getCursor());
+        assertTrue(changes.getItems().isEmpty());
+    }
+
+    @Test
+    void getCasePage_ShouldReadFromHistory() {
+        // Arrange
+        CaseFilter filter = new CaseFilter();
+        CaseCursor after = new CaseCursor(LocalDateTime.of(2024, 3, 1, 8, 0), 4);
+        CaseSummary summary = new CaseSummary();
+        when(historyReader.page(filter, after, 10)).thenReturn(List.of(summary));
+
+        // Act
+        List<CaseSummary> page = caseService.getCasePage(filter, after, 10);
+
+        // Assert
+        assertEquals(List.of(summary), page);
+    }
+
+    @Test
+    void streamCases_ShouldReadFromCursor() {
+        // Arrange
+        CaseFilter filter = new CaseFilter();
+        Consumer<CaseSummary> action = item -> { };
+
+        // Act
+        caseService.streamCases(filter, null, action);
+
+        // Assert
+        verify(historyReader).forEach(filter, null, action);
+    }
 }
@@ -1,18 +1,29 @@
 package mine.dispatchcoordinationservice.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
 import mine.dispatchcoordinationservice.dto.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mine.dispatchcoordinationservice.geo.AmbulanceSpatialIndex;
+import mine.dispatchcoordinationservice.metrics.DispatchMetrics;
 import mine.dispatchcoordinationservice.model.Case;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -23,24 +34,26 @@ class DispatchServiceTest {
     @Mock
     private WebClient.Builder webClientBuilder;
 
-    @Mock
-    private WebClient webClient;
-
-    @Mock
-    private WebClient.RequestHeadersUriSpec requestHeadersUriSpec;
-
-    @Mock
-    private WebClient.RequestHeadersSpec requestHeadersSpec;
-
-    @Mock
-    private WebClient.ResponseSpec responseSpec;
-
     @Mock
     private CaseService caseService;
 
-    @InjectMocks
     private DispatchService dispatchService;
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Canned downstream responses keyed by request path
+    private final Map<String, Object> responses = new HashMap<>();
+    private final Map<String, Duration> delays = new HashMap<>();
+    private final Map<String, HttpStatus> statuses = new HashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+
+    private DispatchProperties properties;
+    private AmbulanceReservations reservations;
+    private HospitalCache hospitalCache;
+    private FleetReplica fleetReplica;
+    private SimpleMeterRegistry meterRegistry;
     private Hospital hospital;
     private Ambulance ambulance;
     private EmergencyRequest emergencyRequest;
@@ -50,11 +63,20 @@ class DispatchServiceTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
 
-        // Setup WebClient mock chain
-        when(webClientBuilder.build()).thenReturn(webClient);
-        when(webClient.get()).thenReturn(requestHeadersUriSpec);
-        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
-        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        // Setup WebClient backed by the canned responses
+        when(webClientBuilder.build()).thenReturn(WebClient.builder()
+                .exchangeFunction(request -> respond(request.url()))
+                .build());
+
+        properties = new DispatchProperties();
+        reservations = new AmbulanceReservations();
+        meterRegistry = new SimpleMeterRegistry();
+        hospitalCache = new HospitalCache(webClientBuilder, properties);
+        AmbulanceSpatialIndex ambulanceIndex = new AmbulanceSpatialIndex(properties);
+        fleetReplica = new FleetReplica(webClientBuilder, properties, ambulanceIndex);
+        dispatchService = new DispatchService(webClientBuilder, caseService, properties,
+                ambulanceIndex, reservations, new DispatchMetrics(meterRegistry), hospitalCache,
+                fleetReplica);
 
         // Setup test data
         hospital = new Hospital();
@@ -68,8 +90,6 @@ class DispatchServiceTest {
         ambulance.setLatitude(40.7128);
         ambulance.setLongitude(-74.0060);
 
-        hospital.setAmbulances(Collections.singletonList(ambulance));
-
         emergencyRequest = new EmergencyRequest();
         emergencyRequest.setLatitude(40.7589);
         emergencyRequest.setLongitude(-73.9851);
@@ -80,15 +100,77 @@ class DispatchServiceTest {
         routeResponse.setDistance(1000.0);
         routeResponse.setDuration(600.0);
         routeResponse.setStatus("SUCCESS");
+
+        responses.put("/routes", routeResponse);
+        responses.put("/api/ambulances/1/reserve", Collections.emptyMap());
+        responses.put("/api/ambulances/2/reserve", Collections.emptyMap());
+        responses.put("/api/ambulances/1/release", Collections.emptyMap());
+        responses.put("/api/ambulances/2/release", Collections.emptyMap());
+    }
+
+    private Mono<ClientResponse> respond(URI url) {
+        String path = url.getPath();
+        requestedPaths.add(path);
+        if ("/routes".equals(path) && url.getQuery() != null) {
+            // Per-origin routes, when a test registered one
+            String perOrigin = path + "?" + url.getQuery().split("&")[0];
+            if (responses.containsKey(perOrigin)) {
+                path = perOrigin;
+            }
+        }
+        if (statuses.containsKey(path)) {
+            return Mono.just(ClientResponse.create(statuses.get(path)).build());
+        }
+        Object body = responses.get(path);
+        if (body == null) {
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+        }
+        try {
+            ClientResponse response = ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(objectMapper.writeValueAsString(body))
+                    .build();
+            Mono<ClientResponse> delayed = Mono.just(response).delayElement(delays.getOrDefault(path, Duration.ZERO));
+            if (!path.startsWith("/hospitals/by-hospital/")) {
+                return delayed;
+            }
+            return delayed
+                    .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                    .doOnNext(released -> inFlight.decrementAndGet());
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private void givenHospitals(Hospital... hospitals) {
+        responses.put("/hospitals/search", Arrays.asList(hospitals));
+        responses.put("/hospitals/available-ambulances", Arrays.asList(hospitals));
+    }
+
+    private void givenAmbulances(Hospital owner, Ambulance... ambulances) {
+        owner.setAmbulances(Arrays.asList(ambulances));
+        responses.put("/hospitals/by-hospital/" + owner.getId(), Arrays.asList(ambulances));
+    }
+
+    private void givenRoute(Ambulance from, double duration, String geometry, Duration delay) {
+        RouteResponse route = new RouteResponse();
+        route.setStatus("SUCCESS");
+        route.setDuration(duration);
+        route.setDistance(1000.0);
+        route.setGeometry(geometry);
+        String key = "/routes?originLat=" + from.getLatitude();
+        responses.put(key, route);
+        delays.put(key, delay);
+    }
+
+    private void givenJoinedLookupUnavailable() {
+        responses.remove("/hospitals/available-ambulances");
     }
 
     @Test
     void handleEmergency_Success() {
-        // Mock hospital service response
-        List<Hospital> hospitals = Collections.singletonList(hospital);
-        when(responseSpec.bodyToMono(any(Class.class)))
-                .thenReturn(Mono.just(hospitals))
-                .thenReturn(Mono.just(routeResponse));
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
 
         // Mock case service
         Case savedCase = new Case();
@@ -96,24 +178,50 @@ class DispatchServiceTest {
         when(caseService.createCase(any())).thenReturn(savedCase);
 
         // Execute test
-        DispatchResult result = dispatchService.handleEmergency(emergencyRequest);
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
 
         // Verify
         assertNotNull(result);
         assertEquals("SUCCESS", result.getStatus());
         assertEquals(ambulance, result.getAssignedAmbulance());
-        assertEquals(hospital, result.getAssignedHospital());
+        assertEquals(hospital.getId(), result.getAssignedHospital().getId());
         assertEquals("test_geometry", result.getRoutePolyline());
+        verify(caseService).createCase(any());
+    }
+
+    @Test
+    void handleEmergency_RecordsEveryStep() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        dispatchService.handleEmergency(emergencyRequest).block();
+
+        for (String step : List.of("hospital_fetch", "ambulance_fanout", "selection", "route",
+                "availability_update", "case_save", "result_build")) {
+            assertEquals(1, meterRegistry.get("dispatch.step").tag("step", step).timer().count(), step);
+        }
+        assertEquals(1, meterRegistry.get("dispatch.emergency").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void handleEmergency_CountsFailureReasons() {
+        givenHospitals();
+
+        dispatchService.handleEmergency(emergencyRequest).block();
+        dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals(2, meterRegistry.get("dispatch.failures").tag("reason", "no_hospital").counter().count());
+        assertEquals(2, meterRegistry.get("dispatch.emergency").tag("outcome", "failure").timer().count());
     }
 
     @Test
     void handleEmergency_NoHospitalsFound() {
         // Mock empty hospital response
-        when(responseSpec.bodyToMono(any(Class.class)))
-                .thenReturn(Mono.just(Collections.emptyList()));
+        givenHospitals();
 
         // Execute test
-        DispatchResult result = dispatchService.handleEmergency(emergencyRequest);
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
 
         // Verify
         assertNotNull(result);
@@ -126,15 +234,11 @@ class DispatchServiceTest {
     void handleEmergency_NoAvailableAmbulances() {
         // Setup hospital with no available ambulances
         ambulance.setAvailable(false);
-        hospital.setAmbulances(Collections.singletonList(ambulance));
-        List<Hospital> hospitals = Collections.singletonList(hospital);
-
-        // Mock responses
-        when(responseSpec.bodyToMono(any(Class.class)))
-                .thenReturn(Mono.just(hospitals));
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
 
         // Execute test
-        DispatchResult result = dispatchService.handleEmergency(emergencyRequest);
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
 
         // Verify
         assertNotNull(result);
@@ -146,22 +250,168 @@ class DispatchServiceTest {
     @Test
     void handleEmergency_RouteOptimizationFailure() {
         // Mock successful hospital response but failed route response
-        List<Hospital> hospitals = Collections.singletonList(hospital);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
         RouteResponse failedRoute = new RouteResponse();
         failedRoute.setStatus("FAILURE");
-
-        when(responseSpec.bodyToMono(any(Class.class)))
-                .thenReturn(Mono.just(hospitals))
-                .thenReturn(Mono.just(failedRoute));
+        responses.put("/routes", failedRoute);
 
         // Execute test
-        DispatchResult result = dispatchService.handleEmergency(emergencyRequest);
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
 
         // Verify
         assertNotNull(result);
         assertEquals("FAILURE", result.getStatus());
         assertNull(result.getAssignedAmbulance());
         assertNull(result.getAssignedHospital());
+        verify(caseService, never()).createCase(any());
+    }
+
+    @Test
+    void handleEmergency_RouteTimeout() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        properties.getTimeouts().setRoute(Duration.ofMillis(50));
+        delays.put("/routes", Duration.ofSeconds(2));
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block(Duration.ofSeconds(1));
+
+        assertNotNull(result);
+        assertEquals("FAILURE", result.getStatus());
+        verify(caseService, never()).createCase(any());
+    }
+
+    @Test
+    void handleEmergency_CaseSaveTimeoutFailsAndReleasesAmbulance() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        properties.getTimeouts().setCaseSave(Duration.ofMillis(50));
+        when(caseService.createCase(any())).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return new Case();
+        });
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block(Duration.ofSeconds(1));
+
+        assertNotNull(result);
+        assertEquals("FAILURE", result.getStatus());
+        assertTrue(requestedPaths.contains("/api/ambulances/1/release"));
+        assertFalse(reservations.isClaimed(1));
+        assertEquals(1, meterRegistry.get("dispatch.failures").tag("reason", "case_save_timeout").counter().count());
+        assertEquals(1, meterRegistry.get("dispatch.emergency").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void handleEmergency_AvailabilityUpdateFailure() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        statuses.put("/api/ambulances/1/reserve", HttpStatus.INTERNAL_SERVER_ERROR);
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("FAILURE", result.getStatus());
+        verify(caseService, never()).createCase(any());
+        assertTrue(requestedPaths.contains("/api/ambulances/1/release"));
+        assertFalse(reservations.isClaimed(1));
+    }
+
+    @Test
+    void handleEmergency_ReserveTimeoutReleasesAmbulance() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        properties.getTimeouts().setAvailability(Duration.ofMillis(50));
+        delays.put("/api/ambulances/1/reserve", Duration.ofMillis(500));
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block(Duration.ofSeconds(1));
+
+        assertNotNull(result);
+        assertEquals("FAILURE", result.getStatus());
+        // The reserve may have gone through after the timeout fired
+        assertTrue(requestedPaths.contains("/api/ambulances/1/release"));
+        assertFalse(reservations.isClaimed(1));
+    }
+
+    @Test
+    void handleEmergency_CancelAfterReserveReleasesAmbulance() throws InterruptedException {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        delays.put("/routes", Duration.ofSeconds(2));
+
+        Disposable dispatch = dispatchService.handleEmergency(emergencyRequest).subscribe();
+        awaitRequest("/routes");
+        dispatch.dispose();
+
+        awaitRequest("/api/ambulances/1/release");
+        verify(caseService, never()).createCase(any());
+        for (int i = 0; i < 50 && reservations.isClaimed(1); i++) {
+            Thread.sleep(20);
+        }
+        assertFalse(reservations.isClaimed(1));
+    }
+
+    private void awaitRequest(String path) throws InterruptedException {
+        for (int i = 0; i < 50 && !requestedPaths.contains(path); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(requestedPaths.contains(path), "expected a request to " + path);
+    }
+
+    @Test
+    void handleEmergency_ReservationConflictMovesToNextCandidate() {
+        Ambulance nearest = new Ambulance();
+        nearest.setId(2);
+        nearest.setAvailable(true);
+        nearest.setLatitude(40.7580);
+        nearest.setLongitude(-73.9855);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, nearest);
+        statuses.put("/api/ambulances/2/reserve", HttpStatus.CONFLICT);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+        assertTrue(requestedPaths.contains("/api/ambulances/2/reserve"));
+        assertFalse(reservations.isClaimed(1));
+        assertFalse(reservations.isClaimed(2));
+    }
+
+    @Test
+    void handleEmergency_SkipsAmbulanceClaimedByConcurrentDispatch() {
+        Ambulance nearest = new Ambulance();
+        nearest.setId(2);
+        nearest.setAvailable(true);
+        nearest.setLatitude(40.7580);
+        nearest.setLongitude(-73.9855);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, nearest);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        reservations.tryClaim(2);
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals(1, result.getAssignedAmbulance().getId());
+        assertFalse(requestedPaths.contains("/api/ambulances/2/reserve"));
+    }
+
+    @Test
+    void handleEmergency_RouteFailureReleasesReservation() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        RouteResponse failedRoute = new RouteResponse();
+        failedRoute.setStatus("FAILURE");
+        responses.put("/routes", failedRoute);
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("FAILURE", result.getStatus());
+        assertTrue(requestedPaths.contains("/api/ambulances/1/release"));
+        assertFalse(reservations.isClaimed(1));
     }
 
     @Test
@@ -174,17 +424,12 @@ class DispatchServiceTest {
         Ambulance ambulance2 = new Ambulance();
         ambulance2.setId(2);
         ambulance2.setAvailable(true);
-        ambulance2.setLatitude(40.7);
-        ambulance2.setLongitude(-74.0);
+        ambulance2.setLatitude(40.7580);
+        ambulance2.setLongitude(-73.9855);
 
-        hospital2.setAmbulances(Collections.singletonList(ambulance2));
-
-        List<Hospital> hospitals = Arrays.asList(hospital, hospital2);
-
-        // Mock responses
-        when(responseSpec.bodyToMono(any(Class.class)))
-                .thenReturn(Mono.just(hospitals))
-                .thenReturn(Mono.just(routeResponse));
+        givenHospitals(hospital, hospital2);
+        givenAmbulances(hospital, ambulance);
+        givenAmbulances(hospital2, ambulance2);
 
         // Mock case service
         Case savedCase = new Case();
@@ -192,13 +437,396 @@ class DispatchServiceTest {
         when(caseService.createCase(any())).thenReturn(savedCase);
 
         // Execute test
-        DispatchResult result = dispatchService.handleEmergency(emergencyRequest);
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
 
-        // Verify
+        // Verify the ambulance closest to the emergency was picked
         assertNotNull(result);
         assertEquals("SUCCESS", result.getStatus());
-        assertNotNull(result.getAssignedAmbulance());
-        assertNotNull(result.getAssignedHospital());
+        assertEquals(2, result.getAssignedAmbulance().getId());
+        assertEquals(2L, result.getAssignedHospital().getId());
         assertEquals("test_geometry", result.getRoutePolyline());
     }
+
+    @Test
+    void handleEmergency_RouteAwarePicksFastestEta() {
+        properties.getSelection().setMode(DispatchProperties.Selection.Mode.ROUTE_AWARE);
+        Ambulance acrossTheRiver = new Ambulance();
+        acrossTheRiver.setId(2);
+        acrossTheRiver.setAvailable(true);
+        acrossTheRiver.setLatitude(40.7580);
+        acrossTheRiver.setLongitude(-73.9855);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, acrossTheRiver);
+        givenRoute(acrossTheRiver, 900.0, "slow_geometry", Duration.ZERO);
+        givenRoute(ambulance, 300.0, "fast_geometry", Duration.ZERO);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        // The straight-line farther unit wins on driving time, and its prefetched route is reused
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+        assertEquals("fast_geometry", result.getRoutePolyline());
+        assertEquals(2, requestedPaths.stream().filter("/routes"::equals).count());
+    }
+
+    @Test
+    void handleEmergency_RouteAwareFallsBackToNearestAfterEtaDeadline() {
+        properties.getSelection().setMode(DispatchProperties.Selection.Mode.ROUTE_AWARE);
+        properties.getSelection().setEtaDeadline(Duration.ofMillis(100));
+        Ambulance nearest = new Ambulance();
+        nearest.setId(2);
+        nearest.setAvailable(true);
+        nearest.setLatitude(40.7580);
+        nearest.setLongitude(-73.9855);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, nearest);
+        givenRoute(nearest, 900.0, "nearest_geometry", Duration.ZERO);
+        givenRoute(ambulance, 300.0, "fast_geometry", Duration.ofMillis(500));
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(2, result.getAssignedAmbulance().getId());
+        assertEquals("nearest_geometry", result.getRoutePolyline());
+    }
+
+    @Test
+    void handleEmergencies_AssignsToMinimiseTotalDistance() {
+        // Greedy would give ambulance 1 to the first emergency and send ambulance 2 across town for the second
+        ambulance.setLatitude(40.0);
+        ambulance.setLongitude(0.01);
+        Ambulance ambulance2 = new Ambulance();
+        ambulance2.setId(2);
+        ambulance2.setAvailable(true);
+        ambulance2.setLatitude(40.0);
+        ambulance2.setLongitude(-0.02);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, ambulance2);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        EmergencyRequest first = new EmergencyRequest();
+        first.setLatitude(40.0);
+        first.setLongitude(0.0);
+        first.setSpecialization("Cardiology");
+        EmergencyRequest second = new EmergencyRequest();
+        second.setLatitude(40.0);
+        second.setLongitude(0.03);
+        second.setSpecialization("Cardiology");
+
+        List<DispatchResult> results = dispatchService.handleEmergencies(List.of(first, second)).block();
+
+        assertNotNull(results);
+        assertEquals(2, results.size());
+        assertEquals(2, results.get(0).getAssignedAmbulance().getId());
+        assertEquals(1, results.get(1).getAssignedAmbulance().getId());
+        // Candidates are fetched once per specialization, not once per emergency
+        assertEquals(1, requestedPaths.stream().filter("/hospitals/search"::equals).count());
+    }
+
+    @Test
+    void handleEmergencies_MoreEmergenciesThanAmbulances() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        EmergencyRequest farther = new EmergencyRequest();
+        farther.setLatitude(40.8);
+        farther.setLongitude(-73.9);
+        farther.setSpecialization("Cardiology");
+
+        List<DispatchResult> results = dispatchService.handleEmergencies(List.of(farther, emergencyRequest)).block();
+
+        assertNotNull(results);
+        assertEquals("FAILURE", results.get(0).getStatus());
+        assertEquals("SUCCESS", results.get(1).getStatus());
+        assertEquals(1, results.get(1).getAssignedAmbulance().getId());
+    }
+
+    @Test
+    void handleEmergencies_ReservationConflictMovesToNextBestAmbulance() {
+        Ambulance nearest = new Ambulance();
+        nearest.setId(2);
+        nearest.setAvailable(true);
+        nearest.setLatitude(40.7580);
+        nearest.setLongitude(-73.9855);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance, nearest);
+        statuses.put("/api/ambulances/2/reserve", HttpStatus.CONFLICT);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        List<DispatchResult> results = dispatchService.handleEmergencies(List.of(emergencyRequest)).block();
+
+        assertNotNull(results);
+        assertEquals("SUCCESS", results.get(0).getStatus());
+        assertEquals(1, results.get(0).getAssignedAmbulance().getId());
+        assertTrue(requestedPaths.contains("/api/ambulances/2/reserve"));
+    }
+
+    @Test
+    void handleEmergencies_RecordsSelectionAndPerEmergencyOutcomes() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        EmergencyRequest farther = new EmergencyRequest();
+        farther.setLatitude(40.8);
+        farther.setLongitude(-73.9);
+        farther.setSpecialization("Cardiology");
+
+        dispatchService.handleEmergencies(List.of(farther, emergencyRequest)).block();
+
+        assertEquals(1, meterRegistry.get("dispatch.step").tag("step", "selection").timer().count());
+        assertEquals(1, meterRegistry.get("dispatch.emergency").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("dispatch.emergency").tag("outcome", "failure").timer().count());
+        assertEquals(1, meterRegistry.get("dispatch.failures").tag("reason", "unassigned").counter().count());
+    }
+
+    @Test
+    void handleEmergencies_AssignsOutsideRadiusWhenNothingCloser() {
+        properties.getSelection().setRadiusMeters(1000);
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        List<DispatchResult> results = dispatchService.handleEmergencies(List.of(emergencyRequest)).block();
+
+        assertNotNull(results);
+        assertEquals("SUCCESS", results.get(0).getStatus());
+        assertEquals(1, results.get(0).getAssignedAmbulance().getId());
+    }
+
+    @Test
+    void handleEmergency_SlowHospitalIsSkippedAfterFanoutDeadline() {
+        Hospital slowHospital = new Hospital();
+        slowHospital.setId(2L);
+        slowHospital.setSpecialization("Cardiology");
+
+        Ambulance closerAmbulance = new Ambulance();
+        closerAmbulance.setId(2);
+        closerAmbulance.setAvailable(true);
+        closerAmbulance.setLatitude(40.7580);
+        closerAmbulance.setLongitude(-73.9855);
+
+        givenHospitals(hospital, slowHospital);
+        givenAmbulances(hospital, ambulance);
+        givenAmbulances(slowHospital, closerAmbulance);
+        givenJoinedLookupUnavailable();
+        delays.put("/hospitals/by-hospital/2", Duration.ofSeconds(5));
+        properties.getFanout().setDeadline(Duration.ofMillis(200));
+
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block(Duration.ofSeconds(2));
+
+        // The closer ambulance never arrived, so the partial result is used
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+    }
+
+    @Test
+    void handleEmergency_FanoutRespectsConcurrencyLimit() {
+        List<Hospital> hospitals = new ArrayList<>();
+        for (long id = 1; id <= 6; id++) {
+            Hospital h = new Hospital();
+            h.setId(id);
+            h.setSpecialization("Cardiology");
+            hospitals.add(h);
+            givenAmbulances(h, ambulance);
+            delays.put("/hospitals/by-hospital/" + id, Duration.ofMillis(50));
+        }
+        givenHospitals(hospitals.toArray(new Hospital[0]));
+        givenJoinedLookupUnavailable();
+        properties.getFanout().setConcurrency(2);
+
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block(Duration.ofSeconds(5));
+
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertTrue(maxInFlight.get() <= 2, "at most two hospital lookups should run at once");
+    }
+
+    @Test
+    void handleEmergency_UsesJoinedLookupInsteadOfPerHospitalCalls() {
+        Hospital hospital2 = new Hospital();
+        hospital2.setId(2L);
+        hospital2.setSpecialization("Cardiology");
+
+        givenHospitals(hospital, hospital2);
+        givenAmbulances(hospital, ambulance);
+        givenAmbulances(hospital2);
+
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertTrue(requestedPaths.contains("/hospitals/available-ambulances"));
+        assertTrue(requestedPaths.stream().noneMatch(path -> path.startsWith("/hospitals/by-hospital/")));
+    }
+
+    @Test
+    void handleEmergency_FallsBackToPerHospitalLookups() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        givenJoinedLookupUnavailable();
+
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertNotNull(result);
+        assertEquals("SUCCESS", result.getStatus());
+        assertTrue(requestedPaths.contains("/hospitals/by-hospital/1"));
+    }
+
+    @Test
+    void handleEmergency_ReusesCachedHospitalsAcrossSpellings() {
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        dispatchService.handleEmergency(emergencyRequest).block();
+        emergencyRequest.setSpecialization(" cardiology ");
+        dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals(1, requestedPaths.stream().filter("/hospitals/search"::equals).count());
+    }
+
+    @Test
+    void handleEmergency_RefetchesHospitalsAfterInvalidation() {
+        givenHospitals();
+
+        DispatchResult before = dispatchService.handleEmergency(emergencyRequest).block();
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        hospitalCache.invalidate("CARDIOLOGY");
+        DispatchResult after = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals("FAILURE", before.getStatus());
+        assertEquals("SUCCESS", after.getStatus());
+        assertEquals(2, requestedPaths.stream().filter("/hospitals/search"::equals).count());
+    }
+
+    @Test
+    void handleEmergency_DoesNotCacheFailedHospitalLookup() {
+        statuses.put("/hospitals/search", HttpStatus.SERVICE_UNAVAILABLE);
+
+        DispatchResult failed = dispatchService.handleEmergency(emergencyRequest).block();
+        statuses.remove("/hospitals/search");
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        DispatchResult recovered = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals("FAILURE", failed.getStatus());
+        assertEquals("SUCCESS", recovered.getStatus());
+    }
+
+    @Test
+    void handleEmergency_UsesLiveReplicaInsteadOfRemoteLookups() {
+        hospital.setAmbulanceIds(List.of(1, 2));
+        givenHospitals(hospital);
+        Ambulance busy = new Ambulance();
+        busy.setId(2);
+        busy.setAvailable(false);
+        busy.setLatitude(40.7580);
+        busy.setLongitude(-73.9855);
+        givenReplica(ambulance, busy);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+        assertFalse(requestedPaths.contains("/hospitals/available-ambulances"));
+        assertTrue(requestedPaths.stream().noneMatch(path -> path.startsWith("/hospitals/by-hospital/")));
+    }
+
+    @Test
+    void handleEmergency_IgnoresAmbulancesOfHospitalsWithOtherSpecialities() {
+        Hospital neurology = mixedSpecialityFleet();
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+        assertEquals(hospital.getId(), result.getAssignedHospital().getId());
+        assertNotEquals(neurology.getId(), result.getAssignedHospital().getId());
+    }
+
+    @Test
+    void handleEmergencies_IgnoresAmbulancesOfHospitalsWithOtherSpecialities() {
+        mixedSpecialityFleet();
+
+        List<DispatchResult> results = dispatchService.handleEmergencies(List.of(emergencyRequest)).block();
+
+        assertNotNull(results);
+        assertEquals("SUCCESS", results.get(0).getStatus());
+        assertEquals(1, results.get(0).getAssignedAmbulance().getId());
+    }
+
+    /**
+     * A cardiology hospital with a far ambulance and a neurology hospital, listed alongside it as an
+     * unfiltered upstream would, whose ambulance is right next to the emergency.
+     */
+    private Hospital mixedSpecialityFleet() {
+        Hospital neurology = new Hospital();
+        neurology.setId(2L);
+        neurology.setSpecialization("Neurology");
+        Ambulance nextDoor = new Ambulance();
+        nextDoor.setId(2);
+        nextDoor.setAvailable(true);
+        nextDoor.setLatitude(40.7588);
+        nextDoor.setLongitude(-73.9850);
+        hospital.setAmbulanceIds(List.of(1));
+        neurology.setAmbulanceIds(List.of(2));
+        givenHospitals(hospital, neurology);
+        givenReplica(ambulance, nextDoor);
+        when(caseService.createCase(any())).thenReturn(new Case());
+        return neurology;
+    }
+
+    @Test
+    void handleEmergency_WidensSearchWhenNoAmbulanceInsideRadius() {
+        properties.getSelection().setRadiusMeters(1000);
+        hospital.setAmbulanceIds(List.of(1));
+        givenHospitals(hospital);
+        givenReplica(ambulance);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        // About 5.5 km away, well outside the radius, but still the nearest ambulance there is
+        assertEquals("SUCCESS", result.getStatus());
+        assertEquals(1, result.getAssignedAmbulance().getId());
+    }
+
+    @Test
+    void handleEmergency_FallsBackToRemoteLookupsWhenReplicaIsStale() {
+        hospital.setAmbulanceIds(List.of(1));
+        givenHospitals(hospital);
+        givenAmbulances(hospital, ambulance);
+        givenReplica(ambulance);
+        properties.getReplica().setStaleAfter(Duration.ZERO);
+        when(caseService.createCase(any())).thenReturn(new Case());
+
+        DispatchResult result = dispatchService.handleEmergency(emergencyRequest).block();
+
+        assertEquals("SUCCESS", result.getStatus());
+        assertTrue(requestedPaths.contains("/hospitals/available-ambulances"));
+    }
+
+    private void givenReplica(Ambulance... ambulances) {
+        FleetSnapshot snapshot = new FleetSnapshot();
+        snapshot.setCursor(1);
+        snapshot.setAmbulances(Arrays.asList(ambulances));
+        fleetReplica.applySnapshot(snapshot);
+    }
 }
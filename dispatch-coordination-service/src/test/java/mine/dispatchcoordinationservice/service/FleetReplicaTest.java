@@ -0,0 +1,180 @@
+package mine.dispatchcoordinationservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import mine.dispatchcoordinationservice.dto.Ambulance;
+import mine.dispatchcoordinationservice.dto.AmbulanceChange;
+import mine.dispatchcoordinationservice.dto.AmbulanceChangeBatch;
+import mine.dispatchcoordinationservice.dto.FleetSnapshot;
+import mine.dispatchcoordinationservice.geo.AmbulanceSpatialIndex;
+import mine.dispatchcoordinationservice.geo.Neighbor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FleetReplicaTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Responses served in order per request path; the last one repeats
+    private final Map<String, Deque<Object>> responses = new HashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private DispatchProperties properties;
+    private AmbulanceSpatialIndex index;
+    private FleetReplica replica;
+
+    @BeforeEach
+    void setUp() {
+        WebClient.Builder webClientBuilder = mock(WebClient.Builder.class);
+        when(webClientBuilder.build()).thenReturn(WebClient.builder()
+                .exchangeFunction(request -> respond(request.url()))
+                .build());
+
+        properties = new DispatchProperties();
+        properties.getReplica().setRetryBackoff(Duration.ofMillis(1));
+        properties.getReplica().setMaxBackoff(Duration.ofMillis(5));
+        index = new AmbulanceSpatialIndex(properties);
+        replica = new FleetReplica(webClientBuilder, properties, index);
+    }
+
+    private Mono<ClientResponse> respond(URI url) {
+        String key = url.getQuery() == null ? url.getPath() : url.getPath() + "?" + url.getQuery().split("&")[0];
+        requests.add(key);
+        Deque<Object> queue = responses.get(key);
+        if (queue == null || queue.isEmpty()) {
+            // Nothing new: hold the long poll open
+            return Mono.never();
+        }
+        Object body = queue.size() > 1 ? queue.poll() : queue.peek();
+        if (body instanceof HttpStatus) {
+            return Mono.just(ClientResponse.create((HttpStatus) body).build());
+        }
+        try {
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(objectMapper.writeValueAsString(body))
+                    .build());
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private void given(String key, Object... bodies) {
+        responses.put(key, new ArrayDeque<>(Arrays.asList(bodies)));
+    }
+
+    @Test
+    void sync_AppliesSnapshotThenChanges() {
+        given("/api/ambulances/changes/snapshot", snapshot(5, ambulance(1, true, 31.63, -8.00), ambulance(2, true, 31.64, -8.01)));
+        given("/api/ambulances/changes?since=5", batch(7,
+                change(6, 1, null, null, false, false),
+                change(7, 2, null, null, null, true)));
+
+        List<Long> cursors = replica.sync().take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of(5L, 7L), cursors);
+        assertTrue(replica.isLive());
+        assertFalse(replica.get(1).isAvailable());
+        assertEquals(31.63, replica.get(1).getLatitude());
+        assertNull(replica.get(2));
+    }
+
+    @Test
+    void sync_ReloadsSnapshotWhenCursorExpires() {
+        given("/api/ambulances/changes/snapshot",
+                snapshot(5, ambulance(1, true, 31.63, -8.00)),
+                snapshot(40, ambulance(1, false, 31.70, -8.10), ambulance(3, true, 31.65, -8.02)));
+        given("/api/ambulances/changes?since=5", HttpStatus.GONE);
+
+        List<Long> cursors = replica.sync().take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of(5L, 40L), cursors);
+        assertEquals(2, requests.stream().filter("/api/ambulances/changes/snapshot"::equals).count());
+        assertEquals(2, replica.size());
+        assertEquals(31.70, replica.get(1).getLatitude());
+        assertTrue(replica.isLive());
+    }
+
+    @Test
+    void apply_KeepsSpatialIndexToAvailableAmbulances() {
+        replica.applySnapshot(snapshot(1, ambulance(1, true, 31.63, -8.00), ambulance(2, true, 31.64, -8.01),
+                ambulance(3, false, 31.63, -8.00)));
+        assertEquals(List.of(1, 2), nearestIds());
+
+        replica.applyChanges(batch(3,
+                change(2, 1, null, null, false, false),
+                change(3, 3, null, null, true, false)));
+        assertEquals(List.of(3, 2), nearestIds());
+
+        replica.applySnapshot(snapshot(9, ambulance(2, true, 31.64, -8.01)));
+        assertEquals(List.of(2), nearestIds());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void isLive_FalseUntilSnapshotAndAfterSilence() {
+        assertFalse(replica.isLive());
+
+        replica.applySnapshot(snapshot(1, ambulance(1, true, 31.63, -8.00)));
+        assertTrue(replica.isLive());
+
+        properties.getReplica().setStaleAfter(Duration.ZERO);
+        assertFalse(replica.isLive());
+    }
+
+    private List<Integer> nearestIds() {
+        return index.nearest(31.63, -8.00, 10, 10_000, id -> true).stream()
+                .map(Neighbor::getAmbulanceId)
+                .collect(java.util.stream.Collectors.toList());
+    }
+
+    private static Ambulance ambulance(int id, boolean available, double latitude, double longitude) {
+        Ambulance ambulance = new Ambulance();
+        ambulance.setId(id);
+        ambulance.setAvailable(available);
+        ambulance.setLatitude(latitude);
+        ambulance.setLongitude(longitude);
+        return ambulance;
+    }
+
+    private static FleetSnapshot snapshot(long cursor, Ambulance... ambulances) {
+        FleetSnapshot snapshot = new FleetSnapshot();
+        snapshot.setCursor(cursor);
+        snapshot.setAmbulances(Arrays.asList(ambulances));
+        return snapshot;
+    }
+
+    private static AmbulanceChangeBatch batch(long cursor, AmbulanceChange... changes) {
+        AmbulanceChangeBatch batch = new AmbulanceChangeBatch();
+        batch.setCursor(cursor);
+        batch.setChanges(Arrays.asList(changes));
+        return batch;
+    }
+
+    private static AmbulanceChange change(long sequence, long ambulanceId, Double latitude, Double longitude,
+                                          Boolean available, boolean removed) {
+        AmbulanceChange change = new AmbulanceChange();
+        change.setSequence(sequence);
+        change.setAmbulanceId(ambulanceId);
+        change.setLatitude(latitude);
+        change.setLongitude(longitude);
+        change.setAvailable(available);
+        change.setRemoved(removed);
+        return change;
+    }
+}
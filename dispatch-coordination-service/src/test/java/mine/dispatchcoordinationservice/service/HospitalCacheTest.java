@@ -0,0 +1,78 @@
+package mine.dispatchcoordinationservice.service;
+
+import mine.dispatchcoordinationservice.config.DispatchProperties;
+import mine.dispatchcoordinationservice.dto.Hospital;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HospitalCacheTest {
+
+    private final List<URI> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private HospitalCache hospitalCache;
+
+    @BeforeEach
+    void setUp() {
+        WebClient.Builder webClientBuilder = mock(WebClient.Builder.class);
+        when(webClientBuilder.build()).thenReturn(WebClient.builder()
+                .exchangeFunction(request -> respond(request.url()))
+                .build());
+        hospitalCache = new HospitalCache(webClientBuilder, new DispatchProperties());
+    }
+
+    private Mono<ClientResponse> respond(URI url) {
+        requests.add(url);
+        if (!"/hospitals/search".equals(url.getPath())) {
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+        }
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body("[{\"id\":1,\"name\":\"Ibn Tofail\",\"speciality\":\"cardiology\",\"ambulanceIds\":[3]}]")
+                .build());
+    }
+
+    @Test
+    void get_LoadsFromSearchEndpointWithNormalizedSpeciality() {
+        List<Hospital> hospitals = hospitalCache.get(" Cardiology ").block();
+
+        assertNotNull(hospitals);
+        assertEquals(1, hospitals.size());
+        assertEquals("cardiology", hospitals.get(0).getSpecialization());
+        assertEquals(List.of(3), hospitals.get(0).getAmbulanceIds());
+        assertEquals(1, requests.size());
+        assertEquals("/hospitals/search", requests.get(0).getPath());
+        assertEquals("speciality=cardiology", requests.get(0).getQuery());
+    }
+
+    @Test
+    void get_ServesRepeatedLookupsFromCache() {
+        hospitalCache.get("cardiology").block();
+        hospitalCache.get("CARDIOLOGY").block();
+
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void invalidate_ForcesReload() {
+        hospitalCache.get("cardiology").block();
+        hospitalCache.invalidate("Cardiology");
+        hospitalCache.get("cardiology").block();
+
+        assertEquals(2, requests.size());
+    }
+}
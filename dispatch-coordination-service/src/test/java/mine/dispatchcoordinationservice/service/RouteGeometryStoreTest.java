@@ -0,0 +1,87 @@
+package mine.dispatchcoordinationservice.service;
+
+import mine.dispatchcoordinationservice.model.RouteGeometry;
+import mine.dispatchcoordinationservice.repository.RouteGeometryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RouteGeometryStoreTest {
+
+    // A realistic encoded polyline repeats a lot, which is what the compression is for
+    private static final String GEOMETRY = "_p~iF~ps|U_ulLnnqC_mqNvxq`@".repeat(40);
+
+    @Mock
+    private RouteGeometryRepository repository;
+
+    private RouteGeometryStore store;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        store = new RouteGeometryStore(repository);
+    }
+
+    @Test
+    void store_ShouldSaveCompressedGeometryUnderItsHash() {
+        // Arrange
+        when(repository.existsById(any())).thenReturn(false);
+        ArgumentCaptor<RouteGeometry> saved = ArgumentCaptor.forClass(RouteGeometry.class);
+
+        // Act
+        String hash = store.store(GEOMETRY);
+
+        // Assert
+        verify(repository).saveAndFlush(saved.capture());
+        assertEquals(64, hash.length());
+        assertEquals(hash, saved.getValue().getHash());
+        assertTrue(saved.getValue().getData().length < GEOMETRY.length() / 4);
+        assertEquals(GEOMETRY, new String(RouteGeometryStore.decompress(saved.getValue().getData()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void store_WhenAlreadyStored_ShouldNotSaveAgain() {
+        // Arrange
+        when(repository.existsById(any())).thenReturn(true);
+
+        // Act
+        String hash = store.store(GEOMETRY);
+
+        // Assert
+        assertEquals(RouteGeometryStore.hash(GEOMETRY.getBytes(StandardCharsets.UTF_8)), hash);
+        verify(repository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void store_WhenStoredConcurrently_ShouldFailSoCallerCanRetry() {
+        // Arrange
+        when(repository.existsById(any())).thenReturn(false);
+        when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () -> store.store(GEOMETRY));
+    }
+
+    @Test
+    void load_ShouldReturnDecompressedGeometry() {
+        // Arrange
+        byte[] data = RouteGeometryStore.compress(GEOMETRY.getBytes(StandardCharsets.UTF_8));
+        when(repository.findById("abc123")).thenReturn(Optional.of(new RouteGeometry("abc123", data)));
+
+        // Act
+        Optional<String> geometry = store.load("abc123");
+
+        // Assert
+        assertEquals(Optional.of(GEOMETRY), geometry);
+    }
+}
@@ -2,6 +2,7 @@ package mine.hospital_service.config;
 
 import mine.hospital_service.model.Hospital;
 import mine.hospital_service.repository.HospitalRepository;
+import mine.hospital_service.service.HospitalService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,7 +13,7 @@ import java.util.Arrays;
 public class DataInitializer {
 
     @Bean
-    public CommandLineRunner initializeDatabase(HospitalRepository hospitalRepository) {
+    public CommandLineRunner initializeDatabase(HospitalRepository hospitalRepository, HospitalService hospitalService) {
         return args -> {
             // Predefined hospital data for Marrakech
             Hospital hospital1 = new Hospital();
@@ -43,8 +44,8 @@ public class DataInitializer {
             hospital3.setSpeciality("Pediatrics");
             hospital3.setAmbulanceIds(Arrays.asList(3));
 
-            // Save to database
-            hospitalRepository.saveAll(Arrays.asList(hospital1, hospital2, hospital3));
+            // Save through the service so the seeds are stamped with change numbers like any other write
+            Arrays.asList(hospital1, hospital2, hospital3).forEach(hospitalService::createHospital);
 
             // Retrieve hospitals in Marrakech and print them
             System.out.println("Hospitals in Marrakech:");
@@ -1,31 +1,162 @@
 package mine.hospital_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import mine.hospital_service.dto.AmbulanceDTO;
+import mine.hospital_service.dto.HospitalAmbulancesDTO;
+import mine.hospital_service.dto.HospitalChanges;
 import mine.hospital_service.model.Hospital;
+import mine.hospital_service.repository.HospitalFields;
 import mine.hospital_service.service.HospitalService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/hospitals")
 public class HospitalController {
 
+    private static final int MAX_PAGE = 1000;
+    private static final int DEFAULT_PAGE = 100;
+
     private final HospitalService hospitalService;
+    private final ObjectMapper objectMapper;
 
-    public HospitalController(HospitalService hospitalService) {
+    public HospitalController(HospitalService hospitalService, ObjectMapper objectMapper) {
         this.hospitalService = hospitalService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * All hospitals, or with {@code limit} (or {@code after}) one keyset page in id order plus a
+     * {@code Link: rel="next"} header while pages come back full. With {@code fields}, e.g.
+     * {@code fields=name,latitude,longitude,available}, each hospital carries only those fields and its id, and
+     * only those columns are read. The weak ETag is the last hospital change number committed by any instance
+     * together with the query, so an unchanged poll with If-None-Match gets a 304 from a single-row read.
+     */
     @GetMapping
-    public ResponseEntity<List<Hospital>> getAllHospitals() {
-        return ResponseEntity.ok(hospitalService.getAllHospitals());
+    public ResponseEntity<List<?>> getAllHospitals(@RequestParam(required = false) Integer after,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String fields,
+                                                   WebRequest request) {
+        // Taken before the read, so a change racing the read makes the next poll miss rather than a stale hit
+        String eTag = listETag(request, MediaType.APPLICATION_JSON);
+        if (request.checkNotModified(eTag)) {
+            // The 304 status and ETag are already on the response
+            return null;
+        }
+        Set<String> selected = parseFields(fields);
+        if (fields != null && selected == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit == null && after == null) {
+            return ResponseEntity.ok().eTag(eTag).body(selected != null
+                    ? hospitalService.getHospitalFields(selected, null, null)
+                    : hospitalService.getAllHospitals());
+        }
+        int pageSize = limit != null ? limit : DEFAULT_PAGE;
+        if (pageSize <= 0 || pageSize > MAX_PAGE) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<?> page;
+        Integer last = null;
+        if (selected != null) {
+            List<Map<String, Object>> rows = hospitalService.getHospitalFields(selected, after, pageSize);
+            if (!rows.isEmpty()) {
+                last = (Integer) rows.get(rows.size() - 1).get(HospitalFields.ID);
+            }
+            page = rows;
+        } else {
+            List<Hospital> hospitals = hospitalService.getHospitalPage(after, pageSize);
+            if (!hospitals.isEmpty()) {
+                last = hospitals.get(hospitals.size() - 1).getId();
+            }
+            page = hospitals;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+        if (page.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", last)
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+
+    /**
+     * The same listing as newline-delimited JSON, one hospital per line, written page by page as it is read.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllHospitals(@RequestParam(required = false) Integer after,
+                                                                    @RequestParam(required = false) String fields,
+                                                                    WebRequest request) {
+        String eTag = listETag(request, MediaType.APPLICATION_NDJSON);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        Set<String> selected = parseFields(fields);
+        if (fields != null && selected == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            Consumer<Object> writeLine = hospital -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(hospital));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (selected != null) {
+                hospitalService.streamHospitalFields(selected, after, writeLine::accept);
+            } else {
+                hospitalService.streamHospitals(after, writeLine::accept);
+            }
+        };
+        return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Hospitals created, updated or deleted after the {@code since} cursor (0 for all), oldest change first,
+     * with the cursor to poll from next. A full batch means more are waiting. The weak ETag is the cursor and
+     * batch size with the last change number committed by any instance, so a repeated poll with If-None-Match
+     * gets a 304 from a single-row read until some hospital changes.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<HospitalChanges> getChanges(@RequestParam long since,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      WebRequest request) {
+        int batchSize = limit != null ? limit : MAX_PAGE;
+        if (since < 0 || batchSize <= 0 || batchSize > MAX_PAGE) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Taken before the read, so a change racing the read makes the next poll miss rather than a stale hit
+        String eTag = "W/\"" + since + "-" + batchSize + "-" + hospitalService.getLatestChange() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(hospitalService.getChangesSince(since, batchSize));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Hospital> getHospitalById(@PathVariable Long id) {
+    public ResponseEntity<Hospital> getHospitalById(@PathVariable Integer id) {
         return hospitalService.getHospitalById(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -43,27 +174,27 @@ public class HospitalController {
 
 
     @PutMapping("/{id}")
-    public ResponseEntity<Hospital> updateHospital(@PathVariable Long id, @RequestBody Hospital updatedHospital) {
+    public ResponseEntity<Hospital> updateHospital(@PathVariable Integer id, @RequestBody Hospital updatedHospital) {
         return hospitalService.updateHospital(id, updatedHospital)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteHospital(@PathVariable Long id) {
+    public ResponseEntity<Void> deleteHospital(@PathVariable Integer id) {
         boolean deleted = hospitalService.deleteHospital(id);
         return deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
     @PostMapping("/{id}/ambulances/{ambulanceId}")
-    public ResponseEntity<Hospital> addAmbulanceToHospital(@PathVariable Long id, @PathVariable Integer ambulanceId) {
+    public ResponseEntity<Hospital> addAmbulanceToHospital(@PathVariable Integer id, @PathVariable Integer ambulanceId) {
         return hospitalService.addAmbulanceToHospital(id, ambulanceId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}/ambulances/{ambulanceId}")
-    public ResponseEntity<Hospital> removeAmbulanceFromHospital(@PathVariable Long id, @PathVariable Integer ambulanceId) {
+    public ResponseEntity<Hospital> removeAmbulanceFromHospital(@PathVariable Integer id, @PathVariable Integer ambulanceId) {
         return hospitalService.removeAmbulanceFromHospital(id, ambulanceId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -79,8 +210,13 @@ public class HospitalController {
     public ResponseEntity<List<Hospital>> getHospitalsBySpeciality(@RequestParam String speciality) {
         return ResponseEntity.ok(hospitalService.findBySpeciality(speciality));
     }
+    @GetMapping(value = "/available-ambulances", produces = "application/json")
+    public ResponseEntity<List<HospitalAmbulancesDTO>> getHospitalsWithAvailableAmbulances(@RequestParam String speciality) {
+        return ResponseEntity.ok(hospitalService.findHospitalsWithAvailableAmbulances(speciality));
+    }
+
     @GetMapping(value = "/{id}/ambulances", produces = "application/json")
-    public ResponseEntity<Map<Integer, Object>> getAmbulancesByHospital(@PathVariable Long hospitalId) {
+    public ResponseEntity<Map<Integer, Object>> getAmbulancesByHospital(@PathVariable("id") Integer hospitalId) {
         Map<Integer, Object> ambulances = hospitalService.findByAmbulanceIds(hospitalId);
         return ResponseEntity.ok(ambulances);
     }
@@ -89,4 +225,36 @@ public class HospitalController {
     public ResponseEntity<Set<String>> getAllSpecialities() {
         return ResponseEntity.ok(new HashSet<>(hospitalService.getAllSpecialities()));
     }
+
+    private static Set<String> parseFields(String fields) {
+        if (fields == null) {
+            return null;
+        }
+        try {
+            return HospitalFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String listETag(WebRequest request, MediaType representation) {
+        // JSON and NDJSON come from the same URL, told apart by Accept
+        if (request instanceof NativeWebRequest nativeRequest
+                && nativeRequest.getNativeResponse() instanceof HttpServletResponse response) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return "W/\"" + hospitalService.getLatestChange() + "-" + representation.getSubtype() + "-" + queryDigest() + "\"";
+    }
+
+    private static String queryDigest() {
+        String query = ServletUriComponentsBuilder.fromCurrentRequest().build().getQuery();
+        // Parameters are sorted first; a reordered query is the same listing
+        String normalized = query == null ? "" : Arrays.stream(query.split("&")).sorted().collect(Collectors.joining("&"));
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
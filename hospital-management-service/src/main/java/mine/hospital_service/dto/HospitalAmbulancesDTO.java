@@ -0,0 +1,62 @@
+package mine.hospital_service.dto;
+
+import java.util.List;
+
+public class HospitalAmbulancesDTO {
+    private Integer id;
+    private String name;
+    private Double latitude;
+    private Double longitude;
+    private String speciality;
+    private List<AmbulanceDTO> ambulances;
+
+    public HospitalAmbulancesDTO() {}
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    public String getSpeciality() {
+        return speciality;
+    }
+
+    public void setSpeciality(String speciality) {
+        this.speciality = speciality;
+    }
+
+    public List<AmbulanceDTO> getAmbulances() {
+        return ambulances;
+    }
+
+    public void setAmbulances(List<AmbulanceDTO> ambulances) {
+        this.ambulances = ambulances;
+    }
+}
@@ -0,0 +1,21 @@
+package mine.hospital_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import mine.hospital_service.model.Hospital;
+
+import java.util.List;
+
+/**
+ * Hospitals created or updated after a cursor, ids of hospitals deleted after it, and the cursor to pass as
+ * {@code since} next time.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HospitalChanges {
+    private long cursor;
+    private List<Hospital> items;
+    private List<Integer> deleted;
+}
@@ -0,0 +1,36 @@
+package mine.hospital_service.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Tells dispatch-coordination-service to drop its cached hospitals for the affected specialities. Fire and
+ * forget: if dispatch is unreachable, its cache TTL bounds how long it serves the old list.
+ */
+@Component
+public class DispatchCacheNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchCacheNotifier.class);
+
+    private final WebClient webClient;
+
+    public DispatchCacheNotifier(WebClient.Builder webClientBuilder) {
+        this.webClient = webClientBuilder.clone().baseUrl("http://dispatch-coordination-service").build();
+    }
+
+    @EventListener
+    public void onHospitalChanged(HospitalChangedEvent event) {
+        for (String speciality : event.getSpecialities()) {
+            webClient.post()
+                    .uri("/dispatch/cache/hospitals/invalidate?speciality={speciality}", speciality)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .subscribe(
+                            response -> { },
+                            e -> log.warn("Error invalidating dispatch hospital cache for {}: {}", speciality, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package mine.hospital_service.event;
+
+import java.util.Set;
+
+/**
+ * Published when a hospital is created, updated or deleted, or its ambulances change. Carries every
+ * speciality whose hospital list may have changed (both the old and the new one when an update moves a
+ * hospital).
+ */
+public class HospitalChangedEvent {
+
+    private final Set<String> specialities;
+
+    public HospitalChangedEvent(Set<String> specialities) {
+        this.specialities = specialities;
+    }
+
+    public Set<String> getSpecialities() {
+        return specialities;
+    }
+}
@@ -0,0 +1,33 @@
+package mine.hospital_service.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A named counter behind {@link mine.hospital_service.service.ChangeSequencer}.
+ */
+@Entity
+@Table(name = "change_sequences")
+public class ChangeSequence {
+
+    @Id
+    @Column(length = 32)
+    private String name;
+
+    @Column(name = "current_value", nullable = false)
+    private long currentValue;
+
+    protected ChangeSequence() {
+    }
+
+    public ChangeSequence(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCurrentValue() {
+        return currentValue;
+    }
+}
@@ -1,12 +1,13 @@
 package mine.hospital_service.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.util.List;
 
 @Entity
 @Data
-@Table(name = "hospitals")
+@Table(name = "hospitals", indexes = @Index(name = "idx_hospitals_change_seq", columnList = "change_seq"))
 public class Hospital {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -35,6 +36,11 @@ public class Hospital {
     @Column(name = "ambulance_id")
     private List<Integer> ambulanceIds; // Store ambulance IDs
 
+    // Set from the hospital change sequence on every write; null for hospitals not written since it was added
+    @Column(name = "change_seq")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long changeSeq;
+
     public Integer getId() {
         return id;
     }
@@ -98,4 +104,12 @@ public class Hospital {
     public void setSpeciality(String speciality) {
         this.speciality = speciality;
     }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
 }
@@ -0,0 +1,34 @@
+package mine.hospital_service.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Tombstone of a deleted hospital, so change pollers learn about deletions too.
+ */
+@Entity
+@Table(name = "hospital_deletions", indexes = @Index(name = "idx_hospital_deletions_change_seq", columnList = "change_seq"))
+public class HospitalDeletion {
+
+    @Id
+    @Column(name = "hospital_id")
+    private Integer hospitalId;
+
+    @Column(name = "change_seq", nullable = false)
+    private long changeSeq;
+
+    protected HospitalDeletion() {
+    }
+
+    public HospitalDeletion(Integer hospitalId, long changeSeq) {
+        this.hospitalId = hospitalId;
+        this.changeSeq = changeSeq;
+    }
+
+    public Integer getHospitalId() {
+        return hospitalId;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+}
@@ -0,0 +1,20 @@
+package mine.hospital_service.repository;
+
+import mine.hospital_service.model.ChangeSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChangeSequenceRepository extends JpaRepository<ChangeSequence, String> {
+
+    // The row lock taken here is held until the transaction ends
+    @Modifying
+    @Query("UPDATE ChangeSequence s SET s.currentValue = s.currentValue + 1 WHERE s.name = :name")
+    int increment(@Param("name") String name);
+
+    @Query("SELECT s.currentValue FROM ChangeSequence s WHERE s.name = :name")
+    long currentValue(@Param("name") String name);
+}
@@ -0,0 +1,11 @@
+package mine.hospital_service.repository;
+
+/**
+ * Projection of a hospital onto its key and change number, for finding what changed without loading it.
+ */
+public interface ChangedHospital {
+
+    Integer getId();
+
+    Long getChangeSeq();
+}
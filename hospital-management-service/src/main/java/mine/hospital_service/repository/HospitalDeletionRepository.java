@@ -0,0 +1,14 @@
+package mine.hospital_service.repository;
+
+import mine.hospital_service.model.HospitalDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HospitalDeletionRepository extends JpaRepository<HospitalDeletion, Integer> {
+
+    List<HospitalDeletion> findByChangeSeqGreaterThanOrderByChangeSeqAsc(long since, Pageable pageable);
+}
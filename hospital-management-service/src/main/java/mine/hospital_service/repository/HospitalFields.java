@@ -0,0 +1,42 @@
+package mine.hospital_service.repository;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The hospital properties a client can ask for with {@code fields=}. The id is always returned, since it is
+ * what the next page starts after.
+ */
+public final class HospitalFields {
+
+    public static final String ID = "id";
+    public static final String AMBULANCE_IDS = "ambulanceIds";
+
+    private static final List<String> SELECTABLE =
+            List.of(ID, "name", "latitude", "longitude", "available", "address", "speciality", "changeSeq", AMBULANCE_IDS);
+
+    private HospitalFields() {
+    }
+
+    /**
+     * Parses a comma-separated field list into the fields to select, id first.
+     *
+     * @throws IllegalArgumentException on a field hospitals do not have
+     */
+    public static Set<String> parse(String fields) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add(ID);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!SELECTABLE.contains(name)) {
+                throw new IllegalArgumentException("Unknown hospital field: " + name);
+            }
+            selected.add(name);
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,18 @@
+package mine.hospital_service.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse reads of hospitals: only the requested columns are selected, and the ambulance id collection is only
+ * loaded, for the whole page in one query, when it is asked for.
+ */
+public interface HospitalFieldsRepository {
+
+    /**
+     * Hospitals with an id above {@code after} in id order, at most {@code limit} of them (null for all), as
+     * maps of the requested fields in the order given.
+     */
+    List<Map<String, Object>> findFields(Set<String> fields, int after, Integer limit);
+}
@@ -0,0 +1,70 @@
+package mine.hospital_service.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import mine.hospital_service.model.Hospital;
+
+import java.util.*;
+
+// Picked up by Spring Data as the implementation of HospitalFieldsRepository on HospitalRepository
+class HospitalFieldsRepositoryImpl implements HospitalFieldsRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFields(Set<String> fields, int after, Integer limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Hospital> hospital = query.from(Hospital.class);
+        List<Selection<?>> columns = new ArrayList<>();
+        for (String field : fields) {
+            if (!field.equals(HospitalFields.AMBULANCE_IDS)) {
+                columns.add(hospital.get(field).alias(field));
+            }
+        }
+        query.multiselect(columns)
+                .where(builder.greaterThan(hospital.get(HospitalFields.ID), after))
+                .orderBy(builder.asc(hospital.get(HospitalFields.ID)));
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (limit != null) {
+            typed.setMaxResults(limit);
+        }
+
+        Map<Integer, Map<String, Object>> rows = new LinkedHashMap<>();
+        for (Tuple tuple : typed.getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            rows.put((Integer) row.get(HospitalFields.ID), row);
+        }
+        if (fields.contains(HospitalFields.AMBULANCE_IDS) && !rows.isEmpty()) {
+            loadAmbulanceIds(rows);
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    private void loadAmbulanceIds(Map<Integer, Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows.values()) {
+            row.put(HospitalFields.AMBULANCE_IDS, new ArrayList<Integer>());
+        }
+        // One query for the whole page rather than one collection load per hospital
+        List<Object[]> pairs = entityManager.createQuery(
+                        "SELECT h.id, a FROM Hospital h JOIN h.ambulanceIds a WHERE h.id IN :ids", Object[].class)
+                .setParameter("ids", rows.keySet())
+                .getResultList();
+        for (Object[] pair : pairs) {
+            @SuppressWarnings("unchecked")
+            List<Integer> ambulanceIds = (List<Integer>) rows.get((Integer) pair[0]).get(HospitalFields.AMBULANCE_IDS);
+            ambulanceIds.add((Integer) pair[1]);
+        }
+    }
+}
@@ -2,18 +2,36 @@ package mine.hospital_service.repository;
 
 import mine.hospital_service.dto.AmbulanceDTO;
 import mine.hospital_service.model.Hospital;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface HospitalRepository extends JpaRepository<Hospital, Long> {
+public interface HospitalRepository extends JpaRepository<Hospital, Integer>, HospitalFieldsRepository {
 
     // Query method to find hospitals by speciality, ignoring case
     @Query("SELECT h FROM Hospital h WHERE LOWER(h.speciality) = LOWER(:speciality)")
     List<Hospital> findBySpecialityCaseInsensitive(@Param("speciality") String speciality);
 
+    List<Hospital> findBySpeciality(String speciality);
+
+    // Same filter, with the ambulance ID collection fetched in the same query
+    @Query("SELECT DISTINCT h FROM Hospital h LEFT JOIN FETCH h.ambulanceIds WHERE LOWER(h.speciality) = LOWER(:speciality)")
+    List<Hospital> findWithAmbulanceIdsBySpeciality(@Param("speciality") String speciality);
+
+    // Keyset pages are taken in two steps: limiting a collection fetch join would happen in memory
+    @Query("SELECT h.id FROM Hospital h WHERE h.id > :after ORDER BY h.id")
+    List<Integer> findIdsAfter(@Param("after") Integer after, Pageable pageable);
+
+    @Query("SELECT DISTINCT h FROM Hospital h LEFT JOIN FETCH h.ambulanceIds WHERE h.id IN :ids ORDER BY h.id")
+    List<Hospital> findWithAmbulanceIdsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT h.id AS id, h.changeSeq AS changeSeq FROM Hospital h WHERE h.changeSeq > :since ORDER BY h.changeSeq")
+    List<ChangedHospital> findChangedSince(@Param("since") long since, Pageable pageable);
+
 }
@@ -0,0 +1,16 @@
+package mine.hospital_service.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * ambulance-service could not be asked about the ambulances; answered with 502 so callers can tell it apart
+ * from a hospital that has none.
+ */
+@ResponseStatus(HttpStatus.BAD_GATEWAY)
+public class AmbulanceLookupException extends RuntimeException {
+
+    public AmbulanceLookupException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
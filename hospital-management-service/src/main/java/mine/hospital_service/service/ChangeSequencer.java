@@ -0,0 +1,54 @@
+package mine.hospital_service.service;
+
+import mine.hospital_service.model.ChangeSequence;
+import mine.hospital_service.repository.ChangeSequenceRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Hands out the change sequence numbers stamped on hospitals and deletion tombstones, the same way the
+ * dispatch service numbers cases: from a row locked until the write commits. Hospital edits are rare enough
+ * that queueing them on it does not matter.
+ */
+@Service
+public class ChangeSequencer implements InitializingBean {
+
+    static final String HOSPITALS = "hospitals";
+
+    private final ChangeSequenceRepository repository;
+
+    public ChangeSequencer(ChangeSequenceRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!repository.existsById(HOSPITALS)) {
+            try {
+                repository.save(new ChangeSequence(HOSPITALS));
+            } catch (DataIntegrityViolationException e) {
+                // Created by another instance starting at the same time
+            }
+        }
+    }
+
+    /**
+     * Takes the next hospital change number; must run in the transaction that makes the change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long nextHospitalChange() {
+        repository.increment(HOSPITALS);
+        return repository.currentValue(HOSPITALS);
+    }
+
+    /**
+     * The last hospital change number handed out. Committed changes are never above it, so a reader that takes
+     * it before reading hospitals has a validator that moves whenever any instance makes a change.
+     */
+    public long currentHospitalChange() {
+        return repository.currentValue(HOSPITALS);
+    }
+}
@@ -1,40 +1,170 @@
 package mine.hospital_service.service;
 
 import mine.hospital_service.dto.AmbulanceDTO;
+import mine.hospital_service.dto.HospitalAmbulancesDTO;
+import mine.hospital_service.dto.HospitalChanges;
+import mine.hospital_service.event.HospitalChangedEvent;
 import mine.hospital_service.model.Hospital;
+import mine.hospital_service.model.HospitalDeletion;
+import mine.hospital_service.repository.ChangedHospital;
+import mine.hospital_service.repository.HospitalDeletionRepository;
+import mine.hospital_service.repository.HospitalFields;
 import mine.hospital_service.repository.HospitalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class HospitalService {
 
+    private static final Logger log = LoggerFactory.getLogger(HospitalService.class);
+
+    private static final int STREAM_PAGE = 500;
+
+    // Ids per bulk lookup, keeping the request line well under the server's header size limit
+    private static final int AMBULANCE_LOOKUP_CHUNK = 200;
+
     private final HospitalRepository hospitalRepository;
     private final WebClient webClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HospitalDeletionRepository deletionRepository;
+    private final ChangeSequencer sequencer;
+    private final TransactionTemplate transactionTemplate;
 
-    public HospitalService(WebClient.Builder webClientBuilder, HospitalRepository hospitalRepository) {
+    public HospitalService(WebClient.Builder webClientBuilder, HospitalRepository hospitalRepository,
+                           ApplicationEventPublisher eventPublisher, HospitalDeletionRepository deletionRepository,
+                           ChangeSequencer sequencer, PlatformTransactionManager transactionManager) {
         this.hospitalRepository = hospitalRepository;
         this.webClient = webClientBuilder.baseUrl("http://ambulance-service").build();
+        this.eventPublisher = eventPublisher;
+        this.deletionRepository = deletionRepository;
+        this.sequencer = sequencer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public List<Hospital> getAllHospitals() {
         return hospitalRepository.findAll();
     }
 
+    /**
+     * Up to {@code limit} hospitals with an id above {@code after} (null for the first page), in id order,
+     * with their ambulance ids loaded.
+     */
+    public List<Hospital> getHospitalPage(Integer after, int limit) {
+        List<Integer> ids = hospitalRepository.findIdsAfter(after != null ? after : 0, PageRequest.of(0, limit));
+        return ids.isEmpty() ? Collections.emptyList() : hospitalRepository.findWithAmbulanceIdsByIdIn(ids);
+    }
+
+    /**
+     * Hands every hospital to {@code action} in id order, reading a page at a time so that only one page is
+     * ever held in memory.
+     */
+    public void streamHospitals(Integer after, Consumer<Hospital> action) {
+        Integer cursor = after;
+        List<Hospital> page;
+        do {
+            page = getHospitalPage(cursor, STREAM_PAGE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_PAGE);
+    }
+
+    /**
+     * The requested {@code fields} of the hospitals with an id above {@code after}, in id order, at most
+     * {@code limit} of them (null for all).
+     */
+    public List<Map<String, Object>> getHospitalFields(Set<String> fields, Integer after, Integer limit) {
+        return hospitalRepository.findFields(fields, after != null ? after : 0, limit);
+    }
+
+    /**
+     * Like {@link #streamHospitals}, with only the requested fields of each hospital.
+     */
+    public void streamHospitalFields(Set<String> fields, Integer after, Consumer<Map<String, Object>> action) {
+        Integer cursor = after;
+        List<Map<String, Object>> page;
+        do {
+            page = getHospitalFields(fields, cursor, STREAM_PAGE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                cursor = (Integer) page.get(page.size() - 1).get(HospitalFields.ID);
+            }
+        } while (page.size() == STREAM_PAGE);
+    }
+
+    /**
+     * Up to {@code limit} changes after change {@code since}, oldest first: the hospitals created or updated, in
+     * their current state, and the ids of those deleted. The cursor is the last change returned, or
+     * {@code since} again when nothing changed.
+     */
+    public HospitalChanges getChangesSince(long since, int limit) {
+        PageRequest batch = PageRequest.of(0, limit);
+        List<ChangedHospital> changed = hospitalRepository.findChangedSince(since, batch);
+        List<HospitalDeletion> deletions = deletionRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, batch);
+
+        // Merge the two by change number and keep the first limit, so the cursor never passes a change not returned
+        List<Integer> changedIds = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        long cursor = since;
+        int c = 0;
+        int d = 0;
+        while (changedIds.size() + deletedIds.size() < limit && (c < changed.size() || d < deletions.size())) {
+            if (d == deletions.size()
+                    || c < changed.size() && changed.get(c).getChangeSeq() < deletions.get(d).getChangeSeq()) {
+                cursor = changed.get(c).getChangeSeq();
+                changedIds.add(changed.get(c++).getId());
+            } else {
+                cursor = deletions.get(d).getChangeSeq();
+                deletedIds.add(deletions.get(d++).getHospitalId());
+            }
+        }
+
+        // A hospital deleted since the first query is left out here; its tombstone is past the cursor
+        Map<Integer, Hospital> hospitals = new HashMap<>();
+        if (!changedIds.isEmpty()) {
+            hospitalRepository.findWithAmbulanceIdsByIdIn(changedIds)
+                    .forEach(hospital -> hospitals.put(hospital.getId(), hospital));
+        }
+        List<Hospital> items = changedIds.stream()
+                .map(hospitals::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return new HospitalChanges(cursor, items, deletedIds);
+    }
+
+    /**
+     * The change number of the last hospital change, from any instance.
+     */
+    public long getLatestChange() {
+        return sequencer.currentHospitalChange();
+    }
+
     public Optional<Hospital> getHospitalById(Integer id) {
         return hospitalRepository.findById(id);
     }
 
     public Hospital createHospital(Hospital hospital) {
-        return hospitalRepository.save(hospital);
+        Hospital saved = save(hospital);
+        publishChange(saved.getSpeciality());
+        return saved;
     }
 
     public Optional<Hospital> updateHospital(Integer id, Hospital updatedHospital) {
         return hospitalRepository.findById(id)
                 .map(existingHospital -> {
+                    String previousSpeciality = existingHospital.getSpeciality();
                     existingHospital.setName(updatedHospital.getName());
                     existingHospital.setLatitude(updatedHospital.getLatitude());
                     existingHospital.setLongitude(updatedHospital.getLongitude());
@@ -42,16 +172,46 @@ public class HospitalService {
                     existingHospital.setAmbulanceIds(updatedHospital.getAmbulanceIds());
                     existingHospital.setAddress(updatedHospital.getAddress());
                     existingHospital.setSpeciality(updatedHospital.getSpeciality());
-                    return hospitalRepository.save(existingHospital);
+                    Hospital saved = save(existingHospital);
+                    publishChange(previousSpeciality, saved.getSpeciality());
+                    return saved;
                 });
     }
 
     public boolean deleteHospital(Integer id) {
         return hospitalRepository.findById(id)
                 .map(hospital -> {
-                    hospitalRepository.delete(hospital);
+                    transactionTemplate.executeWithoutResult(status -> {
+                        hospitalRepository.deleteById(id);
+                        deletionRepository.save(new HospitalDeletion(id, sequencer.nextHospitalChange()));
+                    });
+                    publishChange(hospital.getSpeciality());
                     return true;
-                }).orElse(false);
+                })
+                .orElse(false);
+    }
+
+    /**
+     * Saves a hospital stamped with the next change number, in one transaction so that change numbers
+     * become visible in order.
+     */
+    private Hospital save(Hospital hospital) {
+        return transactionTemplate.execute(status -> {
+            hospital.setChangeSeq(sequencer.nextHospitalChange());
+            return hospitalRepository.save(hospital);
+        });
+    }
+
+    private void publishChange(String... specialities) {
+        Set<String> changed = new HashSet<>();
+        for (String speciality : specialities) {
+            if (speciality != null) {
+                changed.add(speciality);
+            }
+        }
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new HospitalChangedEvent(changed));
+        }
     }
 
     public Optional<Hospital> addAmbulanceToHospital(Integer hospitalId, Integer ambulanceId) {
@@ -59,7 +219,9 @@ public class HospitalService {
                 .map(hospital -> {
                     if (!hospital.getAmbulanceIds().contains(ambulanceId)) {
                         hospital.getAmbulanceIds().add(ambulanceId);
-                        return hospitalRepository.save(hospital);
+                        Hospital saved = save(hospital);
+                        publishChange(saved.getSpeciality());
+                        return saved;
                     }
                     return hospital;
                 });
@@ -69,7 +231,9 @@ public class HospitalService {
         return hospitalRepository.findById(hospitalId)
                 .map(hospital -> {
                     hospital.getAmbulanceIds().remove(ambulanceId);
-                    return hospitalRepository.save(hospital);
+                    Hospital saved = save(hospital);
+                    publishChange(saved.getSpeciality());
+                    return saved;
                 });
     }
 
@@ -77,13 +241,13 @@ public class HospitalService {
         try {
             return Optional.ofNullable(
                     webClient.get()
-                            .uri("/ambulances/{id}", ambulanceId)
+                            .uri("/api/ambulances/{id}", ambulanceId)
                             .retrieve()
                             .bodyToMono(AmbulanceDTO.class)
                             .block()
             );
         } catch (Exception e) {
-            System.err.println("Error fetching ambulance details: " + e.getMessage());
+            log.warn("Error fetching details of ambulance {}", ambulanceId, e);
             return Optional.empty();
         }
     }
@@ -92,18 +256,82 @@ public class HospitalService {
         if (speciality == null || speciality.trim().isEmpty()) {
             throw new IllegalArgumentException("Speciality must not be null or empty.");
         }
-        return hospitalRepository.findBySpeciality(speciality.trim());
+        return hospitalRepository.findBySpecialityCaseInsensitive(speciality.trim());
+    }
+
+    /**
+     * Hospitals for a speciality together with their currently available ambulances, built from one
+     * repository query and one bulk ambulance lookup instead of a call per hospital and per ambulance.
+     */
+    public List<HospitalAmbulancesDTO> findHospitalsWithAvailableAmbulances(String speciality) {
+        if (speciality == null || speciality.trim().isEmpty()) {
+            throw new IllegalArgumentException("Speciality must not be null or empty.");
+        }
+        List<Hospital> hospitals = hospitalRepository.findWithAmbulanceIdsBySpeciality(speciality.trim());
+
+        Set<Integer> ambulanceIds = hospitals.stream()
+                .flatMap(hospital -> hospital.getAmbulanceIds().stream())
+                .collect(Collectors.toSet());
+        Map<Integer, AmbulanceDTO> availableAmbulances = fetchAmbulances(ambulanceIds, true).stream()
+                .filter(AmbulanceDTO::isAvailable)
+                .collect(Collectors.toMap(AmbulanceDTO::getId, ambulance -> ambulance, (first, second) -> first));
+
+        return hospitals.stream()
+                .map(hospital -> {
+                    HospitalAmbulancesDTO dto = new HospitalAmbulancesDTO();
+                    dto.setId(hospital.getId());
+                    dto.setName(hospital.getName());
+                    dto.setLatitude(hospital.getLatitude());
+                    dto.setLongitude(hospital.getLongitude());
+                    dto.setSpeciality(hospital.getSpeciality());
+                    dto.setAmbulances(hospital.getAmbulanceIds().stream()
+                            .map(availableAmbulances::get)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList()));
+                    return dto;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves many ambulances through ambulance-service's bulk lookup, {@value #AMBULANCE_LOOKUP_CHUNK} ids
+     * per call. A null {@code available} returns the ambulances regardless of availability.
+     *
+     * @throws AmbulanceLookupException if any of the calls fails
+     */
+    private List<AmbulanceDTO> fetchAmbulances(Collection<Integer> ambulanceIds, Boolean available) {
+        if (ambulanceIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> sorted = ambulanceIds.stream().sorted().collect(Collectors.toList());
+        List<String> chunks = new ArrayList<>();
+        for (int from = 0; from < sorted.size(); from += AMBULANCE_LOOKUP_CHUNK) {
+            chunks.add(sorted.subList(from, Math.min(from + AMBULANCE_LOOKUP_CHUNK, sorted.size())).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(",")));
+        }
+        try {
+            List<AmbulanceDTO> ambulances = Flux.fromIterable(chunks)
+                    .concatMap(ids -> webClient.get()
+                            .uri(available == null ? "/api/ambulances?ids={ids}" : "/api/ambulances?ids={ids}&available={available}",
+                                    ids, available)
+                            .retrieve()
+                            .bodyToFlux(AmbulanceDTO.class))
+                    .collectList()
+                    .block();
+            return ambulances != null ? ambulances : Collections.emptyList();
+        } catch (RuntimeException e) {
+            log.error("Error fetching {} ambulances from ambulance-service", sorted.size(), e);
+            throw new AmbulanceLookupException("Ambulance lookup failed", e);
+        }
     }
 
     public Map<Integer, Object> findByAmbulanceIds(Integer hospitalId) {
         return hospitalRepository.findById(hospitalId)
                 .map(hospital -> {
                     Map<Integer, Object> ambulanceDetails = new HashMap<>();
-                    hospital.getAmbulanceIds().forEach(ambulanceId -> {
-                        fetchAmbulanceDetails(ambulanceId).ifPresent(details -> {
-                            ambulanceDetails.put(ambulanceId, details);
-                        });
-                    });
+                    fetchAmbulances(hospital.getAmbulanceIds(), null)
+                            .forEach(details -> ambulanceDetails.put(details.getId(), details));
                     return ambulanceDetails;
                 }).orElse(new HashMap<>());
     }
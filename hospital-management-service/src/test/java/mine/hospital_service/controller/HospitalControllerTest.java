@@ -1,7 +1,11 @@
 package mine.hospital_service.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mine.hospital_service.dto.AmbulanceDTO;
+import mine.hospital_service.dto.HospitalAmbulancesDTO;
+import mine.hospital_service.dto.HospitalChanges;
 import mine.hospital_service.model.Hospital;
+import mine.hospital_service.service.AmbulanceLookupException;
 import mine.hospital_service.service.HospitalService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,12 +14,17 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -60,6 +69,167 @@ class HospitalControllerTest {
                 .andExpect(jsonPath("$[0].ambulanceIds").isArray());
     }
 
+    @Test
+    void getAllHospitals_WhenUnchanged_ShouldReturnNotModified() throws Exception {
+        when(hospitalService.getLatestChange()).thenReturn(5L, 5L, 6L);
+        when(hospitalService.getAllHospitals()).thenReturn(Arrays.asList(hospital));
+        String eTag = mockMvc.perform(get("/hospitals"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(hospitalService, times(1)).getAllHospitals();
+
+        // A change committed through any instance moves the persisted sequence
+        mockMvc.perform(get("/hospitals").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getAllHospitals_WithOtherPage_ShouldNotMatchETag() throws Exception {
+        when(hospitalService.getHospitalPage(any(), eq(1))).thenReturn(List.of(hospital));
+        String eTag = mockMvc.perform(get("/hospitals?limit=1"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals?after=1&limit=1").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getAllHospitals_AsNdjson_ShouldNotMatchJsonETag() throws Exception {
+        when(hospitalService.getAllHospitals()).thenReturn(Arrays.asList(hospital));
+        String eTag = mockMvc.perform(get("/hospitals"))
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals").accept(MediaType.APPLICATION_NDJSON).header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getAllHospitals_WithLimit_ShouldReturnPageAndNextLink() throws Exception {
+        when(hospitalService.getHospitalPage(null, 1)).thenReturn(List.of(hospital));
+
+        mockMvc.perform(get("/hospitals").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(header().string("Link", "<http://localhost/hospitals?after=1&limit=1>; rel=\"next\""));
+    }
+
+    @Test
+    void getAllHospitals_WithFields_ShouldReturnOnlyThoseFields() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("name", "General");
+        row.put("available", true);
+        when(hospitalService.getHospitalFields(Set.of("id", "name", "available"), null, 1)).thenReturn(List.of(row));
+
+        mockMvc.perform(get("/hospitals?fields=name,available&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("General"))
+                .andExpect(jsonPath("$[0].available").value(true))
+                .andExpect(jsonPath("$[0].address").doesNotExist())
+                .andExpect(header().string("Link",
+                        "<http://localhost/hospitals?fields=name,available&after=1&limit=1>; rel=\"next\""));
+        verify(hospitalService, never()).getHospitalPage(any(), anyInt());
+    }
+
+    @Test
+    void getChanges_ShouldReturnChangesAndCursor() throws Exception {
+        hospital.setChangeSeq(12L);
+        when(hospitalService.getChangesSince(10, 1000)).thenReturn(new HospitalChanges(13, List.of(hospital), List.of(4)));
+
+        mockMvc.perform(get("/hospitals/changes").param("since", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cursor").value(13))
+                .andExpect(jsonPath("$.items[0].changeSeq").value(12))
+                .andExpect(jsonPath("$.deleted[0]").value(4));
+    }
+
+    @Test
+    void getChanges_WhenNothingChanged_ShouldReturnNotModified() throws Exception {
+        when(hospitalService.getLatestChange()).thenReturn(13L);
+        when(hospitalService.getChangesSince(13, 1000)).thenReturn(new HospitalChanges(13, List.of(), List.of()));
+        String eTag = mockMvc.perform(get("/hospitals/changes?since=13"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals/changes?since=13").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(hospitalService, times(1)).getChangesSince(13, 1000);
+    }
+
+    @Test
+    void getChanges_WithOtherCursor_ShouldNotMatchETag() throws Exception {
+        when(hospitalService.getLatestChange()).thenReturn(13L);
+        when(hospitalService.getChangesSince(anyLong(), anyInt())).thenReturn(new HospitalChanges(13, List.of(), List.of()));
+        String eTag = mockMvc.perform(get("/hospitals/changes?since=13"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals/changes?since=10").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getChanges_WhenAnotherInstanceChanged_ShouldNotMatchETag() throws Exception {
+        when(hospitalService.getLatestChange()).thenReturn(13L, 14L);
+        when(hospitalService.getChangesSince(13, 1000)).thenReturn(new HospitalChanges(13, List.of(), List.of()));
+        String eTag = mockMvc.perform(get("/hospitals/changes?since=13"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/hospitals/changes?since=13").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getChanges_WithNegativeCursor_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/hospitals/changes").param("since", "-1"))
+                .andExpect(status().isBadRequest());
+        verify(hospitalService, never()).getChangesSince(anyLong(), anyInt());
+    }
+
+    @Test
+    void getAllHospitals_WithUnknownField_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/hospitals").param("fields", "name,password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamAllHospitals_WithFields_ShouldStreamOnlyThoseFields() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> action = invocation.getArgument(2);
+            action.accept(Map.of("id", 1));
+            return null;
+        }).when(hospitalService).streamHospitalFields(eq(Set.of("id")), isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/hospitals").param("fields", "id").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+
+    @Test
+    void streamAllHospitals_ShouldWriteOneJsonObjectPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Hospital> action = invocation.getArgument(1);
+            action.accept(hospital);
+            return null;
+        }).when(hospitalService).streamHospitals(isNull(), any());
+
+        MvcResult result = mockMvc.perform(get("/hospitals").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(objectMapper.writeValueAsString(hospital) + "\n"));
+    }
+
     @Test
     void getHospitalById_WhenExists_ShouldReturnHospital() throws Exception {
         when(hospitalService.getHospitalById(1)).thenReturn(Optional.of(hospital));
@@ -256,4 +426,39 @@ class HospitalControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isEmpty());
     }
+
+    @Test
+    void getHospitalsWithAvailableAmbulances_ShouldReturnHospitalsWithAmbulances() throws Exception {
+        AmbulanceDTO ambulance = new AmbulanceDTO();
+        ambulance.setId(1);
+        ambulance.setAvailable(true);
+        ambulance.setLatitude(40.71);
+        ambulance.setLongitude(-74.0);
+
+        HospitalAmbulancesDTO joined = new HospitalAmbulancesDTO();
+        joined.setId(1);
+        joined.setName("Test Hospital");
+        joined.setSpeciality("General");
+        joined.setAmbulances(Arrays.asList(ambulance));
+
+        when(hospitalService.findHospitalsWithAvailableAmbulances("General"))
+                .thenReturn(Arrays.asList(joined));
+
+        mockMvc.perform(get("/hospitals/available-ambulances")
+                .param("speciality", "General"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].ambulances[0].id").value(1))
+                .andExpect(jsonPath("$[0].ambulances[0].latitude").value(40.71));
+    }
+
+    @Test
+    void getHospitalsWithAvailableAmbulances_WhenAmbulanceServiceFails_ShouldReturnBadGateway() throws Exception {
+        when(hospitalService.findHospitalsWithAvailableAmbulances("General"))
+                .thenThrow(new AmbulanceLookupException("Ambulance lookup failed", new IllegalStateException()));
+
+        mockMvc.perform(get("/hospitals/available-ambulances?speciality=General"))
+                .andExpect(status().isBadGateway());
+    }
 }
@@ -0,0 +1,88 @@
+package mine.hospital_service.repository;
+
+import mine.hospital_service.model.Hospital;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+class HospitalRepositoryTest {
+
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    private Integer first;
+    private Integer second;
+
+    @BeforeEach
+    void setUp() {
+        first = hospitalRepository.save(hospital("General", List.of(5, 6))).getId();
+        second = hospitalRepository.save(hospital("Children's", List.of())).getId();
+    }
+
+    @Test
+    void findFields_ShouldSelectOnlyRequestedFieldsInOrder() {
+        List<Map<String, Object>> rows = hospitalRepository.findFields(HospitalFields.parse("name,latitude"), 0, null);
+
+        assertEquals(2, rows.size());
+        assertEquals(List.of("id", "name", "latitude"), new ArrayList<>(rows.get(0).keySet()));
+        assertEquals(first, rows.get(0).get("id"));
+        assertEquals("General", rows.get(0).get("name"));
+        assertEquals(31.6, rows.get(0).get("latitude"));
+    }
+
+    @Test
+    void findFields_ShouldSeekPastCursorAndLimit() {
+        List<Map<String, Object>> rows = hospitalRepository.findFields(HospitalFields.parse("name"), first, 1);
+
+        assertEquals(1, rows.size());
+        assertEquals(second, rows.get(0).get("id"));
+    }
+
+    @Test
+    void findFields_WithAmbulanceIds_ShouldLoadThemForEveryHospital() {
+        List<Map<String, Object>> rows = hospitalRepository.findFields(HospitalFields.parse("ambulanceIds"), 0, null);
+
+        assertEquals(Set.of(5, 6), new HashSet<>((List<?>) rows.get(0).get("ambulanceIds")));
+        assertEquals(List.of(), rows.get(1).get("ambulanceIds"));
+    }
+
+    @Test
+    void findChangedSince_ShouldSeekPastCursorInChangeOrder() {
+        Hospital older = hospitalRepository.findById(first).orElseThrow();
+        older.setChangeSeq(9L);
+        hospitalRepository.save(older);
+        Hospital newer = hospitalRepository.findById(second).orElseThrow();
+        newer.setChangeSeq(8L);
+        hospitalRepository.save(newer);
+
+        List<ChangedHospital> changed = hospitalRepository.findChangedSince(7, PageRequest.of(0, 10));
+
+        assertEquals(List.of(second, first), changed.stream().map(ChangedHospital::getId).toList());
+        assertEquals(List.of(first), hospitalRepository.findChangedSince(8, PageRequest.of(0, 10)).stream()
+                .map(ChangedHospital::getId).toList());
+    }
+
+    @Test
+    void parse_WithUnknownField_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> HospitalFields.parse("name,ambulances"));
+    }
+
+    private static Hospital hospital(String name, List<Integer> ambulanceIds) {
+        Hospital hospital = new Hospital();
+        hospital.setName(name);
+        hospital.setLatitude(31.6);
+        hospital.setLongitude(-8.0);
+        hospital.setAvailable(true);
+        hospital.setAddress("1 Main St");
+        hospital.setSpeciality("Cardiology");
+        hospital.setAmbulanceIds(new ArrayList<>(ambulanceIds));
+        return hospital;
+    }
+}
@@ -1,22 +1,32 @@
 package mine.hospital_service.service;
 
 import mine.hospital_service.dto.AmbulanceDTO;
+import mine.hospital_service.dto.HospitalAmbulancesDTO;
+import mine.hospital_service.dto.HospitalChanges;
+import mine.hospital_service.event.HospitalChangedEvent;
 import mine.hospital_service.model.Hospital;
+import mine.hospital_service.model.HospitalDeletion;
+import mine.hospital_service.repository.ChangedHospital;
+import mine.hospital_service.repository.HospitalDeletionRepository;
 import mine.hospital_service.repository.HospitalRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
+import reactor.core.publisher.Flux;
 
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,7 +50,18 @@ class HospitalServiceTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
-    @InjectMocks
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private HospitalDeletionRepository deletionRepository;
+
+    @Mock
+    private ChangeSequencer sequencer;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private HospitalService hospitalService;
 
     private Hospital hospital;
@@ -55,12 +76,16 @@ class HospitalServiceTest {
         hospital.setAddress("123 Test St");
         hospital.setSpeciality("General");
         hospital.setAvailable(true);
-        hospital.setAmbulanceIds(Arrays.asList(1, 2));
+        hospital.setAmbulanceIds(new ArrayList<>(Arrays.asList(1, 2)));
 
+        when(webClientBuilder.baseUrl(anyString())).thenReturn(webClientBuilder);
         when(webClientBuilder.build()).thenReturn(webClient);
-        when(webClient.get()).thenReturn(requestHeadersUriSpec);
-        when(requestHeadersUriSpec.uri(any(String.class))).thenReturn(requestHeadersSpec);
-        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        lenient().when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        lenient().when(requestHeadersUriSpec.uri(any(String.class), any(Object[].class))).thenReturn(requestHeadersSpec);
+        lenient().when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+
+        hospitalService = new HospitalService(webClientBuilder, hospitalRepository, eventPublisher,
+                deletionRepository, sequencer, transactionManager);
     }
 
     @Test
@@ -139,23 +164,94 @@ class HospitalServiceTest {
 
     @Test
     void deleteHospital_WhenExists_ShouldReturnTrue() {
-        when(hospitalRepository.existsById(1)).thenReturn(true);
+        when(hospitalRepository.findById(1)).thenReturn(Optional.of(hospital));
         doNothing().when(hospitalRepository).deleteById(1);
 
         boolean result = hospitalService.deleteHospital(1);
 
         assertTrue(result);
         verify(hospitalRepository).deleteById(1);
+        verify(eventPublisher).publishEvent(any(HospitalChangedEvent.class));
+    }
+
+    @Test
+    void createHospital_ShouldStampNextChangeInTransaction() {
+        when(sequencer.nextHospitalChange()).thenReturn(42L);
+        when(hospitalRepository.save(hospital)).thenReturn(hospital);
+
+        Hospital created = hospitalService.createHospital(hospital);
+
+        assertEquals(42L, created.getChangeSeq());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void deleteHospital_ShouldRecordTombstoneWithNextChange() {
+        when(hospitalRepository.findById(1)).thenReturn(Optional.of(hospital));
+        when(sequencer.nextHospitalChange()).thenReturn(7L);
+        ArgumentCaptor<HospitalDeletion> captor = ArgumentCaptor.forClass(HospitalDeletion.class);
+
+        hospitalService.deleteHospital(1);
+
+        verify(deletionRepository).save(captor.capture());
+        assertEquals(1, captor.getValue().getHospitalId());
+        assertEquals(7L, captor.getValue().getChangeSeq());
+    }
+
+    @Test
+    void getChangesSince_ShouldMergeUpdatesAndDeletionsUpToLimit() {
+        hospital.setChangeSeq(11L);
+        when(hospitalRepository.findChangedSince(10, PageRequest.of(0, 2)))
+                .thenReturn(List.of(changed(1, 11L), changed(3, 14L)));
+        when(deletionRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(10, PageRequest.of(0, 2)))
+                .thenReturn(List.of(new HospitalDeletion(2, 12L)));
+        when(hospitalRepository.findWithAmbulanceIdsByIdIn(List.of(1))).thenReturn(List.of(hospital));
+
+        HospitalChanges changes = hospitalService.getChangesSince(10, 2);
+
+        assertEquals(12L, changes.getCursor());
+        assertEquals(List.of(hospital), changes.getItems());
+        assertEquals(List.of(2), changes.getDeleted());
+    }
+
+    @Test
+    void getChangesSince_WhenNothingChanged_ShouldKeepCursor() {
+        when(hospitalRepository.findChangedSince(10, PageRequest.of(0, 5))).thenReturn(List.of());
+        when(deletionRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(10, PageRequest.of(0, 5)))
+                .thenReturn(List.of());
+
+        HospitalChanges changes = hospitalService.getChangesSince(10, 5);
+
+        assertEquals(10L, changes.getCursor());
+        assertTrue(changes.getItems().isEmpty());
+        verify(hospitalRepository, never()).findWithAmbulanceIdsByIdIn(any());
     }
 
     @Test
     void deleteHospital_WhenNotExists_ShouldReturnFalse() {
-        when(hospitalRepository.existsById(99)).thenReturn(false);
+        when(hospitalRepository.findById(99)).thenReturn(Optional.empty());
 
         boolean result = hospitalService.deleteHospital(99);
 
         assertFalse(result);
         verify(hospitalRepository, never()).deleteById(anyInt());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void updateHospital_ShouldInvalidateOldAndNewSpeciality() {
+        Hospital updated = new Hospital();
+        updated.setName("Test Hospital");
+        updated.setSpeciality("Cardiology");
+        updated.setAmbulanceIds(new ArrayList<>());
+        when(hospitalRepository.findById(1)).thenReturn(Optional.of(hospital));
+        when(hospitalRepository.save(any(Hospital.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        hospitalService.updateHospital(1, updated);
+
+        ArgumentCaptor<HospitalChangedEvent> event = ArgumentCaptor.forClass(HospitalChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(Set.of("General", "Cardiology"), event.getValue().getSpecialities());
     }
 
     @Test
@@ -200,7 +296,7 @@ class HospitalServiceTest {
 
     @Test
     void findBySpeciality_ShouldReturnFilteredHospitals() {
-        when(hospitalRepository.findBySpeciality("General")).thenReturn(Arrays.asList(hospital));
+        when(hospitalRepository.findBySpecialityCaseInsensitive("General")).thenReturn(Arrays.asList(hospital));
 
         List<Hospital> result = hospitalService.findBySpeciality("General");
 
@@ -215,8 +311,14 @@ class HospitalServiceTest {
         ambulance.setDriverName("John Doe");
         ambulance.setAvailable(true);
 
-        when(responseSpec.bodyToMono(AmbulanceDTO.class))
-                .thenReturn(Mono.just(ambulance));
+        AmbulanceDTO ambulance2 = new AmbulanceDTO();
+        ambulance2.setId(2);
+        ambulance2.setDriverName("Jane Smith");
+        ambulance2.setAvailable(false);
+
+        when(hospitalRepository.findById(1)).thenReturn(Optional.of(hospital));
+        when(responseSpec.bodyToFlux(AmbulanceDTO.class))
+                .thenReturn(Flux.just(ambulance, ambulance2));
 
         Map<Integer, Object> result = hospitalService.findByAmbulanceIds(1);
 
@@ -224,5 +326,156 @@ class HospitalServiceTest {
         assertEquals(2, result.size());
         assertTrue(result.containsKey(1));
         assertTrue(result.containsKey(2));
+        // Both ambulances come back from a single bulk lookup
+        verify(webClient, times(1)).get();
+    }
+
+    @Test
+    void findHospitalsWithAvailableAmbulances_ShouldJoinAvailableAmbulancesInOneLookup() {
+        AmbulanceDTO available = new AmbulanceDTO();
+        available.setId(1);
+        available.setAvailable(true);
+        available.setLatitude(40.71);
+        available.setLongitude(-74.0);
+
+        AmbulanceDTO busy = new AmbulanceDTO();
+        busy.setId(2);
+        busy.setAvailable(false);
+
+        AmbulanceDTO otherHospital = new AmbulanceDTO();
+        otherHospital.setId(9);
+        otherHospital.setAvailable(true);
+
+        when(hospitalRepository.findWithAmbulanceIdsBySpeciality("General")).thenReturn(Arrays.asList(hospital));
+        when(responseSpec.bodyToFlux(AmbulanceDTO.class)).thenReturn(Flux.just(available, busy, otherHospital));
+
+        List<HospitalAmbulancesDTO> result = hospitalService.findHospitalsWithAvailableAmbulances(" General ");
+
+        assertEquals(1, result.size());
+        assertEquals(1, result.get(0).getId());
+        assertEquals(1, result.get(0).getAmbulances().size());
+        assertEquals(1, result.get(0).getAmbulances().get(0).getId());
+        verify(webClient, times(1)).get();
+    }
+
+    @Test
+    void findHospitalsWithAvailableAmbulances_ShouldSplitLargeFleetsIntoBoundedLookups() {
+        List<Integer> fleet = new ArrayList<>();
+        for (int id = 1; id <= 450; id++) {
+            fleet.add(id);
+        }
+        hospital.setAmbulanceIds(fleet);
+        when(hospitalRepository.findWithAmbulanceIdsBySpeciality("General")).thenReturn(Arrays.asList(hospital));
+        when(responseSpec.bodyToFlux(AmbulanceDTO.class)).thenReturn(Flux.empty());
+
+        hospitalService.findHospitalsWithAvailableAmbulances("General");
+
+        ArgumentCaptor<Object[]> variables = ArgumentCaptor.forClass(Object[].class);
+        verify(requestHeadersUriSpec, times(3)).uri(anyString(), variables.capture());
+        List<Integer> sizes = variables.getAllValues().stream()
+                .map(values -> ((String) values[0]).split(",").length)
+                .toList();
+        assertEquals(List.of(200, 200, 50), sizes);
+    }
+
+    @Test
+    void findHospitalsWithAvailableAmbulances_WhenAmbulanceServiceFails_ShouldThrow() {
+        when(hospitalRepository.findWithAmbulanceIdsBySpeciality("General")).thenReturn(Arrays.asList(hospital));
+        when(responseSpec.bodyToFlux(AmbulanceDTO.class))
+                .thenReturn(Flux.error(new IllegalStateException("Connection refused")));
+
+        assertThrows(AmbulanceLookupException.class,
+                () -> hospitalService.findHospitalsWithAvailableAmbulances("General"));
+    }
+
+    @Test
+    void findHospitalsWithAvailableAmbulances_WhenNoAmbulances_ShouldSkipAmbulanceLookup() {
+        hospital.setAmbulanceIds(new ArrayList<>());
+        when(hospitalRepository.findWithAmbulanceIdsBySpeciality("General")).thenReturn(Arrays.asList(hospital));
+
+        List<HospitalAmbulancesDTO> result = hospitalService.findHospitalsWithAvailableAmbulances("General");
+
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).getAmbulances().isEmpty());
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void addAmbulanceToHospital_ShouldPublishChange() {
+        Hospital existingHospital = new Hospital();
+        existingHospital.setId(1);
+        existingHospital.setSpeciality("General");
+        existingHospital.setAmbulanceIds(new ArrayList<>());
+        when(hospitalRepository.findById(1)).thenReturn(Optional.of(existingHospital));
+        when(hospitalRepository.save(existingHospital)).thenReturn(existingHospital);
+
+        hospitalService.addAmbulanceToHospital(1, 7);
+
+        ArgumentCaptor<HospitalChangedEvent> event = ArgumentCaptor.forClass(HospitalChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(Set.of("General"), event.getValue().getSpecialities());
+    }
+
+    @Test
+    void getHospitalPage_ShouldSeekIdsThenFetchThem() {
+        when(hospitalRepository.findIdsAfter(10, PageRequest.of(0, 2))).thenReturn(List.of(11, 12));
+        when(hospitalRepository.findWithAmbulanceIdsByIdIn(List.of(11, 12))).thenReturn(List.of(hospital));
+
+        List<Hospital> page = hospitalService.getHospitalPage(10, 2);
+
+        assertEquals(List.of(hospital), page);
+    }
+
+    @Test
+    void getHospitalPage_WhenNothingAfter_ShouldNotFetch() {
+        when(hospitalRepository.findIdsAfter(0, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        assertTrue(hospitalService.getHospitalPage(null, 2).isEmpty());
+        verify(hospitalRepository, never()).findWithAmbulanceIdsByIdIn(any());
+    }
+
+    @Test
+    void getHospitalFields_ShouldSelectFromFirstPageWhenNoCursor() {
+        Set<String> fields = Set.of("id", "name");
+        List<Map<String, Object>> rows = List.of(Map.of("id", 1, "name", "General"));
+        when(hospitalRepository.findFields(fields, 0, 50)).thenReturn(rows);
+
+        assertEquals(rows, hospitalService.getHospitalFields(fields, null, 50));
+    }
+
+    @Test
+    void streamHospitals_ShouldReadPageByPageUntilShortPage() {
+        List<Integer> firstIds = new ArrayList<>();
+        List<Hospital> firstPage = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            Hospital page = new Hospital();
+            page.setId(id);
+            firstIds.add(id);
+            firstPage.add(page);
+        }
+        when(hospitalRepository.findIdsAfter(0, PageRequest.of(0, 500))).thenReturn(firstIds);
+        when(hospitalRepository.findWithAmbulanceIdsByIdIn(firstIds)).thenReturn(firstPage);
+        when(hospitalRepository.findIdsAfter(500, PageRequest.of(0, 500))).thenReturn(List.of(501));
+        when(hospitalRepository.findWithAmbulanceIdsByIdIn(List.of(501))).thenReturn(List.of(hospital));
+
+        List<Hospital> streamed = new ArrayList<>();
+        hospitalService.streamHospitals(null, streamed::add);
+
+        assertEquals(501, streamed.size());
+        assertSame(hospital, streamed.get(500));
+    }
+
+    private static ChangedHospital changed(Integer id, Long changeSeq) {
+        return new ChangedHospital() {
+            @Override
+            public Integer getId() {
+                return id;
+            }
+
+            @Override
+            public Long getChangeSeq() {
+                return changeSeq;
+            }
+        };
     }
 }